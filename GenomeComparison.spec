@@ -13,6 +13,18 @@ module GenomeComparison {
 	*/
 	typedef tuple<int inner_pos, int score, int percent_of_best_score> hit;
 
+	/*
+		Hits of all genes of one genome in compact form: base64 encoding of
+		unsigned varints (7 bits per byte, lower bits first) in columns:
+		number of genes N, N counts of hits of every gene, then inner_pos of all
+		hits, score of all hits, percent_of_best_score of all hits and rank of
+		all hits. Hits of every gene are sorted by inner_pos which is stored as
+		difference with inner_pos of previous hit of the same gene (the first
+		one as is). Rank is position of hit in list of hits of the same gene in
+		dataN form (the best hit has rank 0), it's used to restore this order.
+	*/
+	typedef string packed_hits;
+
 	/*
 		string genome1ws - workspace of genome1 (depricated, use genome1ref instead)
 		string genome1id - id of genome1 (depricated, use genome1ref instead)
@@ -28,12 +40,20 @@ module GenomeComparison {
 		mapping<string, int> proteome2map - map from genes of genome2 to their positions
 		list<list<hit>> data1 - outer list iterates over positions of genome1 gene names, inner list iterates over hits from given gene1 to genome2
 		list<list<hit>> data2 - outer list iterates over positions of genome2 gene names, inner list iterates over hits from given gene2 to genome1
+		packed_hits data1_packed - the same hits as in data1 in compact form (used instead of data1)
+		packed_hits data2_packed - the same hits as in data2 in compact form (used instead of data2)
 		@optional genome1ws
 		@optional genome1id
 		@optional genome1ref
 		@optional genome2ws
 		@optional genome2id
 		@optional genome2ref
+		@optional proteome1map
+		@optional proteome2map
+		@optional data1
+		@optional data2
+		@optional data1_packed
+		@optional data2_packed
 	*/
 	typedef structure {
 		string genome1ws;
@@ -50,6 +70,8 @@ module GenomeComparison {
 		mapping<string, int> proteome2map;
 		list<list<hit>> data1;
 		list<list<hit>> data2;
+		packed_hits data1_packed;
+		packed_hits data2_packed;
 	} ProteomeComparison;
 
 	/*
@@ -61,6 +83,9 @@ module GenomeComparison {
 		string max_evalue -  optional parameter, maximum evalue, default is 1e-10
 		string output_ws - workspace of output object
 		string output_id - future id of output object
+		int priority - optional parameter, queued jobs of the same user with higher priority are started first, default is 0
+		int packed_hits - optional flag, hits are stored in data1_packed/data2_packed fields of ProteomeComparison
+			instead of data1/data2 (and proteome1map/proteome2map are not stored), default is 0
 	*/
 	typedef structure {
 		string genome1ws;
@@ -71,16 +96,48 @@ module GenomeComparison {
 		string max_evalue;
 		string output_ws;
 		string output_id;
+		int priority;
+		int packed_hits;
 	} blast_proteomes_params;
 
 	funcdef blast_proteomes(blast_proteomes_params input) returns (string job_id) authentication required;
 
+	/*
+		list<ws_genome_id> genome_refs - references to genomes (in "ws/id" form) compared with each other
+		float sub_bbh_percent - optional parameter, minimum percent of bit score compared to best bit score, default is 90
+		string max_evalue -  optional parameter, maximum evalue, default is 1e-10
+		string output_ws - workspace of output objects
+		string output_id_prefix - prefix of future ids of output objects, comparison of genomes
+			having positions i < j in genome_refs list (starting from 1) is stored as <output_id_prefix>_<i>_<j>
+		int priority - optional parameter, queued jobs of the same user with higher priority are started first, default is 0
+		int packed_hits - optional flag, comparisons are stored with packed hits (see blast_proteomes_params), default is 0
+	*/
+	typedef structure {
+		list<ws_genome_id> genome_refs;
+		float sub_bbh_percent;
+		string max_evalue;
+		string output_ws;
+		string output_id_prefix;
+		int priority;
+		int packed_hits;
+	} blast_proteomes_many_params;
+
+	/*
+		All-vs-all comparison of proteomes of several genomes. Proteins of all
+		genomes are compared in one blastp run with joined database, only hits of
+		every genome to genomes going after it in genome_refs are kept (e-values
+		are calculated for size of one genome as in blast_proteomes), hits are
+		split into ProteomeComparison objects for every pair of genomes.
+	*/
+	funcdef blast_proteomes_many(blast_proteomes_many_params input) returns (string job_id) authentication required;
+
 	/*
 		string in_genome_ws - workspace of input genome
 		string in_genome_id - id of input genome
 		string out_genome_ws - workspace of output genome
 		string out_genome_id - future id of output genome
 		int seed_annotation_only - optional flag (default value is 0) preventing gene calling
+		int priority - optional parameter, queued jobs of the same user with higher priority are started first, default is 0
 	*/
 	typedef structure {
 		string in_genome_ws;
@@ -88,17 +145,47 @@ module GenomeComparison {
 		string out_genome_ws;
 		string out_genome_id;
 		int seed_annotation_only;
+		int priority;
 	} annotate_genome_params;
 	
 	funcdef annotate_genome(annotate_genome_params input) returns (string job_id) authentication required;
 
 	funcdef get_ncbi_genome_names() returns (list<string>);
 
+	/*
+		string query - optional part of genome name (case insensitive), names starting with
+			query go first followed by names containing it, all names are found if it's empty
+		int start - optional index of first returned name in found list, default is 0
+		int limit - optional max number of returned names, default is 100
+	*/
+	typedef structure {
+		string query;
+		int start;
+		int limit;
+	} search_ncbi_genome_names_params;
+
+	/*
+		list<string> genome_names - requested page of found names
+		int total - total number of found names
+	*/
+	typedef structure {
+		list<string> genome_names;
+		int total;
+	} search_ncbi_genome_names_result;
+
+	/*
+		Searches names of NCBI genomes which can be imported with import_ncbi_genome.
+	*/
+	funcdef search_ncbi_genome_names(search_ncbi_genome_names_params input) returns (search_ncbi_genome_names_result);
+
 	typedef structure {
 		string genome_name;
 		string out_genome_ws;
 		string out_genome_id;
 	} import_ncbi_genome_params;
 
-	funcdef import_ncbi_genome(import_ncbi_genome_params input) returns () authentication required;
+	/*
+		Genome is imported asynchronously, job_id refers to job in user and job state service.
+	*/
+	funcdef import_ncbi_genome(import_ncbi_genome_params input) returns (string job_id) authentication required;
 };
\ No newline at end of file
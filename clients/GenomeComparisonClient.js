@@ -31,6 +31,16 @@ function GenomeComparison(url, auth, auth_cb) {
         return json_call_ajax("GenomeComparison.blast_proteomes", [input], 1, _callback, _error_callback);
     };
 
+    this.blast_proteomes_many = function (input, _callback, _errorCallback) {
+    return json_call_ajax("GenomeComparison.blast_proteomes_many",
+        [input], 1, _callback, _errorCallback);
+};
+
+    this.blast_proteomes_many_async = function (input, _callback, _error_callback) {
+        deprecationWarning();
+        return json_call_ajax("GenomeComparison.blast_proteomes_many", [input], 1, _callback, _error_callback);
+    };
+
     this.annotate_genome = function (input, _callback, _errorCallback) {
     return json_call_ajax("GenomeComparison.annotate_genome",
         [input], 1, _callback, _errorCallback);
@@ -51,14 +61,24 @@ function GenomeComparison(url, auth, auth_cb) {
         return json_call_ajax("GenomeComparison.get_ncbi_genome_names", [], 1, _callback, _error_callback);
     };
 
+    this.search_ncbi_genome_names = function (input, _callback, _errorCallback) {
+    return json_call_ajax("GenomeComparison.search_ncbi_genome_names",
+        [input], 1, _callback, _errorCallback);
+};
+
+    this.search_ncbi_genome_names_async = function (input, _callback, _error_callback) {
+        deprecationWarning();
+        return json_call_ajax("GenomeComparison.search_ncbi_genome_names", [input], 1, _callback, _error_callback);
+    };
+
     this.import_ncbi_genome = function (input, _callback, _errorCallback) {
     return json_call_ajax("GenomeComparison.import_ncbi_genome",
-        [input], 0, _callback, _errorCallback);
+        [input], 1, _callback, _errorCallback);
 };
 
     this.import_ncbi_genome_async = function (input, _callback, _error_callback) {
         deprecationWarning();
-        return json_call_ajax("GenomeComparison.import_ncbi_genome", [input], 0, _callback, _error_callback);
+        return json_call_ajax("GenomeComparison.import_ncbi_genome", [input], 1, _callback, _error_callback);
     };
  
 
@@ -159,6 +159,109 @@ sub blast_proteomes
 
 
 
+=head2 blast_proteomes_many
+
+  $job_id = $obj->blast_proteomes_many($input)
+
+=over 4
+
+=item Parameter and return types
+
+=begin html
+
+<pre>
+$input is a GenomeComparison.blast_proteomes_many_params
+$job_id is a string
+blast_proteomes_many_params is a reference to a hash where the following keys are defined:
+	genome_refs has a value which is a reference to a list where each element is a GenomeComparison.ws_genome_id
+	sub_bbh_percent has a value which is a float
+	max_evalue has a value which is a string
+	output_ws has a value which is a string
+	output_id_prefix has a value which is a string
+	priority has a value which is an int
+	packed_hits has a value which is an int
+ws_genome_id is a string
+
+</pre>
+
+=end html
+
+=begin text
+
+$input is a GenomeComparison.blast_proteomes_many_params
+$job_id is a string
+blast_proteomes_many_params is a reference to a hash where the following keys are defined:
+	genome_refs has a value which is a reference to a list where each element is a GenomeComparison.ws_genome_id
+	sub_bbh_percent has a value which is a float
+	max_evalue has a value which is a string
+	output_ws has a value which is a string
+	output_id_prefix has a value which is a string
+	priority has a value which is an int
+	packed_hits has a value which is an int
+ws_genome_id is a string
+
+
+=end text
+
+=item Description
+
+All-vs-all comparison of proteomes of several genomes. Proteins of all
+genomes are compared in one blastp run with joined database, only hits of
+every genome to genomes going after it in genome_refs are kept (e-values
+are calculated for size of one genome as in blast_proteomes), hits are
+split into ProteomeComparison objects for every pair of genomes.
+
+=back
+
+=cut
+
+sub blast_proteomes_many
+{
+    my($self, @args) = @_;
+
+# Authentication: required
+
+    if ((my $n = @args) != 1)
+    {
+	Bio::KBase::Exceptions::ArgumentValidationError->throw(error =>
+							       "Invalid argument count for function blast_proteomes_many (received $n, expecting 1)");
+    }
+    {
+	my($input) = @args;
+
+	my @_bad_arguments;
+        (ref($input) eq 'HASH') or push(@_bad_arguments, "Invalid type for argument 1 \"input\" (value was \"$input\")");
+        if (@_bad_arguments) {
+	    my $msg = "Invalid arguments passed to blast_proteomes_many:\n" . join("", map { "\t$_\n" } @_bad_arguments);
+	    Bio::KBase::Exceptions::ArgumentValidationError->throw(error => $msg,
+								   method_name => 'blast_proteomes_many');
+	}
+    }
+
+    my $result = $self->{client}->call($self->{url}, {
+	method => "GenomeComparison.blast_proteomes_many",
+	params => \@args,
+    });
+    if ($result) {
+	if ($result->is_error) {
+	    Bio::KBase::Exceptions::JSONRPC->throw(error => $result->error_message,
+					       code => $result->content->{error}->{code},
+					       method_name => 'blast_proteomes_many',
+					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
+					      );
+	} else {
+	    return wantarray ? @{$result->result} : $result->result->[0];
+	}
+    } else {
+        Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method blast_proteomes_many",
+					    status_line => $self->{client}->status_line,
+					    method_name => 'blast_proteomes_many',
+				       );
+    }
+}
+
+
+
 =head2 annotate_genome
 
   $job_id = $obj->annotate_genome($input)
@@ -320,9 +423,104 @@ sub get_ncbi_genome_names
 
 
 
+=head2 search_ncbi_genome_names
+
+  $return = $obj->search_ncbi_genome_names($input)
+
+=over 4
+
+=item Parameter and return types
+
+=begin html
+
+<pre>
+$input is a GenomeComparison.search_ncbi_genome_names_params
+$return is a GenomeComparison.search_ncbi_genome_names_result
+search_ncbi_genome_names_params is a reference to a hash where the following keys are defined:
+	query has a value which is a string
+	start has a value which is an int
+	limit has a value which is an int
+search_ncbi_genome_names_result is a reference to a hash where the following keys are defined:
+	genome_names has a value which is a reference to a list where each element is a string
+	total has a value which is an int
+
+</pre>
+
+=end html
+
+=begin text
+
+$input is a GenomeComparison.search_ncbi_genome_names_params
+$return is a GenomeComparison.search_ncbi_genome_names_result
+search_ncbi_genome_names_params is a reference to a hash where the following keys are defined:
+	query has a value which is a string
+	start has a value which is an int
+	limit has a value which is an int
+search_ncbi_genome_names_result is a reference to a hash where the following keys are defined:
+	genome_names has a value which is a reference to a list where each element is a string
+	total has a value which is an int
+
+
+=end text
+
+=item Description
+
+Searches names of NCBI genomes which can be imported with import_ncbi_genome.
+
+=back
+
+=cut
+
+sub search_ncbi_genome_names
+{
+    my($self, @args) = @_;
+
+# Authentication: none
+
+    if ((my $n = @args) != 1)
+    {
+	Bio::KBase::Exceptions::ArgumentValidationError->throw(error =>
+							       "Invalid argument count for function search_ncbi_genome_names (received $n, expecting 1)");
+    }
+    {
+	my($input) = @args;
+
+	my @_bad_arguments;
+        (ref($input) eq 'HASH') or push(@_bad_arguments, "Invalid type for argument 1 \"input\" (value was \"$input\")");
+        if (@_bad_arguments) {
+	    my $msg = "Invalid arguments passed to search_ncbi_genome_names:\n" . join("", map { "\t$_\n" } @_bad_arguments);
+	    Bio::KBase::Exceptions::ArgumentValidationError->throw(error => $msg,
+								   method_name => 'search_ncbi_genome_names');
+	}
+    }
+
+    my $result = $self->{client}->call($self->{url}, {
+	method => "GenomeComparison.search_ncbi_genome_names",
+	params => \@args,
+    });
+    if ($result) {
+	if ($result->is_error) {
+	    Bio::KBase::Exceptions::JSONRPC->throw(error => $result->error_message,
+					       code => $result->content->{error}->{code},
+					       method_name => 'search_ncbi_genome_names',
+					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
+					      );
+	} else {
+	    return wantarray ? @{$result->result} : $result->result->[0];
+	}
+    } else {
+        Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method search_ncbi_genome_names",
+					    status_line => $self->{client}->status_line,
+					    method_name => 'search_ncbi_genome_names',
+				       );
+    }
+}
+
+
+
 =head2 import_ncbi_genome
 
-  $obj->import_ncbi_genome($input)
+  $job_id = $obj->import_ncbi_genome($input)
 
 =over 4
 
@@ -332,6 +530,7 @@ sub get_ncbi_genome_names
 
 <pre>
 $input is a GenomeComparison.import_ncbi_genome_params
+$job_id is a string
 import_ncbi_genome_params is a reference to a hash where the following keys are defined:
 	genome_name has a value which is a string
 	out_genome_ws has a value which is a string
@@ -344,6 +543,7 @@ import_ncbi_genome_params is a reference to a hash where the following keys are
 =begin text
 
 $input is a GenomeComparison.import_ncbi_genome_params
+$job_id is a string
 import_ncbi_genome_params is a reference to a hash where the following keys are defined:
 	genome_name has a value which is a string
 	out_genome_ws has a value which is a string
@@ -354,7 +554,7 @@ import_ncbi_genome_params is a reference to a hash where the following keys are
 
 =item Description
 
-
+Genome is imported asynchronously, job_id refers to job in user and job state service.
 
 =back
 
@@ -395,7 +595,7 @@ sub import_ncbi_genome
 					       data => $result->content->{error}->{error} # JSON::RPC::ReturnObject only supports JSONRPC 1.1 or 1.O
 					      );
 	} else {
-	    return;
+	    return wantarray ? @{$result->result} : $result->result->[0];
 	}
     } else {
         Bio::KBase::Exceptions::HTTP->throw(error => "Error invoking method import_ncbi_genome",
@@ -673,6 +873,58 @@ output_id has a value which is a string
 
 
 
+=head2 blast_proteomes_many_params
+
+=over 4
+
+
+
+=item Description
+
+list<ws_genome_id> genome_refs - references to genomes (in "ws/id" form) compared with each other
+float sub_bbh_percent - optional parameter, minimum percent of bit score compared to best bit score, default is 90
+string max_evalue -  optional parameter, maximum evalue, default is 1e-10
+string output_ws - workspace of output objects
+string output_id_prefix - prefix of future ids of output objects, comparison of genomes
+        having positions i < j in genome_refs list (starting from 1) is stored as <output_id_prefix>_<i>_<j>
+int priority - optional parameter, queued jobs of the same user with higher priority are started first, default is 0
+int packed_hits - optional flag, comparisons are stored with packed hits (see blast_proteomes_params), default is 0
+
+
+=item Definition
+
+=begin html
+
+<pre>
+a reference to a hash where the following keys are defined:
+genome_refs has a value which is a reference to a list where each element is a GenomeComparison.ws_genome_id
+sub_bbh_percent has a value which is a float
+max_evalue has a value which is a string
+output_ws has a value which is a string
+output_id_prefix has a value which is a string
+priority has a value which is an int
+packed_hits has a value which is an int
+</pre>
+
+=end html
+
+=begin text
+
+a reference to a hash where the following keys are defined:
+genome_refs has a value which is a reference to a list where each element is a GenomeComparison.ws_genome_id
+sub_bbh_percent has a value which is a float
+max_evalue has a value which is a string
+output_ws has a value which is a string
+output_id_prefix has a value which is a string
+priority has a value which is an int
+packed_hits has a value which is an int
+
+=end text
+
+=back
+
+
+
 =head2 annotate_genome_params
 
 =over 4
@@ -720,6 +972,82 @@ seed_annotation_only has a value which is an int
 
 
 
+=head2 search_ncbi_genome_names_params
+
+=over 4
+
+
+
+=item Description
+
+string query - optional part of genome name (case insensitive), names starting with
+        query go first followed by names containing it, all names are found if it's empty
+int start - optional index of first returned name in found list, default is 0
+int limit - optional max number of returned names, default is 100
+
+
+=item Definition
+
+=begin html
+
+<pre>
+a reference to a hash where the following keys are defined:
+query has a value which is a string
+start has a value which is an int
+limit has a value which is an int
+</pre>
+
+=end html
+
+=begin text
+
+a reference to a hash where the following keys are defined:
+query has a value which is a string
+start has a value which is an int
+limit has a value which is an int
+
+=end text
+
+=back
+
+
+
+=head2 search_ncbi_genome_names_result
+
+=over 4
+
+
+
+=item Description
+
+list<string> genome_names - requested page of found names
+int total - total number of found names
+
+
+=item Definition
+
+=begin html
+
+<pre>
+a reference to a hash where the following keys are defined:
+genome_names has a value which is a reference to a list where each element is a string
+total has a value which is an int
+</pre>
+
+=end html
+
+=begin text
+
+a reference to a hash where the following keys are defined:
+genome_names has a value which is a reference to a list where each element is a string
+total has a value which is an int
+
+=end text
+
+=back
+
+
+
 =head2 import_ncbi_genome_params
 
 =over 4
@@ -187,6 +187,41 @@ class GenomeComparison(object):
         else:
             raise ServerError('Unknown', 0, 'An unknown server error occurred')
 
+    def blast_proteomes_many(self, input):
+
+        arg_hash = {'method': 'GenomeComparison.blast_proteomes_many',
+                    'params': [input],
+                    'version': '1.1',
+                    'id': str(random.random())[2:]
+                    }
+
+        body = json.dumps(arg_hash, cls=JSONObjectEncoder)
+        try:
+            request = urllib2.Request(self.url, body, self._headers)
+            ret = urllib2.urlopen(request, timeout=self.timeout)
+        except HTTPError as h:
+            if _CT in h.headers and h.headers[_CT] == _AJ:
+                b = h.read()
+                err = json.loads(b)
+                if 'error' in err:
+                    raise ServerError(**err['error'])
+                else:            # this should never happen... but if it does
+                    se = ServerError('Unknown', 0, b)
+                    se.httpError = h
+                    # h.read() will return '' in the calling code.
+                    raise se
+            else:
+                raise h
+        if ret.code != httplib.OK:
+            raise URLError('Received bad response code from server:' +
+                           ret.code)
+        resp = json.loads(ret.read())
+
+        if 'result' in resp:
+            return resp['result'][0]
+        else:
+            raise ServerError('Unknown', 0, 'An unknown server error occurred')
+
     def annotate_genome(self, input):
 
         arg_hash = {'method': 'GenomeComparison.annotate_genome',
@@ -257,6 +292,41 @@ class GenomeComparison(object):
         else:
             raise ServerError('Unknown', 0, 'An unknown server error occurred')
 
+    def search_ncbi_genome_names(self, input):
+
+        arg_hash = {'method': 'GenomeComparison.search_ncbi_genome_names',
+                    'params': [input],
+                    'version': '1.1',
+                    'id': str(random.random())[2:]
+                    }
+
+        body = json.dumps(arg_hash, cls=JSONObjectEncoder)
+        try:
+            request = urllib2.Request(self.url, body, self._headers)
+            ret = urllib2.urlopen(request, timeout=self.timeout)
+        except HTTPError as h:
+            if _CT in h.headers and h.headers[_CT] == _AJ:
+                b = h.read()
+                err = json.loads(b)
+                if 'error' in err:
+                    raise ServerError(**err['error'])
+                else:            # this should never happen... but if it does
+                    se = ServerError('Unknown', 0, b)
+                    se.httpError = h
+                    # h.read() will return '' in the calling code.
+                    raise se
+            else:
+                raise h
+        if ret.code != httplib.OK:
+            raise URLError('Received bad response code from server:' +
+                           ret.code)
+        resp = json.loads(ret.read())
+
+        if 'result' in resp:
+            return resp['result'][0]
+        else:
+            raise ServerError('Unknown', 0, 'An unknown server error occurred')
+
     def import_ncbi_genome(self, input):
 
         arg_hash = {'method': 'GenomeComparison.import_ncbi_genome',
@@ -288,6 +358,6 @@ class GenomeComparison(object):
         resp = json.loads(ret.read())
 
         if 'result' in resp:
-            pass  # nothing to return
+            return resp['result'][0]
         else:
             raise ServerError('Unknown', 0, 'An unknown server error occurred')
@@ -14,8 +14,22 @@ then
 cat > $1/deploy.cfg <<EOF
 [genome_comparison]
 thread.count=$2
+annotation.thread.count=1
+import.thread.count=1
 temp.dir=/scratch/genome_comparison
 blast.dir=$1/blast/linux
+blast.shards=1
+blast.threads=1
+blast.db.cache.mb=2048
+blast.hit.cache.mb=4096
+upload.memory.mb=1024
+upload.wait.sec=60
+ncbi.url=ftp://ftp.ncbi.nih.gov/genomes/Bacteria/
+ncbi.cache.mb=4096
+ncbi.download.threads=4
+image.cache.mb=256
+tile.cache.mb=64
+slice.cache.mb=64
 ws.url=https://kbase.us/services/ws/
 ujs.url=https://kbase.us/services/userandjobstate/
 EOF
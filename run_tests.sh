@@ -20,5 +20,6 @@ echo $CLASSPATH
 
 javac -sourcepath $SRC_DIR $CLASSPATH -d $CLASSES_DIR -g $SRC_DIR/us/kbase/genomecomparison/*.java $SRC_DIR/us/kbase/genomecomparison/test/*.java
 cp -r $SRC_DIR/us/kbase/genomecomparison/gbk/qualifier_types.properties $CLASSES_DIR/us/kbase/genomecomparison/gbk/
+cp $SRC_DIR/us/kbase/genomecomparison/genome2ftp.properties $CLASSES_DIR/us/kbase/genomecomparison/
 
-java -classpath $JARS:$CLASSES_DIR org.junit.runner.JUnitCore us.kbase.genomecomparison.test.TaskHolderTest
\ No newline at end of file
+java -classpath $JARS:$CLASSES_DIR org.junit.runner.JUnitCore us.kbase.genomecomparison.test.TaskHolderTest us.kbase.genomecomparison.test.NcbiGenomeCatalogTest us.kbase.genomecomparison.test.PackedHitsTest us.kbase.genomecomparison.test.TaskSchedulerTest
\ No newline at end of file
@@ -12,7 +12,7 @@ import java.util.Map;
 import us.kbase.common.service.UObject;
 import us.kbase.genomeannotation.GenomeAnnotationClient;
 import us.kbase.genomeannotation.GenomeTO;
-import us.kbase.kbasegenomes.Contig;
+import us.kbase.genomecomparison.gbk.ContigSetStats;
 import us.kbase.kbasegenomes.ContigSet;
 import us.kbase.kbasegenomes.Feature;
 import us.kbase.kbasegenomes.Genome;
@@ -79,19 +79,6 @@ public class AnnotateGenome {
 	}
 	
 	public static double calculateGcContent(ContigSet contigs) {
-		int at = 0;
-		int gc = 0;
-		for (Contig contig : contigs.getContigs()) {
-			String seq = contig.getSequence();
-			for (int i = 0; i < seq.length(); i++) {
-				char ch = seq.charAt(i);
-				if (ch == 'g' || ch == 'G' || ch == 'c' || ch == 'C') {
-					gc++;
-				} else if (ch == 'a' || ch == 'A' || ch == 't' || ch == 'T') {
-					at++;
-				}
-			}
-		}
-		return (0.0 + gc) / (at + gc);
+		return ContigSetStats.forContigSet(contigs).getGcContent();
 	}
 }
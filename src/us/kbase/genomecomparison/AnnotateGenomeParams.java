@@ -19,6 +19,7 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  * string out_genome_ws - workspace of output genome
  * string out_genome_id - future id of output genome
  * int seed_annotation_only - optional flag (default value is 0) preventing gene calling
+ * int priority - optional parameter, queued jobs of the same user with higher priority are started first, default is 0
  * </pre>
  * 
  */
@@ -29,7 +30,8 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
     "in_genome_id",
     "out_genome_ws",
     "out_genome_id",
-    "seed_annotation_only"
+    "seed_annotation_only",
+    "priority"
 })
 public class AnnotateGenomeParams {
 
@@ -43,6 +45,8 @@ public class AnnotateGenomeParams {
     private String outGenomeId;
     @JsonProperty("seed_annotation_only")
     private Long seedAnnotationOnly;
+    @JsonProperty("priority")
+    private Long priority;
     private Map<String, Object> additionalProperties = new HashMap<String, Object>();
 
     @JsonProperty("in_genome_ws")
@@ -120,6 +124,21 @@ public class AnnotateGenomeParams {
         return this;
     }
 
+    @JsonProperty("priority")
+    public Long getPriority() {
+        return priority;
+    }
+
+    @JsonProperty("priority")
+    public void setPriority(Long priority) {
+        this.priority = priority;
+    }
+
+    public AnnotateGenomeParams withPriority(Long priority) {
+        this.priority = priority;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -132,7 +151,7 @@ public class AnnotateGenomeParams {
 
     @Override
     public String toString() {
-        return ((((((((((((("AnnotateGenomeParams"+" [inGenomeWs=")+ inGenomeWs)+", inGenomeId=")+ inGenomeId)+", outGenomeWs=")+ outGenomeWs)+", outGenomeId=")+ outGenomeId)+", seedAnnotationOnly=")+ seedAnnotationOnly)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((("AnnotateGenomeParams"+" [inGenomeWs=")+ inGenomeWs)+", inGenomeId=")+ inGenomeId)+", outGenomeWs=")+ outGenomeWs)+", outGenomeId=")+ outGenomeId)+", seedAnnotationOnly=")+ seedAnnotationOnly)+", priority=")+ priority)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
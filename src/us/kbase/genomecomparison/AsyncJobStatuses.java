@@ -0,0 +1,216 @@
+package us.kbase.genomecomparison;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import us.kbase.common.service.JsonClientException;
+import us.kbase.userandjobstate.InitProgress;
+import us.kbase.userandjobstate.Results;
+
+/**
+ * Wrapper around job status storage sending updates and completions of jobs
+ * from background thread. Calls of updateJob/completeJob only register new
+ * state of job and return immediately. Several updates of the same job not
+ * sent yet are coalesced (only the last one is sent, and it's skipped at all
+ * when job is already completed). Failed calls are repeated with exponential
+ * backoff. Creation of job is passed to inner storage synchronously since its
+ * id is returned to user who checks job status in UJS with it. Sending
+ * thread is started with the first update and stopped by stop() (changes
+ * coming after that are sent synchronously).
+ */
+public class AsyncJobStatuses implements JobStatuses {
+	private static final long MIN_RETRY_DELAY_MS = 1000;
+	private static final long MAX_RETRY_DELAY_MS = 5 * 60 * 1000;
+	private static final int MAX_ATTEMPTS = 15;
+
+	private final JobStatuses inner;
+	private final Map<String, PendingJob> pending = new LinkedHashMap<String, PendingJob>();
+	private Thread sender = null;
+	private boolean needToStop = false;
+	private boolean sending = false;
+
+	public AsyncJobStatuses(JobStatuses inner) {
+		this.inner = inner;
+	}
+
+	private void startSenderIfNeeded() {
+		if (sender != null)
+			return;
+		sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sendLoop();
+			}
+		}, "Job status sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	@Override
+	public String createAndStartJob(String token, String status, String desc,
+			InitProgress progress, String estComplete) throws IOException, JsonClientException {
+		return inner.createAndStartJob(token, status, desc, progress, estComplete);
+	}
+
+	@Override
+	public void updateJob(String job, String token, String status, String estComplete) 
+			throws IOException, JsonClientException {
+		synchronized (this) {
+			if (!needToStop) {
+				PendingJob pj = getPendingJob(job, token);
+				if (pj.completed)
+					return;
+				pj.updated = true;
+				pj.status = status;
+				pj.estComplete = estComplete;
+				startSenderIfNeeded();
+				notifyAll();
+				return;
+			}
+		}
+		inner.updateJob(job, token, status, estComplete);
+	}
+
+	@Override
+	public void completeJob(String job, String token, String status, String error, Results res) 
+			throws IOException, JsonClientException {
+		synchronized (this) {
+			if (!needToStop) {
+				PendingJob pj = getPendingJob(job, token);
+				pj.updated = false;
+				pj.completed = true;
+				pj.status = status;
+				pj.error = error;
+				pj.res = res;
+				startSenderIfNeeded();
+				notifyAll();
+				return;
+			}
+		}
+		inner.completeJob(job, token, status, error, res);
+	}
+
+	private PendingJob getPendingJob(String job, String token) {
+		PendingJob ret = pending.get(job);
+		if (ret == null) {
+			ret = new PendingJob(job);
+			pending.put(job, ret);
+		}
+		ret.token = token;
+		return ret;
+	}
+
+	/**
+	 * @return number of jobs having changes not sent yet
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size() + (sending ? 1 : 0);
+	}
+
+	/**
+	 * Waits (not longer than timeout) while pending changes are sent and stops sending thread.
+	 */
+	public void stop(long timeoutMs) {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		synchronized (this) {
+			while (sender != null && getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+				try {
+					wait(Math.max(1, Math.min(1000, deadline - System.currentTimeMillis())));
+				} catch (InterruptedException ex) {
+					break;
+				}
+			}
+			needToStop = true;
+			notifyAll();
+		}
+	}
+
+	private void sendLoop() {
+		while (true) {
+			PendingJob pj;
+			synchronized (this) {
+				pj = null;
+				while (!needToStop) {
+					long waitMs = MAX_RETRY_DELAY_MS;
+					long now = System.currentTimeMillis();
+					for (Iterator<PendingJob> it = pending.values().iterator(); it.hasNext();) {
+						PendingJob item = it.next();
+						if (item.nextAttemptTime <= now) {
+							pj = item;
+							it.remove();
+							break;
+						}
+						waitMs = Math.min(waitMs, item.nextAttemptTime - now);
+					}
+					if (pj != null)
+						break;
+					try {
+						wait(Math.max(1, waitMs));
+					} catch (InterruptedException ignore) {}
+				}
+				if (pj == null)
+					return;
+				sending = true;
+			}
+			Exception err = null;
+			try {
+				if (pj.completed) {
+					inner.completeJob(pj.job, pj.token, pj.status, pj.error, pj.res);
+				} else if (pj.updated) {
+					inner.updateJob(pj.job, pj.token, pj.status, pj.estComplete);
+				}
+			} catch (Exception ex) {
+				err = ex;
+			}
+			synchronized (this) {
+				sending = false;
+				if (err != null)
+					retry(pj, err);
+				notifyAll();
+			}
+		}
+	}
+
+	private void retry(PendingJob failed, Exception err) {
+		failed.attempts++;
+		if (failed.attempts >= MAX_ATTEMPTS) {
+			System.err.println("Status of job " + failed.job + " wasn't sent after " +
+					failed.attempts + " attempts:");
+			err.printStackTrace();
+			return;
+		}
+		PendingJob newer = pending.get(failed.job);
+		if (newer == null) {
+			pending.put(failed.job, failed);
+			newer = failed;
+		} else if (!newer.completed && failed.completed) {
+			newer.completed = true;
+			newer.updated = false;
+			newer.status = failed.status;
+			newer.error = failed.error;
+			newer.res = failed.res;
+		}
+		newer.attempts = failed.attempts;
+		newer.nextAttemptTime = System.currentTimeMillis() + Math.min(MAX_RETRY_DELAY_MS,
+				MIN_RETRY_DELAY_MS << Math.min(20, failed.attempts - 1));
+	}
+
+	private static class PendingJob {
+		final String job;
+		String token;
+		boolean updated = false;
+		boolean completed = false;
+		String status;
+		String estComplete;
+		String error;
+		Results res;
+		int attempts = 0;
+		long nextAttemptTime = 0;
+
+		PendingJob(String job) {
+			this.job = job;
+		}
+	}
+}
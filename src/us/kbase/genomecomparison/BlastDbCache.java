@@ -0,0 +1,233 @@
+package us.kbase.genomecomparison;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of blast protein databases. Every database is stored in its
+ * own sub-folder named by hash of ordered (name, sequence) pairs of proteome,
+ * so the same proteome is formatted by makeblastdb only once. Databases used
+ * by running jobs are reference-counted and never evicted, other ones are
+ * removed in least-recently-used order when total size exceeds the limit.
+ */
+public class BlastDbCache {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String BUILD_DIR_PREFIX = "building_";
+	public static final String DB_FILE_NAME = "db.fst";
+	private static final Map<File, BlastDbCache> instances = new HashMap<File, BlastDbCache>();
+
+	private final File cacheDir;
+	private final long maxSize;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private long totalSize = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long lastAccess = 0;
+
+	public BlastDbCache(File cacheDir, long maxSize) {
+		this.cacheDir = cacheDir;
+		this.maxSize = maxSize;
+		if (!cacheDir.exists())
+			cacheDir.mkdirs();
+		for (File dir : cacheDir.listFiles()) {
+			if (!dir.isDirectory())
+				continue;
+			if (dir.getName().startsWith(BUILD_DIR_PREFIX)) {
+				deleteRecursively(dir);
+				continue;
+			}
+			Entry entry = new Entry(dir.getName(), dir);
+			entry.ready = true;
+			entry.size = sizeOf(dir);
+			entry.lastAccess = dir.lastModified();
+			lastAccess = Math.max(lastAccess, entry.lastAccess);
+			entries.put(entry.hash, entry);
+			totalSize += entry.size;
+		}
+	}
+
+	/**
+	 * Returns cache instance shared by all jobs working with given folder.
+	 */
+	public static synchronized BlastDbCache getInstance(File cacheDir, long maxSize) throws IOException {
+		File key = cacheDir.getCanonicalFile();
+		BlastDbCache ret = instances.get(key);
+		if (ret == null) {
+			ret = new BlastDbCache(key, maxSize);
+			instances.put(key, ret);
+		}
+		return ret;
+	}
+
+	public static String proteomeHash(Map<String, String> proteome) throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+		for (Map.Entry<String, String> entry : proteome.entrySet()) {
+			md.update(entry.getKey().getBytes(UTF8));
+			md.update((byte)'\t');
+			md.update(entry.getValue().getBytes(UTF8));
+			md.update((byte)'\n');
+		}
+		return Utils.toHex(md.digest());
+	}
+
+	/**
+	 * Returns path to database (the value for -db option of blastp) built for
+	 * given proteome. Database is created by builder in case it's not in cache
+	 * yet. Every call of this method should be followed by {@link #release(File)}.
+	 */
+	public File acquire(Map<String, String> proteome, DbBuilder builder) throws Exception {
+		String hash = proteomeHash(proteome);
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(hash);
+			if (entry == null) {
+				entry = new Entry(hash, new File(cacheDir, hash));
+				entries.put(hash, entry);
+			}
+			entry.refCount++;
+			entry.lastAccess = nextAccessTime();
+		}
+		boolean wasBuilt = false;
+		try {
+			synchronized (entry) {
+				if (!entry.ready) {
+					File buildDir = new File(cacheDir, BUILD_DIR_PREFIX + hash + "_" +
+							System.currentTimeMillis());
+					buildDir.mkdirs();
+					try {
+						builder.build(proteome, new File(buildDir, DB_FILE_NAME));
+						if (entry.dir.exists())
+							deleteRecursively(entry.dir);
+						if (!buildDir.renameTo(entry.dir))
+							throw new IllegalStateException("Can not move blast database into " + entry.dir);
+					} finally {
+						if (buildDir.exists())
+							deleteRecursively(buildDir);
+					}
+					entry.size = sizeOf(entry.dir);
+					entry.ready = true;
+					wasBuilt = true;
+				} else {
+					entry.dir.setLastModified(System.currentTimeMillis());
+				}
+			}
+		} catch (Exception ex) {
+			synchronized (this) {
+				entry.refCount--;
+				if (entry.refCount == 0 && !entry.ready)
+					entries.remove(hash);
+			}
+			throw ex;
+		}
+		synchronized (this) {
+			if (wasBuilt) {
+				misses++;
+				totalSize += entry.size;
+				evict();
+			} else {
+				hits++;
+			}
+		}
+		if (wasBuilt) {
+			Stat.addBlastDbCacheMiss(cacheDir.getParentFile());
+		} else {
+			Stat.addBlastDbCacheHit(cacheDir.getParentFile());
+		}
+		return new File(entry.dir, DB_FILE_NAME);
+	}
+
+	public synchronized void release(File db) {
+		Entry entry = entries.get(db.getParentFile().getName());
+		if (entry == null)
+			return;
+		entry.refCount--;
+		evict();
+	}
+
+	private long nextAccessTime() {
+		lastAccess = Math.max(lastAccess + 1, System.currentTimeMillis());
+		return lastAccess;
+	}
+
+	private void evict() {
+		if (totalSize <= maxSize)
+			return;
+		List<Entry> candidates = new ArrayList<Entry>();
+		for (Entry entry : entries.values())
+			if (entry.ready && entry.refCount == 0)
+				candidates.add(entry);
+		Collections.sort(candidates, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return Utils.compare(o1.lastAccess, o2.lastAccess);
+			}
+		});
+		for (Entry entry : candidates) {
+			if (totalSize <= maxSize)
+				break;
+			deleteRecursively(entry.dir);
+			entries.remove(entry.hash);
+			totalSize -= entry.size;
+			evictions++;
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	private static long sizeOf(File fileOrDir) {
+		if (!fileOrDir.isDirectory())
+			return fileOrDir.length();
+		long ret = 0;
+		for (File f : fileOrDir.listFiles())
+			ret += sizeOf(f);
+		return ret;
+	}
+
+	private static void deleteRecursively(File fileOrDir) {
+		if (fileOrDir.isDirectory())
+			for (File f : fileOrDir.listFiles())
+				deleteRecursively(f);
+		fileOrDir.delete();
+	}
+
+	public static interface DbBuilder {
+		public void build(Map<String, String> proteome, File dbFile) throws Exception;
+	}
+
+	private static class Entry {
+		final String hash;
+		final File dir;
+		boolean ready = false;
+		int refCount = 0;
+		long size = 0;
+		long lastAccess = 0;
+
+		Entry(String hash, File dir) {
+			this.hash = hash;
+			this.dir = dir;
+		}
+	}
+}
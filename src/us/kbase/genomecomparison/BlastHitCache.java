@@ -0,0 +1,170 @@
+package us.kbase.genomecomparison;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * On-disk cache of raw (not filtered) blastp hits between two proteomes. Hits
+ * are stored in compact binary files named by hashes of both proteomes and
+ * max e-value, so that repeated comparison of the same pair of genomes (with
+ * any sub-BBH percent) doesn't need to run blast again. Hits are stored for
+ * ordered pair (first proteome is query), blastp results for reversed pair
+ * are different (statistics of alignments depend on database). Oldest files
+ * are removed when total size exceeds the limit.
+ */
+public class BlastHitCache {
+	private static final int MAGIC = 0x4B424854;
+	private static final int VERSION = 1;
+	private static final String FILE_SUFFIX = ".hits";
+
+	private final File cacheDir;
+	private final long maxSize;
+
+	public BlastHitCache(File cacheDir, long maxSize) {
+		this.cacheDir = cacheDir;
+		this.maxSize = maxSize;
+		if (!cacheDir.exists())
+			cacheDir.mkdirs();
+	}
+
+	private File getFile(String hash1, String hash2, String maxEvalue) {
+		String evalue = maxEvalue.replaceAll("[^A-Za-z0-9.+-]", "_");
+		return new File(cacheDir, hash1 + "_" + hash2 + "_" + evalue + FILE_SUFFIX);
+	}
+
+	/**
+	 * Loads hits stored for this pair of proteomes. Broken file (for instance
+	 * truncated by full disk) is removed.
+	 * @return table of hits or null in case there is nothing in cache
+	 */
+	public HitTable load(String hash1, String hash2, String maxEvalue,
+			List<String> proteome1names, List<String> proteome2names) {
+		File f = getFile(hash1, hash2, maxEvalue);
+		if (!f.exists())
+			return null;
+		try {
+			DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			try {
+				if (is.readInt() != MAGIC || is.readInt() != VERSION)
+					return null;
+				int n1 = is.readInt();
+				int n2 = is.readInt();
+				int rows = is.readInt();
+				if (n1 != proteome1names.size() || n2 != proteome2names.size())
+					return null;
+				HitTable ret = new HitTable(proteome1names, proteome2names, rows);
+				int g1 = 0;
+				for (int i = 0; i < rows; i++) {
+					g1 += readVarInt(is);
+					int g2 = readVarInt(is);
+					ret.add(g1, g2, is.readDouble());
+				}
+				f.setLastModified(System.currentTimeMillis());
+				return ret;
+			} finally {
+				is.close();
+			}
+		} catch (IOException ex) {
+			System.err.println("Broken file of blast hit cache is removed: " + f + " (" + ex + ")");
+			f.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores hits into cache. Tables with hits for genes which are not part of
+	 * proteomes are not stored. Errors (like full disk) are only logged since
+	 * cache is not required for comparison.
+	 */
+	public void save(String hash1, String hash2, String maxEvalue, HitTable hits) {
+		if (hits.hasUnknownGenes())
+			return;
+		File f = getFile(hash1, hash2, maxEvalue);
+		File tempFile = new File(cacheDir, f.getName() + "." + System.nanoTime() + ".tmp");
+		try {
+			DataOutputStream os = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tempFile)));
+			try {
+				os.writeInt(MAGIC);
+				os.writeInt(VERSION);
+				os.writeInt(hits.getProteome1size());
+				os.writeInt(hits.getProteome2size());
+				os.writeInt(hits.size());
+				int prevG1 = 0;
+				for (int i = 0; i < hits.size(); i++) {
+					int g1 = hits.getGene1(i);
+					writeVarInt(os, g1 - prevG1);
+					prevG1 = g1;
+					writeVarInt(os, hits.getGene2(i));
+					os.writeDouble(hits.getScore(i));
+				}
+			} finally {
+				os.close();
+			}
+			if (f.exists())
+				f.delete();
+			if (!tempFile.renameTo(f))
+				return;
+		} catch (IOException ex) {
+			System.err.println("Blast hits were not saved into cache: " + f + " (" + ex + ")");
+			return;
+		} finally {
+			if (tempFile.exists())
+				tempFile.delete();
+		}
+		evict();
+	}
+
+	private synchronized void evict() {
+		File[] files = cacheDir.listFiles();
+		long total = 0;
+		for (File f : files)
+			total += f.length();
+		if (total <= maxSize)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return Utils.compare(o1.lastModified(), o2.lastModified());
+			}
+		});
+		for (File f : files) {
+			if (total <= maxSize)
+				break;
+			if (!f.getName().endsWith(FILE_SUFFIX))
+				continue;
+			long len = f.length();
+			if (f.delete())
+				total -= len;
+		}
+	}
+
+	private static void writeVarInt(DataOutputStream os, int value) throws IOException {
+		int v = (value << 1) ^ (value >> 31);
+		while ((v & ~0x7f) != 0) {
+			os.writeByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		os.writeByte(v);
+	}
+
+	private static int readVarInt(DataInputStream is) throws IOException {
+		int v = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = is.readUnsignedByte();
+			v |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				break;
+		}
+		return (v >>> 1) ^ -(v & 1);
+	}
+}
@@ -0,0 +1,235 @@
+package us.kbase.genomecomparison;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Parser of tabular blast output (-outfmt 6) working directly over bytes of
+ * a stream. Lines are tokenized in place inside one reusable buffer, numbers
+ * are parsed without creating strings and repeated values (gene names,
+ * e-values) are taken from small internal cache so that steady state parsing
+ * of rows doesn't allocate.
+ */
+public class BlastOutputParser {
+	private static final int COLUMNS = 12;
+	private static final int MAX_CACHE_SIZE = 1 << 18;
+	private static final double[] POW10 = new double[23];
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private final InputStream is;
+	private byte[] buf = new byte[1 << 16];
+	private int start = 0;
+	private int end = 0;
+	private final int[] fieldStart = new int[COLUMNS];
+	private final int[] fieldEnd = new int[COLUMNS];
+	private String[] cache = new String[1 << 12];
+	private int[] cacheHash = new int[1 << 12];
+	private int cacheSize = 0;
+	private long lineNum = 0;
+
+	public BlastOutputParser(InputStream is) {
+		this.is = is;
+	}
+
+	/**
+	 * Parses all rows of the stream and pushes them into callback.
+	 * @return number of rows parsed
+	 */
+	public long parse(BlastStarter.ResultCallback ret) throws IOException {
+		long rows = 0;
+		while (true) {
+			int lineEnd = nextLineEnd();
+			if (lineEnd < 0)
+				break;
+			lineNum++;
+			int lineStart = start;
+			start = lineEnd + 1;
+			if (lineEnd > lineStart && buf[lineEnd - 1] == '\r')
+				lineEnd--;
+			if (isBlank(lineStart, lineEnd))
+				continue;
+			int fields = 0;
+			int pos = lineStart;
+			while (fields < COLUMNS) {
+				int fEnd = pos;
+				while (fEnd < lineEnd && buf[fEnd] != '\t')
+					fEnd++;
+				fieldStart[fields] = pos;
+				fieldEnd[fields] = fEnd;
+				fields++;
+				if (fEnd >= lineEnd)
+					break;
+				pos = fEnd + 1;
+			}
+			if (fields < COLUMNS)
+				throw new IllegalStateException("Wrong number of columns in blast output at line " +
+						lineNum + ": " + fields);
+			ret.proteinPair(str(0), str(1), dbl(2), integer(3), integer(4), integer(5),
+					integer(6), integer(7), integer(8), integer(9), str(10), dbl(11));
+			rows++;
+		}
+		return rows;
+	}
+
+	private boolean isBlank(int from, int to) {
+		for (int i = from; i < to; i++)
+			if (buf[i] > ' ')
+				return false;
+		return true;
+	}
+
+	/**
+	 * Finds position of next '\n' in buffer reading more data if necessary.
+	 * Last line without line break is handled as if it had one.
+	 */
+	private int nextLineEnd() throws IOException {
+		int pos = start;
+		while (true) {
+			for (; pos < end; pos++)
+				if (buf[pos] == '\n')
+					return pos;
+			if (start > 0) {
+				System.arraycopy(buf, start, buf, 0, end - start);
+				pos -= start;
+				end -= start;
+				start = 0;
+			}
+			if (end == buf.length) {
+				byte[] newBuf = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, newBuf, 0, end);
+				buf = newBuf;
+			}
+			int r = is.read(buf, end, buf.length - end);
+			if (r < 0) {
+				if (end > start) {
+					if (end == buf.length) {
+						byte[] newBuf = new byte[buf.length + 1];
+						System.arraycopy(buf, 0, newBuf, 0, end);
+						buf = newBuf;
+					}
+					buf[end] = '\n';
+					end++;
+					return end - 1;
+				}
+				return -1;
+			}
+			end += r;
+		}
+	}
+
+	private String str(int field) {
+		int from = fieldStart[field];
+		int to = fieldEnd[field];
+		int hash = 1;
+		for (int i = from; i < to; i++)
+			hash = 31 * hash + buf[i];
+		int mask = cache.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (cache[slot] != null) {
+			String s = cache[slot];
+			if (cacheHash[slot] == hash && equalsBytes(s, from, to))
+				return s;
+			slot = (slot + 1) & mask;
+		}
+		String ret = new String(buf, from, to - from, LATIN1);
+		if (cacheSize < MAX_CACHE_SIZE) {
+			cache[slot] = ret;
+			cacheHash[slot] = hash;
+			cacheSize++;
+			if (cacheSize * 2 > cache.length)
+				growCache();
+		}
+		return ret;
+	}
+
+	private boolean equalsBytes(String s, int from, int to) {
+		if (s.length() != to - from)
+			return false;
+		for (int i = from; i < to; i++)
+			if (s.charAt(i - from) != (char)(buf[i] & 0xff))
+				return false;
+		return true;
+	}
+
+	private void growCache() {
+		String[] oldCache = cache;
+		int[] oldHash = cacheHash;
+		cache = new String[oldCache.length * 2];
+		cacheHash = new int[oldCache.length * 2];
+		int mask = cache.length - 1;
+		for (int i = 0; i < oldCache.length; i++) {
+			if (oldCache[i] == null)
+				continue;
+			int hash = oldHash[i];
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (cache[slot] != null)
+				slot = (slot + 1) & mask;
+			cache[slot] = oldCache[i];
+			cacheHash[slot] = hash;
+		}
+	}
+
+	private int integer(int field) {
+		int from = fieldStart[field];
+		int to = fieldEnd[field];
+		boolean neg = from < to && buf[from] == '-';
+		if (neg)
+			from++;
+		if (from >= to)
+			throw numberError(field);
+		int ret = 0;
+		for (int i = from; i < to; i++) {
+			int d = buf[i] - '0';
+			if (d < 0 || d > 9)
+				throw numberError(field);
+			ret = ret * 10 + d;
+		}
+		return neg ? -ret : ret;
+	}
+
+	/**
+	 * Parses plain decimal numbers (like 98.51 or 1234) exactly the same way
+	 * as Double.parseDouble does, falls back to it for other notations.
+	 */
+	private double dbl(int field) {
+		int from = fieldStart[field];
+		int to = fieldEnd[field];
+		long mantissa = 0;
+		int digits = 0;
+		int fracDigits = -1;
+		boolean simple = from < to;
+		for (int i = from; i < to && simple; i++) {
+			byte b = buf[i];
+			if (b == '.' && fracDigits < 0) {
+				fracDigits = 0;
+			} else if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (fracDigits >= 0)
+					fracDigits++;
+			} else {
+				simple = false;
+			}
+		}
+		if (simple && digits > 0 && digits <= 15 && fracDigits < POW10.length)
+			return fracDigits <= 0 ? (double)mantissa : mantissa / POW10[fracDigits];
+		try {
+			return Double.parseDouble(new String(buf, from, to - from, LATIN1).trim());
+		} catch (NumberFormatException ex) {
+			throw numberError(field);
+		}
+	}
+
+	private IllegalStateException numberError(int field) {
+		return new IllegalStateException("Wrong number format in column " + (field + 1) +
+				" of blast output at line " + lineNum + ": " +
+				new String(buf, fieldStart[field], fieldEnd[field] - fieldStart[field], LATIN1));
+	}
+}
@@ -1,15 +1,16 @@
 package us.kbase.genomecomparison;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import us.kbase.common.service.Tuple3;
 import us.kbase.common.service.Tuple4;
 import us.kbase.common.service.UObject;
 import us.kbase.kbasegenomes.Feature;
@@ -19,125 +20,254 @@ import us.kbase.workspace.ObjectSaveData;
 import us.kbase.workspace.SaveObjectsParams;
 
 public class BlastProteomes {
+	private static final int SAVE_BATCH_SIZE = 10;
+	private static final int BLAST_MAX_TARGET_SEQS = 500;
+	private static final long PROGRESS_INTERVAL_MS = 30 * 1000;
+	private static final String UJS_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
 	
 	public static void run(String token, BlastProteomesParams params, GenomeCmpConfig cfg) throws Exception {
-		List<InnerFeature> features1 = extractProteome(params.getGenome1ws(), 
-				params.getGenome1id(), token, cfg.getObjectStorage());
+		run(token, params, cfg, null);
+	}
+	
+	/**
+	 * Compares proteomes of two genomes. Status of job (if it's defined) is updated
+	 * in case blast hits were found in cache.
+	 */
+	public static void run(String token, BlastProteomesParams params, GenomeCmpConfig cfg, 
+			String jobId) throws Exception {
+		String genome1ref = params.getGenome1ws() + "/" + params.getGenome1id();
+		String genome2ref = params.getGenome2ws() + "/" + params.getGenome2id();
+		List<InnerFeature> features1 = extractProteome(genome1ref, token, cfg.getObjectStorage());
 		Map<String, String> proteome1 = featuresToProtMap(features1);
-		List<InnerFeature> features2 = extractProteome(params.getGenome2ws(), 
-				params.getGenome2id(), token, cfg.getObjectStorage());
+		List<InnerFeature> features2 = extractProteome(genome2ref, token, cfg.getObjectStorage());
 		Map<String, String> proteome2 = featuresToProtMap(features2);
-		final Map<String, List<InnerHit>> data1 = new LinkedHashMap<String, List<InnerHit>>();
-		final Map<String, List<InnerHit>> data2 = new LinkedHashMap<String, List<InnerHit>>();
+		List<String> prot1names = new ArrayList<String>();
+		Map<String, Long> prot1map = new HashMap<String, Long>();
+		linkedMapToPos(proteome1, prot1names, prot1map);
+		List<String> prot2names = new ArrayList<String>();
+		Map<String, Long> prot2map = new HashMap<String, Long>();
+		linkedMapToPos(proteome2, prot2names, prot2map);
 		String maxEvalue = params.getMaxEvalue() == null ? "1e-10" : params.getMaxEvalue();
-		BlastStarter.run(cfg.getTempDir(), proteome1, proteome2, cfg.getBlastBin(), maxEvalue, new BlastStarter.ResultCallback() {
-			@Override
-			public void proteinPair(String name1, String name2, double ident,
-					int alnLen, int mismatch, int gapopens, int qstart, int qend,
-					int tstart, int tend, String eval, double bitScore) {
-				InnerHit h = new InnerHit().withId1(name1).withId2(name2).withScore(bitScore);
-				List<InnerHit> l1 = data1.get(name1);
-				if (l1 == null) {
-					l1 = new ArrayList<InnerHit>();
-					data1.put(name1, l1);
-				}
-				l1.add(h);
-				List<InnerHit> l2 = data2.get(name2);
-				if (l2 == null) {
-					l2 = new ArrayList<InnerHit>();
-					data2.put(name2, l2);
-				}
-				l2.add(h);
-			}
-		});
-		Comparator<InnerHit> hcmp = new Comparator<InnerHit>() {
-			@Override
-			public int compare(InnerHit o1, InnerHit o2) {
-				int ret = Double.compare(o2.getScore(), o1.getScore());
-				if (ret == 0) {
-					if (o1.getPercentOfBestScore() != null && o2.getPercentOfBestScore() != null) {
-						ret = Utils.compare(o2.getPercentOfBestScore(), o1.getPercentOfBestScore());
-					}
+		BlastHitCache hitCache = cfg.getBlastHitCache();
+		String hash1 = null;
+		String hash2 = null;
+		HitTable hits = null;
+		if (hitCache != null) {
+			hash1 = BlastDbCache.proteomeHash(proteome1);
+			hash2 = BlastDbCache.proteomeHash(proteome2);
+			hits = hitCache.load(hash1, hash2, maxEvalue, prot1names, prot2names);
+		}
+		if (hits != null) {
+			Stat.addBlastHitCacheHit(cfg.getTempDir());
+			if (jobId != null)
+				cfg.getJobStatuses().updateJob(jobId, token, "running (blast hits are taken from cache)", null);
+		} else {
+			final HitTable blastHits = new HitTable(prot1names, prot2names);
+			long time = System.currentTimeMillis();
+			BlastStarter.run(cfg.getTempDir(), proteome1, proteome2, cfg.getBlastBin(), maxEvalue, 
+					cfg.getBlastShards(), cfg.getBlastThreads(), cfg.getBlastDbCache(), 0,
+					new BlastStarter.ResultCallback() {
+				@Override
+				public void proteinPair(String name1, String name2, double ident,
+						int alnLen, int mismatch, int gapopens, int qstart, int qend,
+						int tstart, int tend, String eval, double bitScore) {
+					blastHits.add(name1, name2, bitScore);
 				}
-				return ret;
+			}, createProgressCallback(cfg, token, jobId));
+			Stat.addBlastRun(cfg.getTempDir(), proteome1.size(), blastHits.size(), 
+					System.currentTimeMillis() - time);
+			hits = blastHits;
+			if (hitCache != null) {
+				Stat.addBlastHitCacheMiss(cfg.getTempDir());
+				hitCache.save(hash1, hash2, maxEvalue, hits);
 			}
-		};
+		}
 		Double subBbhPercentParam = params.getSubBbhPercent();
 		double subBbhPercent = subBbhPercentParam == null ? 90 : subBbhPercentParam;
-		for (Map.Entry<String, List<InnerHit>> entry : data1.entrySet()) 
-			Collections.sort(entry.getValue(), hcmp);
-		for (Map.Entry<String, List<InnerHit>> entry : data2.entrySet()) 
-			Collections.sort(entry.getValue(), hcmp);
-		for (Map.Entry<String, List<InnerHit>> entry : data1.entrySet()) {
-			List<InnerHit> l = entry.getValue();
-			double best1 = l.get(0).getScore();
-			for (InnerHit h : l) {
-				double best2 = getBestScore(h.getId2(), data2);
-				h.setPercentOfBestScore(Math.round(h.getScore() * 100.0 / Math.max(best1, best2) + 1e-6));
+		hits.filterSubBbh(subBbhPercent);
+		ProteomeComparison res = buildComparison(genome1ref, genome2ref, prot1names, prot1map, 
+				prot2names, prot2map, hits, subBbhPercent, maxEvalue, isPacked(params.getPackedHits()));
+		cfg.getObjectStorage().saveObjects(token, new SaveObjectsParams().withWorkspace(
+				params.getOutputWs()).withObjects(Arrays.asList(createSaveData(params.getOutputId(), res))));
+	}
+
+	/**
+	 * Compares proteomes of all pairs of genomes with one (sharded) blastp run.
+	 * Proteins of every genome are renamed into "genomePos_proteinPos", proteins
+	 * of all genomes except the last one are used as query against one database
+	 * joining all genomes except the first one. Only hits from genome i to genome
+	 * j where i < j are kept (so the direction is the same as in case of separate
+	 * comparison), hits to the same or previous genomes are skipped. Hits are
+	 * collected in separate tables. E-values are rescaled from size of joined
+	 * database to size of genome j, so max_evalue means the same as in separate
+	 * comparison. Comparisons are saved into workspace by batches.
+	 */
+	public static void runMany(String token, BlastProteomesManyParams params, GenomeCmpConfig cfg, 
+			String jobId) throws Exception {
+		final List<String> refs = params.getGenomeRefs();
+		if (refs == null || refs.size() < 2)
+			throw new IllegalStateException("At least two genomes should be defined for comparison");
+		final int n = refs.size();
+		List<List<String>> protNames = new ArrayList<List<String>>();
+		List<Map<String, Long>> protMaps = new ArrayList<Map<String, Long>>();
+		final long[] letters = new long[n];
+		Map<String, String> query = new LinkedHashMap<String, String>();
+		Map<String, String> db = new LinkedHashMap<String, String>();
+		long dbLettersSum = 0;
+		long minLetters = Long.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			Map<String, String> proteome = featuresToProtMap(extractProteome(refs.get(i), token, 
+					cfg.getObjectStorage()));
+			List<String> names = new ArrayList<String>();
+			Map<String, Long> map = new HashMap<String, Long>();
+			linkedMapToPos(proteome, names, map);
+			protNames.add(names);
+			protMaps.add(map);
+			int pos = 0;
+			for (String seq : proteome.values()) {
+				String name = i + "_" + (pos++);
+				if (i < n - 1)
+					query.put(name, seq);
+				if (i > 0)
+					db.put(name, seq);
+				letters[i] += seq.length();
 			}
-			for (int pos = l.size() - 1; pos > 0; pos--) 
-				if (l.get(pos).getPercentOfBestScore() < subBbhPercent)
-					l.remove(pos);
-			Collections.sort(entry.getValue(), hcmp);
-		}
-		for (Map.Entry<String, List<InnerHit>> entry : data2.entrySet()) {
-			List<InnerHit> l = entry.getValue();
-			double best2 = l.get(0).getScore();
-			for (InnerHit h : l) {
-				double best1 = getBestScore(h.getId1(), data1);
-				h.setPercentOfBestScore(Math.round(h.getScore() * 100.0 / Math.max(best1, best2) + 1e-6));
+			if (i > 0) {
+				dbLettersSum += letters[i];
+				minLetters = Math.min(minLetters, letters[i]);
 			}
-			for (int pos = l.size() - 1; pos > 0; pos--) 
-				if (l.get(pos).getPercentOfBestScore() < subBbhPercent)
-					l.remove(pos);
-			Collections.sort(entry.getValue(), hcmp);
 		}
-		List<String> prot1names = new ArrayList<String>();
-		Map<String, Long> prot1map = new HashMap<String, Long>();
-		linkedMapToPos(proteome1, prot1names, prot1map);
-		List<String> prot2names = new ArrayList<String>();
-		Map<String, Long> prot2map = new HashMap<String, Long>();
-		linkedMapToPos(proteome2, prot2names, prot2map);
-		List<List<Tuple3<Long, Long, Long>>> data1new = new ArrayList<List<Tuple3<Long, Long, Long>>>();
-		for (String prot1name : prot1names) {
-			List<Tuple3<Long, Long, Long>> hits = new ArrayList<Tuple3<Long, Long, Long>>();
-			data1new.add(hits);
-			List<InnerHit> ihits = data1.get(prot1name);
-			if (ihits == null)
-				continue;
-			for (InnerHit ih : ihits) {
-				Tuple3<Long, Long, Long> h = new Tuple3<Long, Long, Long>()
-						.withE1(prot2map.get(ih.getId2())).withE2(Math.round(ih.getScore() * 100))
-						.withE3(ih.getPercentOfBestScore());
-				hits.add(h);
+		final HitTable[] tables = new HitTable[n * n];
+		for (int i = 0; i < n; i++)
+			for (int j = i + 1; j < n; j++)
+				tables[i * n + j] = new HitTable(protNames.get(i), protNames.get(j));
+		String maxEvalue = params.getMaxEvalue() == null ? "1e-10" : params.getMaxEvalue();
+		final double maxEvalueValue = Double.parseDouble(maxEvalue);
+		final long dbLetters = Math.max(1, dbLettersSum);
+		// E-value of hit is proportional to size of database, threshold of run
+		// is raised so that hits passing it for the smallest genome are kept.
+		String runEvalue = n == 2 ? maxEvalue : 
+			String.valueOf(maxEvalueValue * dbLetters / Math.max(1, minLetters));
+		final long[] hitCount = {0};
+		long time = System.currentTimeMillis();
+		// Joined database is used once, so it's not put into shared cache
+		BlastStarter.run(cfg.getTempDir(), query, db, cfg.getBlastBin(), runEvalue, 
+				cfg.getBlastShards(), cfg.getBlastThreads(), null, BLAST_MAX_TARGET_SEQS * (n - 1), 
+				new BlastStarter.ResultCallback() {
+			@Override
+			public void proteinPair(String name1, String name2, double ident,
+					int alnLen, int mismatch, int gapopens, int qstart, int qend,
+					int tstart, int tend, String eval, double bitScore) {
+				int sep1 = name1.indexOf('_');
+				int genome1 = Integer.parseInt(name1.substring(0, sep1));
+				int sep2 = name2.indexOf('_');
+				int genome2 = Integer.parseInt(name2.substring(0, sep2));
+				if (genome2 <= genome1)
+					return;
+				if (Double.parseDouble(eval) * letters[genome2] / dbLetters > maxEvalueValue)
+					return;
+				tables[genome1 * n + genome2].add(Integer.parseInt(name1.substring(sep1 + 1)), 
+						Integer.parseInt(name2.substring(sep2 + 1)), bitScore);
+				hitCount[0]++;
 			}
-		}
-		List<List<Tuple3<Long, Long, Long>>> data2new = new ArrayList<List<Tuple3<Long, Long, Long>>>();
-		for (String prot2name : prot2names) {
-			List<Tuple3<Long, Long, Long>> hits = new ArrayList<Tuple3<Long, Long, Long>>();
-			data2new.add(hits);
-			List<InnerHit> ihits = data2.get(prot2name);
-			if (ihits == null)
-				continue;
-			for (InnerHit ih : ihits) {
-				Tuple3<Long, Long, Long> h = new Tuple3<Long, Long, Long>()
-						.withE1(prot1map.get(ih.getId1())).withE2(Math.round(ih.getScore() * 100))
-						.withE3(ih.getPercentOfBestScore());
-				hits.add(h);
+		}, createProgressCallback(cfg, token, jobId));
+		Stat.addBlastRun(cfg.getTempDir(), query.size(), hitCount[0], System.currentTimeMillis() - time);
+		query = null;
+		db = null;
+		Double subBbhPercentParam = params.getSubBbhPercent();
+		double subBbhPercent = subBbhPercentParam == null ? 90 : subBbhPercentParam;
+		List<String> outputIds = getOutputIds(params);
+		List<ObjectSaveData> batch = new ArrayList<ObjectSaveData>();
+		int saved = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i + 1; j < n; j++) {
+				HitTable hits = tables[i * n + j];
+				tables[i * n + j] = null;
+				hits.filterSubBbh(subBbhPercent);
+				ProteomeComparison res = buildComparison(refs.get(i), refs.get(j), protNames.get(i), 
+						protMaps.get(i), protNames.get(j), protMaps.get(j), hits, subBbhPercent, maxEvalue,
+						isPacked(params.getPackedHits()));
+				batch.add(createSaveData(outputIds.get(batch.size() + saved), res));
+				if (batch.size() >= SAVE_BATCH_SIZE || (i == n - 2 && j == n - 1)) {
+					cfg.getObjectStorage().saveObjects(token, new SaveObjectsParams().withWorkspace(
+							params.getOutputWs()).withObjects(batch));
+					saved += batch.size();
+					batch = new ArrayList<ObjectSaveData>();
+					if (jobId != null)
+						cfg.getJobStatuses().updateJob(jobId, token, "running (" + saved + " of " + 
+								outputIds.size() + " comparisons are saved)", null);
+				}
 			}
 		}
-		ProteomeComparison res = new ProteomeComparison()
+	}
+
+	/**
+	 * Creates callback sending number of processed proteins and estimated time of
+	 * completion into job status (not more often than once in PROGRESS_INTERVAL_MS).
+	 * @return callback or null in case job is not defined
+	 */
+	private static BlastStarter.ProgressCallback createProgressCallback(final GenomeCmpConfig cfg, 
+			final String token, final String jobId) {
+		if (jobId == null)
+			return null;
+		final long startTime = System.currentTimeMillis();
+		return new BlastStarter.ProgressCallback() {
+			private long lastUpdate = startTime;
+			@Override
+			public void progress(int queriesDone, int queriesTotal) {
+				long now = System.currentTimeMillis();
+				if (queriesDone <= 0 || queriesDone >= queriesTotal || now - lastUpdate < PROGRESS_INTERVAL_MS)
+					return;
+				lastUpdate = now;
+				long estComplete = startTime + (now - startTime) * queriesTotal / queriesDone;
+				try {
+					cfg.getJobStatuses().updateJob(jobId, token, "running (blast: " + queriesDone + 
+							" of " + queriesTotal + " proteins are processed)", 
+							new SimpleDateFormat(UJS_TIME_FORMAT).format(new Date(estComplete)));
+				} catch (Exception ex) {
+					ex.printStackTrace();
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return ids of output objects in order of pairs of genomes (i, j) where i < j
+	 */
+	public static List<String> getOutputIds(BlastProteomesManyParams params) {
+		int n = params.getGenomeRefs().size();
+		List<String> ret = new ArrayList<String>();
+		for (int i = 0; i < n; i++)
+			for (int j = i + 1; j < n; j++)
+				ret.add(params.getOutputIdPrefix() + "_" + (i + 1) + "_" + (j + 1));
+		return ret;
+	}
+
+	private static ProteomeComparison buildComparison(String genome1ref, String genome2ref,
+			List<String> prot1names, Map<String, Long> prot1map, List<String> prot2names, 
+			Map<String, Long> prot2map, HitTable hits, double subBbhPercent, String maxEvalue,
+			boolean packed) {
+		ProteomeComparison ret = new ProteomeComparison()
 			.withSubBbhPercent(subBbhPercent)
 			.withMaxEvalue(maxEvalue)
-			.withGenome1ref(params.getGenome1ws() + "/" + params.getGenome1id())
-			.withGenome2ref(params.getGenome2ws() + "/" + params.getGenome2id())
+			.withGenome1ref(genome1ref)
+			.withGenome2ref(genome2ref)
 			.withProteome1names(prot1names)
-			.withProteome1map(prot1map)
-			.withProteome2names(prot2names)
-			.withProteome2map(prot2map)
-			.withData1(data1new)
-			.withData2(data2new);
-		saveResult(params.getOutputWs(), params.getOutputId(), token, res, cfg.getObjectStorage());
+			.withProteome2names(prot2names);
+		if (packed) {
+			ret.withData1Packed(hits.buildPacked1().encode())
+				.withData2Packed(hits.buildPacked2().encode());
+		} else {
+			ret.withProteome1map(prot1map)
+				.withProteome2map(prot2map)
+				.withData1(hits.buildData1())
+				.withData2(hits.buildData2());
+		}
+		return ret;
+	}
+
+	private static boolean isPacked(Long packedHits) {
+		return packedHits != null && packedHits != 0L;
 	}
 
 	private static Map<String, String> featuresToProtMap(List<InnerFeature> features) {
@@ -159,17 +289,10 @@ public class BlastProteomes {
 		}
 	}
 	
-	private static double getBestScore(String name, Map<String, List<InnerHit>> data) {
-		List<InnerHit> l = data.get(name);
-		if (l == null || l.isEmpty())
-			return 0;
-		return l.get(0).getScore();
-	}
-
-	private static List<InnerFeature> extractProteome(String ws, String genomeId, String token,
+	private static List<InnerFeature> extractProteome(String genomeRef, String token,
 			ObjectStorage objectStorage) throws Exception {
 		UObject genomeObj = objectStorage.getObjects(token,
-				Arrays.asList(new ObjectIdentity().withRef(ws + "/" + genomeId))).get(0).getData();
+				Arrays.asList(new ObjectIdentity().withRef(genomeRef))).get(0).getData();
 		Genome genome = genomeObj.asClassInstance(Genome.class);
 		List<InnerFeature> ret = new ArrayList<InnerFeature>();
 		for (Feature feature : genome.getFeatures()) {
@@ -208,8 +331,7 @@ public class BlastProteomes {
 		return ret;
 	}
 
-	private static void saveResult(String ws, String id, String token, ProteomeComparison res,
-			ObjectStorage objectStorage) throws Exception {
+	private static ObjectSaveData createSaveData(String id, ProteomeComparison res) {
 		ObjectSaveData data = new ObjectSaveData().withData(new UObject(res)).withType("GenomeComparison.ProteomeComparison");
 		try {
 			long objid = Long.parseLong(id);
@@ -217,51 +339,7 @@ public class BlastProteomes {
 		} catch (NumberFormatException ex) {
 			data.withName(id);
 		}
-		objectStorage.saveObjects(token, new SaveObjectsParams().withWorkspace(ws).withObjects(
-				Arrays.asList(data)));
-	}
-
-	private static class InnerHit {
-
-		private String id1;
-		private String id2;
-		private Double score;
-		private Long percentOfBestScore;
-
-		public String getId1() {
-			return id1;
-		}
-
-		public InnerHit withId1(String id1) {
-			this.id1 = id1;
-			return this;
-		}
-
-		public String getId2() {
-			return id2;
-		}
-
-		public InnerHit withId2(String id2) {
-			this.id2 = id2;
-			return this;
-		}
-
-		public Double getScore() {
-			return score;
-		}
-
-		public InnerHit withScore(Double score) {
-			this.score = score;
-			return this;
-		}
-
-		public Long getPercentOfBestScore() {
-			return percentOfBestScore;
-		}
-
-		public void setPercentOfBestScore(Long percentOfBestScore) {
-			this.percentOfBestScore = percentOfBestScore;
-		}
+		return data;
 	}
 
 	private static class InnerFeature {
@@ -22,6 +22,9 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  * string max_evalue -  optional parameter, maximum evalue, default is 1e-10
  * string output_ws - workspace of output object
  * string output_id - future id of output object
+ * int priority - optional parameter, queued jobs of the same user with higher priority are started first, default is 0
+ * int packed_hits - optional flag, hits are stored in data1_packed/data2_packed fields of ProteomeComparison
+ *         instead of data1/data2 (and proteome1map/proteome2map are not stored), default is 0
  * </pre>
  * 
  */
@@ -35,7 +38,9 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
     "sub_bbh_percent",
     "max_evalue",
     "output_ws",
-    "output_id"
+    "output_id",
+    "priority",
+    "packed_hits"
 })
 public class BlastProteomesParams {
 
@@ -55,6 +60,10 @@ public class BlastProteomesParams {
     private String outputWs;
     @JsonProperty("output_id")
     private String outputId;
+    @JsonProperty("priority")
+    private Long priority;
+    @JsonProperty("packed_hits")
+    private Long packedHits;
     private Map<String, Object> additionalProperties = new HashMap<String, Object>();
 
     @JsonProperty("genome1ws")
@@ -177,6 +186,36 @@ public class BlastProteomesParams {
         return this;
     }
 
+    @JsonProperty("priority")
+    public Long getPriority() {
+        return priority;
+    }
+
+    @JsonProperty("priority")
+    public void setPriority(Long priority) {
+        this.priority = priority;
+    }
+
+    public BlastProteomesParams withPriority(Long priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @JsonProperty("packed_hits")
+    public Long getPackedHits() {
+        return packedHits;
+    }
+
+    @JsonProperty("packed_hits")
+    public void setPackedHits(Long packedHits) {
+        this.packedHits = packedHits;
+    }
+
+    public BlastProteomesParams withPackedHits(Long packedHits) {
+        this.packedHits = packedHits;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -189,7 +228,7 @@ public class BlastProteomesParams {
 
     @Override
     public String toString() {
-        return ((((((((((((((((((("BlastProteomesParams"+" [genome1ws=")+ genome1ws)+", genome1id=")+ genome1id)+", genome2ws=")+ genome2ws)+", genome2id=")+ genome2id)+", subBbhPercent=")+ subBbhPercent)+", maxEvalue=")+ maxEvalue)+", outputWs=")+ outputWs)+", outputId=")+ outputId)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((((((((((("BlastProteomesParams"+" [genome1ws=")+ genome1ws)+", genome1id=")+ genome1id)+", genome2ws=")+ genome2ws)+", genome2id=")+ genome2id)+", subBbhPercent=")+ subBbhPercent)+", maxEvalue=")+ maxEvalue)+", outputWs=")+ outputWs)+", outputId=")+ outputId)+", priority=")+ priority)+", packedHits=")+ packedHits)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
@@ -2,41 +2,133 @@ package us.kbase.genomecomparison;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Pattern;
 
 public class BlastStarter {
-	private static final Pattern tabDiv = Pattern.compile(Pattern.quote("\t"));
 	private static long lastTimestamp = -1;
 	
 	public static void run(File tempDir, Map<String, String> proteomeQ, Map<String, String> proteome2, 
 			File blastBin, String maxEvalue, ResultCallback ret) throws Exception {
-		File q_file = saveFastaSeries(tempDir, proteomeQ, "query");
+		run(tempDir, proteomeQ, proteome2, blastBin, maxEvalue, 1, 1, ret);
+	}
+
+	public static void run(File tempDir, Map<String, String> proteomeQ, Map<String, String> proteome2, 
+			File blastBin, String maxEvalue, int shardCount, int blastThreads, ResultCallback ret) throws Exception {
+		run(tempDir, proteomeQ, proteome2, blastBin, maxEvalue, shardCount, blastThreads, null, ret);
+	}
+
+	public static void run(File tempDir, Map<String, String> proteomeQ, Map<String, String> proteome2, 
+			File blastBin, String maxEvalue, int shardCount, int blastThreads, BlastDbCache dbCache,
+			ResultCallback ret) throws Exception {
+		run(tempDir, proteomeQ, proteome2, blastBin, maxEvalue, shardCount, blastThreads, dbCache, 0, ret);
+	}
+
+	/**
+	 * Runs blastp for query proteome against second proteome (or against itself
+	 * in case proteome2 is null). Query proteome is split into shardCount parts
+	 * of similar total length, all parts are processed by separate blastp 
+	 * processes in parallel (each using blastThreads threads) against one shared 
+	 * database. Results are pushed into callback in the same order as in case of
+	 * one blastp process. Database is taken from dbCache if it's defined.
+	 * Positive maxTargetSeqs overrides default limit of blastp for number of 
+	 * aligned sequences per query.
+	 */
+	public static void run(File tempDir, Map<String, String> proteomeQ, Map<String, String> proteome2, 
+			File blastBin, String maxEvalue, int shardCount, int blastThreads, BlastDbCache dbCache,
+			int maxTargetSeqs, ResultCallback ret) throws Exception {
+		run(tempDir, proteomeQ, proteome2, blastBin, maxEvalue, shardCount, blastThreads, dbCache, 
+				maxTargetSeqs, ret, null);
+	}
+
+	/**
+	 * The same as previous method but also reports number of processed query
+	 * proteins into progress callback (if it's defined).
+	 */
+	public static void run(File tempDir, Map<String, String> proteomeQ, Map<String, String> proteome2, 
+			File blastBin, String maxEvalue, int shardCount, int blastThreads, BlastDbCache dbCache,
+			int maxTargetSeqs, ResultCallback ret, ProgressCallback progress) throws Exception {
+		final String binPath = blastBin == null ? "" : (blastBin.getAbsolutePath() + "/");
+		List<File> q_files = new ArrayList<File>();
 		File s_file = null;
-		if (proteome2 != null) {
-			s_file = saveFastaSeries(tempDir, proteome2, "db");
-		} else {
-			s_file = q_file;
-		}
+		File db = null;
 		try {
-			runBlast(blastBin, q_file, s_file, tempDir, maxEvalue, ret);
+			Map<String, String> dbProteome = proteome2 == null ? proteomeQ : proteome2;
+			if (dbCache != null) {
+				db = dbCache.acquire(dbProteome, new BlastDbCache.DbBuilder() {
+					@Override
+					public void build(Map<String, String> proteome, File dbFile) throws Exception {
+						saveFasta(proteome, dbFile);
+						makeBlastDb(binPath, dbFile);
+						dbFile.delete();
+					}
+				});
+			} else {
+				s_file = saveFastaSeries(tempDir, dbProteome, "db");
+				makeBlastDb(binPath, s_file);
+				db = s_file;
+			}
+			List<Map<String, String>> shards = splitProteome(proteomeQ, shardCount);
+			if (shards.size() == 1 && proteome2 == null && s_file != null) {
+				q_files.add(s_file);
+			} else {
+				for (Map<String, String> shard : shards)
+					q_files.add(saveFastaSeries(tempDir, shard, "query"));
+			}
+			if (progress != null)
+				ret = new ProgressTracker(shards, ret, progress);
+			runBlast(binPath, q_files, db, tempDir, maxEvalue, blastThreads, maxTargetSeqs, ret);
 		} finally {
+			if (dbCache != null && db != null)
+				dbCache.release(db);
 			Thread.sleep(200);
-			q_file.delete();
-			if (proteome2 != null) {
+			for (File q_file : q_files)
+				q_file.delete();
+			if (s_file != null) {
 				s_file.delete();
+				File s2_file = new File(tempDir, s_file.getName()+".phr");
+				if (s2_file.exists()) 
+					s2_file.delete();
+				File s3_file = new File(tempDir, s_file.getName()+".pin");
+				if (s3_file.exists()) 
+					s3_file.delete();
+				File s4_file = new File(tempDir, s_file.getName()+".psq");
+				if (s4_file.exists()) 
+					s4_file.delete();
 			}
-			File s2_file = new File(tempDir, s_file.getName()+".phr");
-			if (s2_file.exists()) 
-				s2_file.delete();
-			File s3_file = new File(tempDir, s_file.getName()+".pin");
-			if (s3_file.exists()) 
-				s3_file.delete();
-			File s4_file = new File(tempDir, s_file.getName()+".psq");
-			if (s4_file.exists()) 
-				s4_file.delete();
 		}
 	}
 
+	/**
+	 * Splits proteome into at most shardCount consecutive parts having close 
+	 * total residue counts. Order of proteins is kept.
+	 */
+	public static List<Map<String, String>> splitProteome(Map<String, String> proteome, int shardCount) {
+		List<Map<String, String>> ret = new ArrayList<Map<String, String>>();
+		if (shardCount <= 1 || proteome.size() <= 1) {
+			ret.add(proteome);
+			return ret;
+		}
+		shardCount = Math.min(shardCount, proteome.size());
+		long total = 0;
+		for (String seq : proteome.values())
+			total += seq.length();
+		Map<String, String> shard = new LinkedHashMap<String, String>();
+		long sum = 0;
+		int left = proteome.size();
+		for (Map.Entry<String, String> entry : proteome.entrySet()) {
+			int shardsLeft = shardCount - ret.size();
+			if (shard.size() > 0 && (shardsLeft > 1) && 
+					(sum * shardCount >= total * (ret.size() + 1) || left < shardsLeft)) {
+				ret.add(shard);
+				shard = new LinkedHashMap<String, String>();
+			}
+			shard.put(entry.getKey(), entry.getValue());
+			sum += entry.getValue().length();
+			left--;
+		}
+		ret.add(shard);
+		return ret;
+	}
+
 	private synchronized static long generateTimestmap() {
 		long ret = System.currentTimeMillis();
 		if (ret <= lastTimestamp)
@@ -47,20 +139,21 @@ public class BlastStarter {
 	
 	private static File saveFastaSeries(File tempDir, Map<String, String> proteome, String prefix) throws Exception {
 		File ret = new File(tempDir, "tmp_"+prefix+"_"+generateTimestmap()+".fst");
+		saveFasta(proteome, ret);
+		return ret;
+	}
+	
+	private static void saveFasta(Map<String, String> proteome, File ret) throws Exception {
 		FastaWriter fw = new FastaWriter(new PrintWriter(ret));
 		for (Map.Entry<String, String> entry : proteome.entrySet())
 			fw.write(entry.getKey(), entry.getValue());
 		fw.close();
-		return ret;
 	}
 	
-	private static void runBlast(File blastBin, File queryFile, File databaseFile, 
-			File tempDir, String maxEvalue, ResultCallback ret) throws Exception {
-		File tempResFile = new File(tempDir, "tmp_result_" + generateTimestmap() + ".txt");
+	private static void makeBlastDb(String binPath, File databaseFile) throws Exception {
 		CorrectProcess cp = null;
 		ByteArrayOutputStream err_baos = null;
 		Exception err = null;
-		String binPath = blastBin == null ? "" : (blastBin.getAbsolutePath() + "/");
 		try {
 			Process p = Runtime.getRuntime().exec(CorrectProcess.arr(binPath + "makeblastdb", 
 					"-dbtype", "prot", "-in", databaseFile.getAbsolutePath()));
@@ -78,62 +171,198 @@ public class BlastStarter {
 			if(err_text.length()>0)
 				err = new Exception("makeblastdb: "+err_text,err);
 		}
-		int procExitValue = -1;
-		if(err==null) {
-			cp = null;
-			err_baos = null;
+		if (err != null)
+			throw err;
+	}
+	
+	private static void runBlast(String binPath, List<File> queryFiles, File databaseFile, 
+			File tempDir, String maxEvalue, int blastThreads, int maxTargetSeqs, ResultCallback ret) throws Exception {
+		int shardCount = queryFiles.size();
+		BlastShard[] shards = new BlastShard[shardCount];
+		try {
+			// First shard is parsed from stdout while it's running, others write
+			// into temporary files which are parsed in order after they are done.
+			for (int i = 0; i < shardCount; i++) {
+				File resFile = i == 0 ? null : 
+					new File(tempDir, "tmp_result_" + generateTimestmap() + ".txt");
+				shards[i] = new BlastShard(binPath, queryFiles.get(i), databaseFile, 
+						maxEvalue, blastThreads, maxTargetSeqs, resFile);
+			}
+			for (int i = 0; i < shardCount; i++) {
+				shards[i].waitAndParse(ret);
+				if (ret instanceof ProgressTracker)
+					((ProgressTracker)ret).shardDone(i);
+			}
+		} catch (Exception ex) {
+			for (BlastShard shard : shards)
+				if (shard != null)
+					shard.destroy();
+			throw ex;
+		} finally {
+			for (BlastShard shard : shards)
+				if (shard != null)
+					shard.deleteResult();
+		}
+	}
+
+	private static class BlastShard {
+		private final Process p;
+		private final ByteArrayOutputStream err_baos = new ByteArrayOutputStream();
+		private final ProcessStreamHolder errHolder;
+		private final ProcessStreamHolder outHolder;
+		private final File resFile;
+		
+		BlastShard(String binPath, File queryFile, File databaseFile, String maxEvalue, 
+				int blastThreads, int maxTargetSeqs, File resFile) throws Exception {
+			this.resFile = resFile;
+			List<String> args = new ArrayList<String>(Arrays.asList(binPath + "blastp",
+					"-query", queryFile.getAbsolutePath(), "-db", databaseFile.getAbsolutePath(), 
+					"-outfmt", "6", "-evalue", maxEvalue));
+			if (blastThreads > 1)
+				args.addAll(Arrays.asList("-num_threads", "" + blastThreads));
+			if (maxTargetSeqs > 0)
+				args.addAll(Arrays.asList("-max_target_seqs", "" + maxTargetSeqs));
+			if (resFile != null)
+				args.addAll(Arrays.asList("-out", resFile.getAbsolutePath()));
+			p = Runtime.getRuntime().exec(args.toArray(new String[args.size()]));
+			p.getOutputStream().close();
+			errHolder = new ProcessStreamHolder(p.getErrorStream(), "", err_baos);
+			errHolder.start();
+			if (resFile != null) {
+				outHolder = new ProcessStreamHolder(p.getInputStream(), "", new ByteArrayOutputStream());
+				outHolder.start();
+			} else {
+				outHolder = null;
+			}
+		}
+		
+		void waitAndParse(ResultCallback ret) throws Exception {
+			Exception err = null;
+			int procExitValue = -1;
 			try {
-				Process p = Runtime.getRuntime().exec(CorrectProcess.arr(binPath + "blastp",
-						"-query", queryFile.getAbsolutePath(), "-db", databaseFile.getAbsolutePath(), 
-						"-out", tempResFile.getAbsolutePath(), "-outfmt", "6", "-evalue", maxEvalue));
-				err_baos = new ByteArrayOutputStream();
-				cp = new CorrectProcess(p,new ByteArrayOutputStream(),"",err_baos,"");
+				if (resFile == null) {
+					InputStream is = p.getInputStream();
+					try {
+						new BlastOutputParser(is).parse(ret);
+					} finally {
+						is.close();
+					}
+				} else {
+					outHolder.join();
+				}
+				errHolder.join();
 				p.waitFor();
 				err_baos.close();
 				procExitValue = p.exitValue();
-			}catch(Exception ex) {
-				try{ err_baos.close(); }catch(Exception ex_) {}
-				try{ if(cp!=null)cp.destroy(); }catch(Exception ex_) {}
+			} catch (Exception ex) {
 				err = ex;
 			}
-			if(err_baos!=null) {
-				String err_text = new String(err_baos.toByteArray());
-				if(err_text.length()>0)
-					err = new Exception("blastp: "+err_text,err);
+			String err_text = new String(err_baos.toByteArray());
+			if(err_text.length()>0)
+				err = new Exception("blastp: "+err_text,err);
+			if (err == null && procExitValue != 0)
+				err = new IllegalStateException("Blast exit code: " + procExitValue);
+			if (err != null)
+				throw err;
+			if (resFile != null) {
+				InputStream is = new FileInputStream(resFile);
+				try {
+					new BlastOutputParser(is).parse(ret);
+				} finally {
+					is.close();
+				}
 			}
 		}
-		if (procExitValue == 0 && tempResFile.exists()) {
-			loadData(tempResFile,ret);
-			tempResFile.delete();		
-		} else {
-			if (err == null)
-				err = new IllegalStateException("Blast exit code: " + procExitValue + ", " +
-						"result file existance: " + tempResFile.exists());
-			if (tempResFile.exists()) 
-				tempResFile.delete();		
-			throw err;
+		
+		void destroy() {
+			try{ errHolder.stopThread(); }catch(Exception ex_) {}
+			try{ if(outHolder!=null)outHolder.stopThread(); }catch(Exception ex_) {}
+			try{ p.destroy(); }catch(Exception ex_) {}
 		}
-	}
-	
-	private static void loadData(File f, ResultCallback ret) throws Exception {
-		BufferedReader br = new BufferedReader(new FileReader(f));
-		while (true) {
-			String l = br.readLine();
-			if (l == null)
-				break;
-			if (l.trim().isEmpty())
-				continue;
-			String[] parts = tabDiv.split(l);
-			ret.proteinPair(parts[0], parts[1], Double.parseDouble(parts[2]), Integer.parseInt(parts[3]), 
-					Integer.parseInt(parts[4]), Integer.parseInt(parts[5]), Integer.parseInt(parts[6]), 
-					Integer.parseInt(parts[7]), Integer.parseInt(parts[8]), Integer.parseInt(parts[9]), 
-					parts[10], Double.parseDouble(parts[11]));
+		
+		void deleteResult() {
+			if (resFile != null && resFile.exists())
+				resFile.delete();
 		}
-		br.close();
 	}
-
+	
 	public static interface ResultCallback {
 		public void proteinPair(String qname, String tname, double ident, int alnLen, int mismatch,
 				int gapopens, int qstart, int qend, int tstart, int tend, String eval, double bitScore);
 	}
+
+	public static interface ProgressCallback {
+		public void progress(int queriesDone, int queriesTotal);
+	}
+
+	/**
+	 * Counts processed query proteins. First shard is parsed while blastp is 
+	 * running, so query of current row shows how many proteins of this shard
+	 * are done. Other shards are running in parallel with first one and are 
+	 * supposed to have the same relative progress until they are finished.
+	 */
+	private static class ProgressTracker implements ResultCallback {
+		private final ResultCallback inner;
+		private final ProgressCallback progress;
+		private final Map<String, Integer> firstShardPos = new HashMap<String, Integer>();
+		private final int[] shardSizes;
+		private final boolean[] shardDone;
+		private final int total;
+		private int firstShardQueries = 0;
+		private int lastReported = -1;
+
+		ProgressTracker(List<Map<String, String>> shards, ResultCallback inner, ProgressCallback progress) {
+			this.inner = inner;
+			this.progress = progress;
+			shardSizes = new int[shards.size()];
+			shardDone = new boolean[shards.size()];
+			int sum = 0;
+			for (int i = 0; i < shards.size(); i++) {
+				shardSizes[i] = shards.get(i).size();
+				sum += shardSizes[i];
+			}
+			total = sum;
+			for (String name : shards.get(0).keySet())
+				firstShardPos.put(name, firstShardPos.size());
+			report();
+		}
+
+		@Override
+		public void proteinPair(String qname, String tname, double ident, int alnLen, int mismatch,
+				int gapopens, int qstart, int qend, int tstart, int tend, String eval, double bitScore) {
+			inner.proteinPair(qname, tname, ident, alnLen, mismatch, gapopens, qstart, qend, 
+					tstart, tend, eval, bitScore);
+			if (!shardDone[0]) {
+				Integer pos = firstShardPos.get(qname);
+				if (pos != null && pos > firstShardQueries) {
+					firstShardQueries = pos;
+					report();
+				}
+			}
+		}
+
+		void shardDone(int shard) {
+			shardDone[shard] = true;
+			report();
+		}
+
+		private void report() {
+			long done = 0;
+			boolean allDone = true;
+			for (int i = 0; i < shardSizes.length; i++) {
+				if (shardDone[i]) {
+					done += shardSizes[i];
+				} else {
+					allDone = false;
+					done += (long)shardSizes[i] * firstShardQueries / Math.max(1, shardSizes[0]);
+				}
+			}
+			if (!allDone)
+				done = Math.max(0, Math.min(done, total - 1));
+			if (done == lastReported)
+				return;
+			lastReported = (int)done;
+			progress.progress(lastReported, total);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package us.kbase.genomecomparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import us.kbase.common.service.Tuple3;
+
+/**
+ * Compact form of hits of ProteomeComparison used for drawing of dot plots.
+ * Hits of gene i from first proteome are targets[offsets[i]..offsets[i+1])
+ * (gene indexes in second proteome) with bbh percents in the same positions
+ * of percents. It takes 5 bytes per hit instead of hundreds taken by lists of
+ * tuples, so decoded comparisons can be kept in memory between requests.
+ * Hits of every gene are sorted by target, so hits in rectangle of dot plot
+ * are found with binary search in every column. Summaries (mip-map levels)
+ * have the same structure where every cell of level m covers 4^m x 4^m genes
+ * and keeps best percent of hits in it, so zoomed-out dot plot is drawn in
+ * time proportional to number of pixels rather than number of hits.
+ */
+public class ComparisonHits {
+	private final int size1;
+	private final int size2;
+	private final int[] offsets;
+	private final int[] targets;
+	private final byte[] percents;
+	private final List<ComparisonHits> summaries;
+
+	public static final int SUMMARY_FACTOR = 4;
+
+	/**
+	 * @param targets targets of every gene should be sorted
+	 */
+	public ComparisonHits(int size1, int size2, int[] offsets, int[] targets, byte[] percents) {
+		this(size1, size2, offsets, targets, percents, true);
+	}
+
+	/**
+	 * @param buildSummaries summaries are not needed for hits used only in zoomed-in views
+	 */
+	ComparisonHits(int size1, int size2, int[] offsets, int[] targets, byte[] percents,
+			boolean buildSummaries) {
+		this.size1 = size1;
+		this.size2 = size2;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.percents = percents;
+		this.summaries = new ArrayList<ComparisonHits>();
+		if (buildSummaries) {
+			ComparisonHits level = this;
+			while (level.size1 > 1 || level.size2 > 1) {
+				level = level.coarsen();
+				summaries.add(level);
+			}
+		}
+	}
+
+	/**
+	 * @return next summary level where SUMMARY_FACTOR x SUMMARY_FACTOR cells
+	 * are joined keeping best percent
+	 */
+	private ComparisonHits coarsen() {
+		int f = SUMMARY_FACTOR;
+		int newSize1 = (size1 + f - 1) / f;
+		int[] newOffsets = new int[newSize1 + 1];
+		int[] newTargets = new int[targets.length];
+		byte[] newPercents = new byte[targets.length];
+		long[] buf = new long[16];
+		int count = 0;
+		for (int c = 0; c < newSize1; c++) {
+			int start = offsets[c * f];
+			int end = offsets[Math.min(size1, (c + 1) * f)];
+			if (buf.length < end - start)
+				buf = new long[end - start];
+			for (int pos = start; pos < end; pos++)
+				buf[pos - start] = ((long)(targets[pos] / f) << 8) | percents[pos];
+			Arrays.sort(buf, 0, end - start);
+			for (int k = 0; k < end - start; k++) {
+				// The same cell goes in a row with growing percent, the last one is kept
+				if (k + 1 < end - start && (buf[k + 1] >> 8) == (buf[k] >> 8))
+					continue;
+				newTargets[count] = (int)(buf[k] >> 8);
+				newPercents[count] = (byte)(buf[k] & 0xff);
+				count++;
+			}
+			newOffsets[c + 1] = count;
+		}
+		return new ComparisonHits(newSize1, (size2 + f - 1) / f, newOffsets,
+				Arrays.copyOf(newTargets, count), Arrays.copyOf(newPercents, count), false);
+	}
+
+	public static ComparisonHits fromComparison(ProteomeComparison cmp) {
+		int size1 = cmp.getProteome1names().size();
+		if (cmp.getData1() == null && cmp.getData1Packed() != null) {
+			// Packed hits are already sorted by target
+			PackedHits hits = PackedHits.decode(cmp.getData1Packed());
+			if (hits.getGeneCount() != size1)
+				throw new IllegalStateException("Packed hits are defined for " + hits.getGeneCount() +
+						" genes instead of " + size1);
+			return new ComparisonHits(size1, cmp.getProteome2names().size(), hits.getOffsets(),
+					hits.getTargets(), hits.getPercents());
+		}
+		return fromData(size1, cmp.getProteome2names().size(), cmp.getData1(), true);
+	}
+
+	/**
+	 * @param data hits of first size1 genes of first proteome in data1 form
+	 */
+	static ComparisonHits fromData(int size1, int size2, List<List<Tuple3<Long, Long, Long>>> data,
+			boolean buildSummaries) {
+		int[] offsets = new int[size1 + 1];
+		for (int i = 0; i < size1; i++)
+			offsets[i + 1] = offsets[i] + data.get(i).size();
+		int[] targets = new int[offsets[size1]];
+		byte[] percents = new byte[offsets[size1]];
+		long[] buf = new long[16];
+		for (int i = 0; i < size1; i++) {
+			List<Tuple3<Long, Long, Long>> hits = data.get(i);
+			if (buf.length < hits.size())
+				buf = new long[hits.size()];
+			int count = 0;
+			for (Tuple3<Long, Long, Long> hit : hits)
+				buf[count++] = (hit.getE1() << 8) | Math.min(100, Math.max(0, hit.getE3()));
+			Arrays.sort(buf, 0, count);
+			for (int k = 0; k < count; k++) {
+				targets[offsets[i] + k] = (int)(buf[k] >> 8);
+				percents[offsets[i] + k] = (byte)(buf[k] & 0xff);
+			}
+		}
+		return new ComparisonHits(size1, size2, offsets, targets, percents, buildSummaries);
+	}
+
+	/**
+	 * @return number of genes in first proteome
+	 */
+	public int getSize1() {
+		return size1;
+	}
+
+	/**
+	 * @return number of genes in second proteome
+	 */
+	public int getSize2() {
+		return size2;
+	}
+
+	public int getHitStart(int i) {
+		return offsets[i];
+	}
+
+	public int getHitEnd(int i) {
+		return offsets[i + 1];
+	}
+
+	/**
+	 * @return position of first hit of gene i with target not less than j
+	 * (or end of hits of gene i)
+	 */
+	public int findFirstHit(int i, int j) {
+		int lo = offsets[i];
+		int hi = offsets[i + 1];
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (targets[mid] < j) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	public int getHitCount() {
+		return targets.length;
+	}
+
+	public int getTarget(int hitPos) {
+		return targets[hitPos];
+	}
+
+	public int getPercent(int hitPos) {
+		return percents[hitPos];
+	}
+
+	/**
+	 * @return number of summary levels (the last one consists of one cell)
+	 */
+	public int getSummaryCount() {
+		return summaries.size();
+	}
+
+	/**
+	 * @param level level from 1 to getSummaryCount(), its cells cover
+	 * SUMMARY_FACTOR^level genes in both directions
+	 */
+	public ComparisonHits getSummary(int level) {
+		return summaries.get(level - 1);
+	}
+
+	/**
+	 * @return approximate size of this object (including summaries) in heap
+	 */
+	public long getMemorySize() {
+		long ret = 64 + 4L * offsets.length + 5L * targets.length;
+		for (ComparisonHits summary : summaries)
+			ret += summary.getMemorySize();
+		return ret;
+	}
+}
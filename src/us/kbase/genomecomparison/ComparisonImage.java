@@ -5,11 +5,15 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.imageio.ImageIO;
 import javax.servlet.ServletException;
@@ -22,13 +26,53 @@ import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 
 import us.kbase.common.service.JsonClientException;
-import us.kbase.common.service.Tuple3;
+import us.kbase.common.service.Tuple11;
 import us.kbase.common.service.UObject;
 import us.kbase.workspace.ObjectIdentity;
 
 public class ComparisonImage extends HttpServlet {
 	
 	private static final long serialVersionUID = 1L;
+	private static final int STAT_REQUESTS = 100;
+	private static final int[] PALETTE = createPalette();
+	private static final int MAX_PARTIAL_GENES = 8 * ComparisonSliceLoader.BLOCK_SIZE;
+	private static final long REF_TTL_MS = 10 * 1000;
+	private static final int MAX_REFS = 10000;
+	private static ComparisonImageCache cache = null;
+	private static ComparisonSliceLoader slices = null;
+	private static ObjectStorage storage = null;
+	private static File tempDir = null;
+	private static long requests = 0;
+	private static final Map<String, ResolvedRef> refs = new LinkedHashMap<String, ResolvedRef>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ResolvedRef> eldest) {
+			return size() > MAX_REFS;
+		}
+	};
+
+	private static synchronized ComparisonImageCache getCache() throws IOException {
+		if (cache == null) {
+			GenomeCmpConfig config = GenomeCmpConfig.loadConfig();
+			cache = new ComparisonImageCache(config.getImageCacheMb() * 1024 * 1024, 
+					config.getTileCacheMb() * 1024 * 1024);
+			storage = config.getObjectStorage();
+			slices = new ComparisonSliceLoader(storage, config.getSliceCacheMb() * 1024 * 1024);
+			tempDir = config.getTempDir();
+		}
+		return cache;
+	}
+
+	private static synchronized ComparisonSliceLoader getSliceLoader() throws IOException {
+		getCache();
+		return slices;
+	}
+
+	private static synchronized ObjectStorage getStorage() throws IOException {
+		getCache();
+		return storage;
+	}
 
 	public static void main(String[] args) throws Exception {
 		int port = 8888;
@@ -59,6 +103,14 @@ public class ComparisonImage extends HttpServlet {
 		response.setHeader("Access-Control-Allow-Headers", allowedHeaders == null ? "authorization" : allowedHeaders);
 	}
 
+	/**
+	 * Comparison is looked up in cache by reference with version (which is
+	 * resolved by workspace with token of request and reused for a few seconds
+	 * for the same token only, so access rights are checked for every user),
+	 * tile is taken from cache or rendered. Neighbour tiles are rendered in
+	 * background. Zoomed-in tiles of comparison which is not decoded yet are
+	 * rendered from parts of it loaded by ComparisonSliceLoader.
+	 */
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response)  
             throws IOException { 
@@ -68,56 +120,140 @@ public class ComparisonImage extends HttpServlet {
 		int y = Integer.parseInt(request.getParameter("y"));
 		int w = Integer.parseInt(request.getParameter("w"));
 		double sp = Double.parseDouble(request.getParameter("sp"));
-		String token = request.getParameter("token");
-		ProteomeComparison cmp;
+		final String token = request.getParameter("token");
+		ComparisonImageCache cache = getCache();
+		ComparisonSliceLoader slices = getSliceLoader();
+		byte[] png;
 		try {
-			cmp = loadCmpObject(ws, id, token);
+			String ref = resolveRef(ws, id, token);
+			int[] sizes = slices.getSizes(token, ref);
+			png = cache.getTile(getTileKey(ref, x, y, w, sp), createRenderer(ref, token, x, y, w, sp));
+			int step = Math.max(1, (int)(w * 100.0 / sp));
+			for (int dx = -1; dx <= 1; dx++)
+				for (int dy = -1; dy <= 1; dy++) {
+					int nx = x + dx * step;
+					int ny = y + dy * step;
+					if ((dx == 0 && dy == 0) || nx < 0 || ny < 0 || nx >= sizes[0] || ny >= sizes[1])
+						continue;
+					cache.prefetchTile(getTileKey(ref, nx, ny, w, sp), createRenderer(ref, token, nx, ny, w, sp));
+				}
 		} catch (Exception e) {
 			throw new IllegalStateException(e);
 		}
 		setupResponseHeaders(request, response);
 		response.setContentType("image/png");
+		response.setContentLength(png.length);
 		OutputStream out = response.getOutputStream();
-		BufferedImage img = draw(cmp, x, y, w, w, sp);
-		ImageIO.write(img, "PNG", out);
+		out.write(png);
+		synchronized (ComparisonImage.class) {
+			requests++;
+			if (requests % STAT_REQUESTS == 0)
+				Stat.addImageCacheReport(tempDir, cache.getReport() + ", " + slices.getReport());
+		}
+	}
+
+	private static String getTileKey(String ref, int x, int y, int w, double sp) {
+		return ref + "/" + x + "/" + y + "/" + w + "/" + sp;
 	}
 
+	private static Callable<byte[]> createRenderer(final String ref, final String token, final int x, 
+			final int y, final int w, final double sp) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				ImageIO.write(draw(getHits(ref, token, x, w, sp), x, y, w, w, sp), "PNG", baos);
+				return baos.toByteArray();
+			}
+		};
+	}
+
+	/**
+	 * @return all hits of comparison in case it's already decoded or tile covers
+	 * too many genes, otherwise hits of genes of the tile only
+	 */
+	private static ComparisonHits getHits(final String ref, final String token, int x, int w, 
+			double sp) throws Exception {
+		final ComparisonSliceLoader slices = getSliceLoader();
+		int genes = (int)(w * 100.0 / sp) + 1;
+		if (genes <= MAX_PARTIAL_GENES && !getCache().containsComparison(ref))
+			return slices.loadRange(token, ref, x, x + genes);
+		return getCache().getComparison(ref, new Callable<ComparisonHits>() {
+			@Override
+			public ComparisonHits call() throws Exception {
+				return slices.loadAll(token, ref);
+			}
+		});
+	}
+
+	/**
+	 * @return reference to the last version of object in wsid/objid/ver form
+	 * (resolved references are reused for REF_TTL_MS for the same token, so
+	 * panning doesn't wait for workspace on every tile)
+	 */
+	private static String resolveRef(String ws, String id, String token) throws Exception {
+		String key = token + " " + ws + "/" + id;
+		synchronized (refs) {
+			ResolvedRef entry = refs.get(key);
+			if (entry != null && entry.expiry > System.currentTimeMillis())
+				return entry.ref;
+		}
+		Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>> info =
+				getStorage().getObjectInfo(token, Arrays.asList(
+						new ObjectIdentity().withRef(ws + "/" + id)), 0L).get(0);
+		String ret = info.getE7() + "/" + info.getE1() + "/" + info.getE5();
+		synchronized (refs) {
+			refs.put(key, new ResolvedRef(ret, System.currentTimeMillis() + REF_TTL_MS));
+		}
+		return ret;
+	}
+
+	/**
+	 * @return comparison in usual form (packed hits are unpacked)
+	 */
 	public static ProteomeComparison loadCmpObject(String ws, String id, String token)
 			throws IOException, JsonClientException, Exception {
-		UObject cmpObj = GenomeCmpConfig.createWsClient(token).getObjects(
+		UObject cmpObj = getStorage().getObjects(token, 
 				Arrays.asList(new ObjectIdentity().withRef(ws + "/" + id))).get(0).getData();
-		return cmpObj.asClassInstance(ProteomeComparison.class);
+		return PackedHits.unpack(cmpObj.asClassInstance(ProteomeComparison.class));
 	}
 	
 	public static BufferedImage draw(ProteomeComparison cmp, int i0, int j0, int w0, int h0, double sp) {
+		return draw(ComparisonHits.fromComparison(cmp), i0, j0, w0, h0, sp);
+	}
+
+	public static BufferedImage draw(ComparisonHits cmp, int i0, int j0, int w0, int h0, double sp) {
 		int xShift = 35;
 		int yShift = 15;
 		BufferedImage ret = new BufferedImage(w0 + xShift, h0 + yShift, BufferedImage.TYPE_INT_ARGB);
 		Graphics2D gr = (Graphics2D)ret.getGraphics();
 		gr.setColor(Color.WHITE);
 		gr.fillRect(0, 0, w0 + xShift, h0 + yShift);
-		int imax = cmp.getProteome1names().size();
+		int imax = cmp.getSize1();
 		if ((imax - 1 - i0) * sp / 100.0 > w0)
-			imax = Math.min(cmp.getProteome1names().size(), (int)(w0 * 100.0 / sp) + i0 + 1);
+			imax = Math.min(cmp.getSize1(), (int)(w0 * 100.0 / sp) + i0 + 1);
 		int xmax = Math.min(w0, (int)((imax - i0 - 1) * sp / 100.0) + 1);
-		int jmax = cmp.getProteome2names().size();
+		int jmax = cmp.getSize2();
 		if ((jmax - 1 - j0) * sp / 100.0 > h0)
-			jmax = Math.min(cmp.getProteome2names().size(), (int)(h0 * 100.0 / sp) + j0 + 1);
+			jmax = Math.min(cmp.getSize2(), (int)(h0 * 100.0 / sp) + j0 + 1);
 		int ymax = Math.min(h0, (int)((jmax - j0 - 1) * sp / 100.0) + 1);
 		gr.setColor(new Color(0, 75, 75));
 		gr.fillRect(xShift, 0, xmax, ymax);
-		for (int i = i0; i < imax; i++) {
-			int x = (int)((i - i0) * sp / 100.0);
-			List<Tuple3<Long, Long, Long>> hitList = cmp.getData1().get(i);
-			for (Tuple3<Long, Long, Long> hit : hitList) {
-				int j = hit.getE1().intValue();
-				if (j < j0 || j >= jmax)
-					continue;
-				int y = ymax - 1 - (int)((j - j0) * sp / 100.0);
-				gr.setColor(getColor(hit.getE3()));
-				gr.drawLine(x + xShift, y, x + xShift, y);
-			}
+		// Hits are written directly into raster, in case a few hits get into the
+		// same pixel (scale is less than 100%) the one with best percent is shown.
+		// Drawing starts from the coarsest summary with cells not bigger than
+		// quarter of pixel (so that only few cells cross pixel borders), so it
+		// takes time proportional to number of pixels rather than hits.
+		int level = 0;
+		int f = 1;
+		int sf = ComparisonHits.SUMMARY_FACTOR;
+		while (level < cmp.getSummaryCount() && f * sf * sf <= 100.0 / sp) {
+			level++;
+			f *= sf;
 		}
+		DotPlotRaster raster = new DotPlotRaster(cmp, i0, j0, imax, jmax, xmax, ymax, sp, 
+				((DataBufferInt)ret.getRaster().getDataBuffer()).getData(), w0 + xShift, xShift);
+		raster.drawCells(level, f, i0 / f, (imax - 1) / f + 1, j0 / f, (jmax - 1) / f + 1);
 		gr.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
 		gr.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 		gr.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
@@ -132,6 +268,108 @@ public class ComparisonImage extends HttpServlet {
 		return ret;
 	}
 	
+	/**
+	 * Reference with version and time when it should be resolved again.
+	 */
+	private static class ResolvedRef {
+		final String ref;
+		final long expiry;
+
+		ResolvedRef(String ref, long expiry) {
+			this.ref = ref;
+			this.expiry = expiry;
+		}
+	}
+
+	/**
+	 * Plot area of image with methods writing hits into raster.
+	 */
+	private static class DotPlotRaster {
+		final ComparisonHits cmp;
+		final int i0, j0, imax, jmax, xmax, ymax;
+		final double sp;
+		final int[] pixels;
+		final int width, xShift;
+		final byte[] levels;
+
+		DotPlotRaster(ComparisonHits cmp, int i0, int j0, int imax, int jmax, int xmax, int ymax,
+				double sp, int[] pixels, int width, int xShift) {
+			this.cmp = cmp;
+			this.i0 = i0;
+			this.j0 = j0;
+			this.imax = imax;
+			this.jmax = jmax;
+			this.xmax = xmax;
+			this.ymax = ymax;
+			this.sp = sp;
+			this.pixels = pixels;
+			this.width = width;
+			this.xShift = xShift;
+			this.levels = new byte[Math.max(0, xmax * ymax)];
+		}
+
+		int getX(int i) {
+			return (int)((i - i0) * sp / 100.0);
+		}
+
+		int getY(int j) {
+			return ymax - 1 - (int)((j - j0) * sp / 100.0);
+		}
+
+		/**
+		 * Draws cells of given summary level (hits in case of level 0) in columns
+		 * [c0, c1) with targets in [t0, t1). Cell getting into one pixel (and
+		 * not crossing borders of plot) is drawn as is, otherwise cells of next
+		 * level covering it are drawn.
+		 * @param f number of genes covered by cell in each direction
+		 */
+		void drawCells(int level, int f, int c0, int c1, int t0, int t1) {
+			ComparisonHits src = level == 0 ? cmp : cmp.getSummary(level);
+			c1 = Math.min(c1, src.getSize1());
+			for (int c = c0; c < c1; c++) {
+				if (c * f >= imax)
+					break;
+				if (c * f + f <= i0)
+					continue;
+				int iFrom = Math.max(c * f, i0);
+				int iTo = Math.min(c * f + f, imax) - 1;
+				int x = getX(iFrom);
+				if (x >= xmax)
+					break;
+				boolean oneColumn = x == getX(iTo) && c * f >= i0 && c * f + f <= imax;
+				int end = src.getHitEnd(c);
+				for (int pos = src.findFirstHit(c, t0); pos < end; pos++) {
+					int t = src.getTarget(pos);
+					if (t >= t1)
+						break;
+					if (t * f >= jmax)
+						break;
+					if (t * f + f <= j0)
+						continue;
+					int jFrom = Math.max(t * f, j0);
+					int jTo = Math.min(t * f + f, jmax) - 1;
+					int y = getY(jFrom);
+					if (y < 0)
+						break;
+					if (oneColumn && y == getY(jTo) && t * f >= j0 && t * f + f <= jmax) {
+						put(x, y, src.getPercent(pos));
+					} else {
+						int sf = ComparisonHits.SUMMARY_FACTOR;
+						drawCells(level - 1, f / sf, c * sf, c * sf + sf, t * sf, t * sf + sf);
+					}
+				}
+			}
+		}
+
+		void put(int x, int y, int percent) {
+			int level = getPaletteIndex(percent) + 1;
+			if (levels[y * xmax + x] < level) {
+				levels[y * xmax + x] = (byte)level;
+				pixels[y * width + x + xShift] = PALETTE[level - 1];
+			}
+		}
+	}
+	
 	private static void drawStringRigth(String text, int x, int y, Graphics2D gr) {
 		FontMetrics fm = gr.getFontMetrics();
 		gr.drawString(text, x - fm.stringWidth(text), y);
@@ -142,6 +380,20 @@ public class ComparisonImage extends HttpServlet {
 		return new Color(255, 255 - (255 - gbPart) / 2, gbPart);
 	}
 	
+	/**
+	 * @return index in PALETTE (percents below 90 have the same color as 90)
+	 */
+	private static int getPaletteIndex(int bbhPercent) {
+		return Math.min(PALETTE.length - 1, Math.max(0, bbhPercent - 90));
+	}
+	
+	private static int[] createPalette() {
+		int[] ret = new int[11];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = getColor(90 + i).getRGB();
+		return ret;
+	}
+	
 	public static void saveImage(ProteomeComparison cmp, int i0, int j0, int w0, int h0, double scalePercent, File ret) throws Exception {
 		BufferedImage img = draw(cmp, i0, j0, w0, h0, scalePercent);
 		ImageIO.write(img, "PNG", ret);
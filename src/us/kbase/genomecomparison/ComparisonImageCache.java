@@ -0,0 +1,254 @@
+package us.kbase.genomecomparison;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-level cache of ComparisonImage: decoded comparisons (keyed by
+ * wsid/objid/version, so they never become stale) and rendered PNG tiles
+ * (keyed by comparison and tile parameters). Both levels are LRU with
+ * limits on total size. Comparison requested by a few tiles at the same
+ * time is loaded only once. Neighbour tiles of rendered one are rendered in
+ * background so that panning of dot plot mostly hits the cache.
+ */
+public class ComparisonImageCache {
+	private static final int PREFETCH_QUEUE_SIZE = 64;
+
+	private final SizedLru<ComparisonHits> comparisons;
+	private final SizedLru<byte[]> tiles;
+	private final Map<String, FutureTask<ComparisonHits>> loading =
+			new HashMap<String, FutureTask<ComparisonHits>>();
+	private final ThreadPoolExecutor prefetcher;
+	private long comparisonHits = 0;
+	private long comparisonMisses = 0;
+	private long tileHits = 0;
+	private long tileMisses = 0;
+	private long prefetchedTiles = 0;
+	private long loadTimeMs = 0;
+	private long renders = 0;
+	private long renderTimeMs = 0;
+	private long maxRenderTimeMs = 0;
+
+	public ComparisonImageCache(long maxComparisonBytes, long maxTileBytes) {
+		comparisons = new SizedLru<ComparisonHits>(maxComparisonBytes) {
+			@Override
+			long sizeOf(ComparisonHits value) {
+				return value.getMemorySize();
+			}
+		};
+		tiles = new SizedLru<byte[]>(maxTileBytes) {
+			@Override
+			long sizeOf(byte[] value) {
+				return value.length;
+			}
+		};
+		prefetcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(PREFETCH_QUEUE_SIZE), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread ret = new Thread(r, "Tile prefetch thread");
+						ret.setDaemon(true);
+						return ret;
+					}
+				}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	/**
+	 * Returns decoded comparison from cache or loads it with given loader
+	 * (other threads requesting the same comparison wait for this load).
+	 * @param ref reference with version (wsid/objid/ver)
+	 */
+	public ComparisonHits getComparison(String ref, Callable<ComparisonHits> loader) throws Exception {
+		FutureTask<ComparisonHits> task;
+		boolean owner = false;
+		synchronized (this) {
+			ComparisonHits ret = comparisons.get(ref);
+			if (ret != null) {
+				comparisonHits++;
+				return ret;
+			}
+			comparisonMisses++;
+			task = loading.get(ref);
+			if (task == null) {
+				task = new FutureTask<ComparisonHits>(loader);
+				loading.put(ref, task);
+				owner = true;
+			}
+		}
+		long time = System.currentTimeMillis();
+		if (owner)
+			task.run();
+		try {
+			ComparisonHits ret = task.get();
+			if (owner) {
+				synchronized (this) {
+					comparisons.put(ref, ret);
+					loadTimeMs += System.currentTimeMillis() - time;
+				}
+			}
+			return ret;
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof Exception)
+				throw (Exception)ex.getCause();
+			throw ex;
+		} finally {
+			if (owner) {
+				synchronized (this) {
+					loading.remove(ref);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true in case comparison is already decoded and kept in cache
+	 */
+	public synchronized boolean containsComparison(String ref) {
+		return comparisons.containsKey(ref);
+	}
+
+	/**
+	 * Returns PNG tile from cache or renders it with given renderer.
+	 */
+	public byte[] getTile(String tileKey, Callable<byte[]> renderer) throws Exception {
+		synchronized (this) {
+			byte[] ret = tiles.get(tileKey);
+			if (ret != null) {
+				tileHits++;
+				return ret;
+			}
+			tileMisses++;
+		}
+		return render(tileKey, renderer);
+	}
+
+	/**
+	 * Renders tile in background thread unless it's already cached (or there
+	 * are too many tiles waiting for prefetch).
+	 */
+	public void prefetchTile(final String tileKey, final Callable<byte[]> renderer) {
+		synchronized (this) {
+			if (tiles.containsKey(tileKey))
+				return;
+		}
+		prefetcher.execute(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (ComparisonImageCache.this) {
+					if (tiles.containsKey(tileKey))
+						return;
+				}
+				try {
+					render(tileKey, renderer);
+					synchronized (ComparisonImageCache.this) {
+						prefetchedTiles++;
+					}
+				} catch (Exception ignore) {}
+			}
+		});
+	}
+
+	private byte[] render(String tileKey, Callable<byte[]> renderer) throws Exception {
+		long time = System.currentTimeMillis();
+		byte[] ret = renderer.call();
+		time = System.currentTimeMillis() - time;
+		synchronized (this) {
+			tiles.put(tileKey, ret);
+			renders++;
+			renderTimeMs += time;
+			maxRenderTimeMs = Math.max(maxRenderTimeMs, time);
+		}
+		return ret;
+	}
+
+	public synchronized long getComparisonHits() {
+		return comparisonHits;
+	}
+
+	public synchronized long getComparisonMisses() {
+		return comparisonMisses;
+	}
+
+	public synchronized long getTileHits() {
+		return tileHits;
+	}
+
+	public synchronized long getTileMisses() {
+		return tileMisses;
+	}
+
+	public synchronized long getPrefetchedTiles() {
+		return prefetchedTiles;
+	}
+
+	public synchronized long getRenders() {
+		return renders;
+	}
+
+	public synchronized long getRenderTimeMs() {
+		return renderTimeMs;
+	}
+
+	/**
+	 * @return text for stat.log
+	 */
+	public synchronized String getReport() {
+		return "comparisons(hit/miss/size/count)=" + comparisonHits + "/" + comparisonMisses + "/" +
+				comparisons.getTotalSize() + "/" + comparisons.size() + ", load.time(ms)=" + loadTimeMs +
+				", tiles(hit/miss/prefetched/size/count)=" + tileHits + "/" + tileMisses + "/" +
+				prefetchedTiles + "/" + tiles.getTotalSize() + "/" + tiles.size() +
+				", render(count/avg/max ms)=" + renders + "/" + (renders > 0 ? renderTimeMs / renders : 0) +
+				"/" + maxRenderTimeMs;
+	}
+
+	static abstract class SizedLru<V> {
+		private final long maxSize;
+		private final LinkedHashMap<String, V> map = new LinkedHashMap<String, V>(16, 0.75f, true);
+		private long totalSize = 0;
+
+		SizedLru(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		abstract long sizeOf(V value);
+
+		V get(String key) {
+			return map.get(key);
+		}
+
+		boolean containsKey(String key) {
+			return map.containsKey(key);
+		}
+
+		void put(String key, V value) {
+			long size = sizeOf(value);
+			if (size > maxSize)
+				return;
+			V prev = map.put(key, value);
+			if (prev != null)
+				totalSize -= sizeOf(prev);
+			totalSize += size;
+			for (Iterator<V> it = map.values().iterator(); totalSize > maxSize && it.hasNext(); ) {
+				totalSize -= sizeOf(it.next());
+				it.remove();
+			}
+		}
+
+		int size() {
+			return map.size();
+		}
+
+		long getTotalSize() {
+			return totalSize;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package us.kbase.genomecomparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.kbase.workspace.SubObjectIdentity;
+
+/**
+ * Loads parts of ProteomeComparison needed for zoomed-in dot plot tiles
+ * through get_object_subset of workspace instead of the whole object. Sizes
+ * of proteomes are taken from gene name lists once per comparison, hits of
+ * genes of first genome are loaded by blocks of BLOCK_SIZE genes (paths
+ * /data1/i) which are kept in LRU cache, so tile of a few hundreds genes
+ * costs a few kilobytes of transfer and panning loads only new blocks.
+ * Comparison stored with packed hits can't be split by workspace, it's
+ * loaded at once (without data2). Fields absent in object are ignored by
+ * workspace in subset paths, so both forms are requested in one call.
+ */
+public class ComparisonSliceLoader {
+	public static final int BLOCK_SIZE = 256;
+	private static final int MAX_HEADERS = 10000;
+
+	private final ObjectStorage storage;
+	private final ComparisonImageCache.SizedLru<ComparisonHits> blocks;
+	private final Map<String, int[]> headers = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+			return size() > MAX_HEADERS;
+		}
+	};
+	private long blockHits = 0;
+	private long blockMisses = 0;
+	private long subsetRequests = 0;
+	private long loadedHits = 0;
+
+	public ComparisonSliceLoader(ObjectStorage storage, long maxBytes) {
+		this.storage = storage;
+		blocks = new ComparisonImageCache.SizedLru<ComparisonHits>(maxBytes) {
+			@Override
+			long sizeOf(ComparisonHits value) {
+				return value.getMemorySize();
+			}
+		};
+	}
+
+	/**
+	 * @param ref reference with version (wsid/objid/ver)
+	 * @return sizes of first and second proteomes
+	 */
+	public int[] getSizes(String token, String ref) throws Exception {
+		int[] header = getHeader(token, ref);
+		return new int[] {header[0], header[1]};
+	}
+
+	/**
+	 * @return size1, size2 and 1 in case comparison is stored with packed hits
+	 * (in this case decoded hits are put into cache with ref as key)
+	 */
+	private int[] getHeader(String token, String ref) throws Exception {
+		synchronized (this) {
+			int[] ret = headers.get(ref);
+			if (ret != null)
+				return ret;
+		}
+		ProteomeComparison part = loadSubset(token, ref,
+				Arrays.asList("/proteome1names", "/proteome2names", "/data1_packed"));
+		boolean packed = part.getData1Packed() != null;
+		int[] ret = {part.getProteome1names().size(), part.getProteome2names().size(), packed ? 1 : 0};
+		ComparisonHits all = packed ? ComparisonHits.fromComparison(part) : null;
+		synchronized (this) {
+			headers.put(ref, ret);
+			if (all != null) {
+				blocks.put(ref, all);
+				loadedHits += all.getHitCount();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Loads hits of genes [from, to) of first proteome, blocks of genes which
+	 * are not cached are loaded in one request.
+	 * @return hits of these genes (other genes have no hits) or all hits in
+	 * case comparison is stored with packed hits
+	 */
+	public ComparisonHits loadRange(String token, String ref, int from, int to) throws Exception {
+		int[] header = getHeader(token, ref);
+		if (header[2] != 0)
+			return loadAll(token, ref);
+		int size1 = header[0];
+		int size2 = header[1];
+		from = Math.max(0, from);
+		to = Math.min(size1, to);
+		int firstBlock = from / BLOCK_SIZE;
+		int blockCount = to > from ? (to - 1) / BLOCK_SIZE + 1 - firstBlock : 0;
+		ComparisonHits[] range = new ComparisonHits[blockCount];
+		List<Integer> missing = new ArrayList<Integer>();
+		synchronized (this) {
+			for (int b = 0; b < blockCount; b++) {
+				range[b] = blocks.get(ref + "/" + (firstBlock + b));
+				if (range[b] == null) {
+					missing.add(firstBlock + b);
+					blockMisses++;
+				} else {
+					blockHits++;
+				}
+			}
+		}
+		if (!missing.isEmpty())
+			loadBlocks(token, ref, size1, size2, missing, range, firstBlock);
+		int total = 0;
+		for (ComparisonHits block : range)
+			total += block.getHitCount();
+		int[] offsets = new int[size1 + 1];
+		int[] targets = new int[total];
+		byte[] percents = new byte[total];
+		int count = 0;
+		for (int i = 0; i < size1; i++) {
+			int b = i / BLOCK_SIZE - firstBlock;
+			if (b >= 0 && b < blockCount) {
+				ComparisonHits block = range[b];
+				int k = i % BLOCK_SIZE;
+				for (int pos = block.getHitStart(k); pos < block.getHitEnd(k); pos++) {
+					targets[count] = block.getTarget(pos);
+					percents[count] = (byte)block.getPercent(pos);
+					count++;
+				}
+			}
+			offsets[i + 1] = count;
+		}
+		return new ComparisonHits(size1, size2, offsets, targets, percents, false);
+	}
+
+	private void loadBlocks(String token, String ref, int size1, int size2, List<Integer> missing,
+			ComparisonHits[] range, int firstBlock) throws Exception {
+		List<String> paths = new ArrayList<String>();
+		for (int b : missing)
+			for (int i = b * BLOCK_SIZE; i < Math.min(size1, (b + 1) * BLOCK_SIZE); i++)
+				paths.add("/data1/" + i);
+		// Workspace returns selected elements of array in order of their positions
+		ProteomeComparison part = loadSubset(token, ref, paths);
+		if (part.getData1() == null || part.getData1().size() != paths.size())
+			throw new IllegalStateException("Unexpected number of genes in subset of " + ref + ": " +
+					(part.getData1() == null ? 0 : part.getData1().size()) + " instead of " + paths.size());
+		int pos = 0;
+		for (int b : missing) {
+			int len = Math.min(size1, (b + 1) * BLOCK_SIZE) - b * BLOCK_SIZE;
+			ComparisonHits block = ComparisonHits.fromData(len, size2,
+					part.getData1().subList(pos, pos + len), false);
+			pos += len;
+			range[b - firstBlock] = block;
+			synchronized (this) {
+				blocks.put(ref + "/" + b, block);
+				loadedHits += block.getHitCount();
+			}
+		}
+	}
+
+	/**
+	 * Loads all hits of first proteome (data2 and proteome maps are not loaded).
+	 */
+	public ComparisonHits loadAll(String token, String ref) throws Exception {
+		synchronized (this) {
+			ComparisonHits ret = blocks.get(ref);
+			if (ret != null)
+				return ret;
+		}
+		ComparisonHits ret = ComparisonHits.fromComparison(loadSubset(token, ref,
+				Arrays.asList("/proteome1names", "/proteome2names", "/data1", "/data1_packed")));
+		synchronized (this) {
+			loadedHits += ret.getHitCount();
+			int[] header = headers.get(ref);
+			if (header != null && header[2] != 0)
+				blocks.put(ref, ret);
+		}
+		return ret;
+	}
+
+	private ProteomeComparison loadSubset(String token, String ref, List<String> paths) throws Exception {
+		synchronized (this) {
+			subsetRequests++;
+		}
+		return storage.getObjectSubset(token, Arrays.asList(new SubObjectIdentity().withRef(ref)
+				.withIncluded(paths))).get(0).getData().asClassInstance(ProteomeComparison.class);
+	}
+
+	public synchronized long getBlockHits() {
+		return blockHits;
+	}
+
+	public synchronized long getBlockMisses() {
+		return blockMisses;
+	}
+
+	public synchronized long getSubsetRequests() {
+		return subsetRequests;
+	}
+
+	/**
+	 * @return text for stat.log
+	 */
+	public synchronized String getReport() {
+		return "slices(hit/miss/size/count)=" + blockHits + "/" + blockMisses + "/" +
+				blocks.getTotalSize() + "/" + blocks.size() + ", subset.requests=" + subsetRequests +
+				", loaded.hits=" + loadedHits;
+	}
+}
@@ -1,16 +1,17 @@
 package us.kbase.genomecomparison;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
@@ -22,29 +23,39 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.fileupload.FileItem;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import us.kbase.common.service.UObject;
+import us.kbase.genomecomparison.gbk.ContigSetStats;
+import us.kbase.genomecomparison.gbk.GbkStreamSource;
 import us.kbase.genomecomparison.gbk.GbkUploader;
+import us.kbase.genomecomparison.gbk.SequenceBuilder;
+import us.kbase.genomecomparison.gbk.StreamedContig;
+import us.kbase.genomecomparison.gbk.StreamingObjectStorage;
 import us.kbase.kbasegenomes.Contig;
 import us.kbase.kbasegenomes.ContigSet;
 import us.kbase.workspace.ObjectSaveData;
 import us.kbase.workspace.SaveObjectsParams;
-import us.kbase.workspace.WorkspaceClient;
 
 public class ContigSetUploadServlet extends HttpServlet {
 	private static final long serialVersionUID = -1L;
 	
+    private static final long MAX_FILE_SIZE = 2000L * 1024 * 1024;
+    private static final long MIN_RESERVED_MEMORY = 16L * 1024 * 1024;
+    private static final int COMPRESSION_RATIO = 4;
+    public static final String UPLOADS_DIR = "uploads";
     private static File tempDir = null;
     private static String wsUrl = null;
+    private static UploadMemoryBudget memoryBudget = null;
+    private static long uploadWaitMs = 0;
+    private static NcbiMirrorCache ncbiMirrorCache = null;
 
     private static File getTempDir() throws IOException {
 		if (tempDir == null)
@@ -58,6 +69,21 @@ public class ContigSetUploadServlet extends HttpServlet {
 		return wsUrl;
     }
 
+    private static synchronized NcbiMirrorCache getNcbiMirrorCache() throws IOException {
+		if (ncbiMirrorCache == null)
+			ncbiMirrorCache = GenomeCmpConfig.loadConfig().getNcbiMirrorCache();
+		return ncbiMirrorCache;
+    }
+
+    private static synchronized UploadMemoryBudget getMemoryBudget() throws IOException {
+		if (memoryBudget == null) {
+			GenomeCmpConfig config = GenomeCmpConfig.loadConfig();
+			memoryBudget = new UploadMemoryBudget(config.getUploadMemoryMb() * 1024 * 1024);
+			uploadWaitMs = config.getUploadWaitSec() * 1000;
+		}
+		return memoryBudget;
+    }
+
 	@Override
 	protected void doOptions(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
@@ -74,41 +100,67 @@ public class ContigSetUploadServlet extends HttpServlet {
 		response.setHeader("Access-Control-Allow-Headers", allowedHeaders == null ? "authorization" : allowedHeaders);
 	}
 
+	/**
+	 * Request is read with streaming API. GenBank file is stored (as is, without
+	 * decompression) in uploads folder of temp.dir and import task is put into
+	 * queue of TaskHolder, response contains job id of this task (before import
+	 * tasks it was a message about saved object). Staged copy lets the task be
+	 * restarted after restart of service and doesn't hold request thread during
+	 * parsing. Contig FASTA file is imported in request thread as before: in case
+	 * all parameters come before file its content is parsed right from request
+	 * stream, otherwise file is stored in temp folder first, and response is a
+	 * message about saved object. Every parsing reserves part of global memory
+	 * budget, and contig sequences longer than this reservation are kept in
+	 * temporary files.
+	 */
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		int maxMemoryFileSize = 50 * 1024 * 1024;
 		File dir = getTempDir();
-		DiskFileItemFactory factory = new DiskFileItemFactory(maxMemoryFileSize, dir);
-		ServletFileUpload upload = new ServletFileUpload(factory);
-		FileItem file = null;
-		List<File> tempFiles = new ArrayList<File>();
+		ServletFileUpload upload = new ServletFileUpload();
+		upload.setFileSizeMax(MAX_FILE_SIZE);
+		File stagedFile = null;
+		boolean queued = false;
+		long reservedMemory = 0;
 		try {
 			Stat.addUploader(dir);
 			String token = null;
 			String ws = null;
 			String id = null;
 			String type = null;
-			List<?> items = upload.parseRequest(request);
-			Iterator<?> it = items.iterator();
+			String fileName = null;
+			String message = null;
+			FileItemIterator it = upload.getItemIterator(request);
 			while (it.hasNext()) {
-				FileItem item = (FileItem) it.next();
+				FileItemStream item = it.next();
 				if (item.isFormField()) {
+					String value = Streams.asString(item.openStream());
 					if (item.getFieldName().equals("token")) {
-						token = item.getString();
+						token = value;
 					} else if (item.getFieldName().equals("ws")) {
-						ws = item.getString();
+						ws = value;
 					} else if (item.getFieldName().equals("id")) {
-						id = item.getString();
+						id = value;
 					} else if (item.getFieldName().equals("type")) {
-						type = item.getString();
+						type = value;
 					} else {
 						throw new ServletException("Unknown parameter: " + item.getFieldName());
 					}
-				} else if (item.getFieldName().equals("file"))  {
-					long size = item.getSize();
-					file = item;
-					if (size > maxMemoryFileSize) {
-						throw new ServletException("File size is too large: " + size + " > " + maxMemoryFileSize);
+				} else if (item.getFieldName().equals("file") && fileName == null)  {
+					fileName = item.getName();
+					checkFileName(fileName);
+					InputStream is = item.openStream();
+					if (token != null && ws != null && id != null && "contigfasta".equals(type)) {
+						reservedMemory = reserveMemory(dir, request.getContentLength(), fileName);
+						importFile(type, fileName, is, token, ws, id, dir, reservedMemory);
+						message = "Contig Set was successfuly uploaded";
+					} else {
+						stagedFile = File.createTempFile("upload_", ".tmp", getUploadsDir(dir));
+						OutputStream os = new FileOutputStream(stagedFile);
+						try {
+							Utils.copy(is, os);
+						} finally {
+							os.close();
+						}
 					}
 				} else {
 					throw new ServletException("Unknown parameter: " + item.getFieldName());
@@ -118,79 +170,192 @@ public class ContigSetUploadServlet extends HttpServlet {
 			check(ws, "ws");
 			check(id, "id");
 			check(type, "type");
-			check(file, "file");
+			check(fileName, "file");
 			if (type.equals("contigfasta")) {
-				FastaReader fr = new FastaReader(new InputStreamReader(file.getInputStream()));
-				Map<String, String> contigIdToSeq = fr.readAll();
-				fr.close();
-				if (contigIdToSeq.size() == 0)
-					throw new ServletException("Data was not defined or empty");
-				List<Contig> contigList = new ArrayList<Contig>();
-				for (String contigId : contigIdToSeq.keySet()) {
-					String seq = contigIdToSeq.get(contigId);
-					contigList.add(new Contig().withId(contigId).withName(contigId).withSequence(seq)
-							.withLength((long)seq.length()).withMd5("md5"));
-				}
-				ContigSet contigSet = new ContigSet().withContigs(contigList).withId(id).withMd5("md5").withName(id)
-						.withSource("User uploaded data").withSourceId("USER").withType("Organism");
-				WorkspaceClient wc = GenomeCmpConfig.createWsClient(token);
-				ObjectSaveData data = new ObjectSaveData().withName(id).withType("KBaseGenomes.ContigSet").withData(new UObject(contigSet));
-				try {
-					data.withObjid(Long.parseLong(id));
-				} catch (NumberFormatException ex) {
-					data.withName(id);
-				}
-				wc.saveObjects(new SaveObjectsParams().withWorkspace(ws).withObjects(Arrays.asList(data)));
-				response.getOutputStream().write("Contig Set was successfuly uploaded".getBytes());
-			} else if (type.equals("genomegbk")) {
-				String wsUrl = getWsUrl();
-				if (file.getName().endsWith(".zip")) {
-					ZipInputStream zis = new ZipInputStream(file.getInputStream());
-					while (true) {
-						ZipEntry ze = zis.getNextEntry();
-						if (ze == null)
-							break;
-						File tempFile = File.createTempFile(id, ".gbk", dir);
-						tempFiles.add(tempFile);
-						OutputStream os = new FileOutputStream(tempFile);
-						Utils.copy(zis, os);
-						os.close();
-						zis.closeEntry();
+				if (message == null) {
+					reservedMemory = reserveMemory(dir, stagedFile.length(), fileName);
+					InputStream is = new FileInputStream(stagedFile);
+					try {
+						importFile(type, fileName, is, token, ws, id, dir, reservedMemory);
+					} finally {
+						is.close();
 					}
-					zis.close();
-					GbkUploader.uploadGbk(tempFiles, wsUrl, ws, id, token);
-				} else if (file.getName().endsWith(".tar.gz") || file.getName().endsWith(".tgz")) {
-					throw new ServletException("Tar files are not supported, please use zip instead.");
-				} else if (file.getName().endsWith(".gz")) {
-					File tempFile = File.createTempFile(id, ".gbk", dir);
-					tempFiles.add(tempFile);
-					GZIPInputStream is = new GZIPInputStream(file.getInputStream());
-					OutputStream os = new FileOutputStream(tempFile);
-					Utils.copy(is, os);
-					os.close();
-					is.close();
-					GbkUploader.uploadGbk(Arrays.asList(tempFile), wsUrl, ws, id, token);
-				} else {
-					File tempFile = File.createTempFile(id, ".gbk", dir);
-					tempFiles.add(tempFile);
-					file.write(tempFile);
-					GbkUploader.uploadGbk(Arrays.asList(tempFile), wsUrl, ws, id, token);
+					message = "Contig Set was successfuly uploaded";
 				}
-				setupResponseHeaders(request, response);
-				response.getOutputStream().write("Genome was successfuly uploaded".getBytes());
+			} else if (type.equals("genomegbk")) {
+				message = TaskHolder.getInstance().addTask(new UploadedFileParams().withFileType(type)
+						.withFileName(fileName).withStagedFile(stagedFile.getAbsolutePath())
+						.withOutWs(ws).withOutId(id), token);
+				queued = true;
 			} else {
 				throw new ServletException("Unknown file type: " + type);
 			}
+			setupResponseHeaders(request, response);
+			response.getOutputStream().write(message.getBytes());
 		} catch (Throwable ex) {
 			setupResponseHeaders(request, response);
 			ex.printStackTrace(new PrintStream(response.getOutputStream()));
 		} finally {
+			if (reservedMemory > 0) {
+				UploadMemoryBudget budget = getMemoryBudget();
+				budget.release(reservedMemory);
+				Stat.setUploadMemory(dir, budget.getReservedBytes());
+			}
 			Stat.delUploader(dir);
-			if (file != null)
-				file.delete();
-			for (File f : tempFiles)
-				if (f.exists())
-					f.delete();
+			if (stagedFile != null && !queued && stagedFile.exists())
+				stagedFile.delete();
+		}
+	}
+
+	private static File getUploadsDir(File tempDir) {
+		File ret = new File(tempDir, UPLOADS_DIR);
+		if (!ret.exists())
+			ret.mkdirs();
+		return ret;
+	}
+
+	private static void checkFileName(String fileName) throws ServletException {
+		if (fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz"))
+			throw new ServletException("Tar files are not supported, please use zip instead.");
+	}
+
+	/**
+	 * Imports file staged by upload servlet (it's called by import task). Staged
+	 * file is removed at the end. Every import reserves part of global memory
+	 * budget before parsing, and contig sequences longer than this reservation 
+	 * are kept in temporary files.
+	 */
+	public static void importUploadedFile(UploadedFileParams params, String token) throws Exception {
+		File dir = getTempDir();
+		File stagedFile = new File(params.getStagedFile());
+		long reservedMemory = 0;
+		try {
+			if (!stagedFile.exists())
+				throw new IllegalStateException("Uploaded file is not found: " + params.getFileName());
+			reservedMemory = reserveMemory(dir, stagedFile.length(), params.getFileName());
+			InputStream is = new FileInputStream(stagedFile);
+			try {
+				importFile(params.getFileType(), params.getFileName(), is, token, params.getOutWs(),
+						params.getOutId(), dir, reservedMemory);
+			} finally {
+				is.close();
+			}
+		} finally {
+			if (reservedMemory > 0) {
+				UploadMemoryBudget budget = getMemoryBudget();
+				budget.release(reservedMemory);
+				Stat.setUploadMemory(dir, budget.getReservedBytes());
+			}
+			if (stagedFile.exists())
+				stagedFile.delete();
+		}
+	}
+
+	/**
+	 * Estimates heap needed for parsing of uploaded file (sequences are kept in 
+	 * memory with one byte per base) and waits till it could be reserved (not
+	 * longer than upload.wait.sec).
+	 */
+	private static long reserveMemory(File dir, long fileSize, String fileName) throws Exception {
+		long size = fileSize > 0 ? fileSize : MIN_RESERVED_MEMORY;
+		if (fileName.endsWith(".zip") || fileName.endsWith(".gz"))
+			size *= COMPRESSION_RATIO;
+		UploadMemoryBudget budget = getMemoryBudget();
+		long ret = budget.reserve(Math.max(MIN_RESERVED_MEMORY, size), uploadWaitMs);
+		if (ret == 0) {
+			Stat.addRejectedUpload(dir);
+			throw new ServletException("Too many uploads are being imported at the moment, please try again later");
+		}
+		Stat.setUploadMemory(dir, budget.getReservedBytes());
+		return ret;
+	}
+
+	private static void importFile(String type, String fileName, InputStream is, String token, 
+			String ws, String id, File dir, long seqSpillThreshold) throws Exception {
+		checkFileName(fileName);
+		GbkStreamSource source = createStreamSource(fileName, is);
+		if (type.equals("contigfasta")) {
+			importContigFasta(source, token, ws, id, dir, seqSpillThreshold);
+		} else if (type.equals("genomegbk")) {
+			GbkUploader.uploadGbk(source, fileName, new StreamingObjectStorage(getWsUrl(), token), 
+					ws, id, token, dir, seqSpillThreshold);
+		} else {
+			throw new ServletException("Unknown file type: " + type);
+		}
+	}
+
+	/**
+	 * @return source of one text file (plain or gzipped) or of all files in zip-archive
+	 */
+	private static GbkStreamSource createStreamSource(String fileName, InputStream is) throws IOException {
+		if (fileName.endsWith(".zip")) {
+			final ZipInputStream zis = new ZipInputStream(is);
+			return new GbkStreamSource() {
+				@Override
+				public BufferedReader nextFile() throws IOException {
+					while (true) {
+						ZipEntry ze = zis.getNextEntry();
+						if (ze == null)
+							return null;
+						if (!ze.isDirectory())
+							return new BufferedReader(new InputStreamReader(zis));
+					}
+				}
+			};
+		}
+		if (fileName.endsWith(".gz"))
+			is = new GZIPInputStream(is);
+		final BufferedReader br = new BufferedReader(new InputStreamReader(is));
+		return new GbkStreamSource() {
+			private boolean done = false;
+			@Override
+			public BufferedReader nextFile() throws IOException {
+				if (done)
+					return null;
+				done = true;
+				return br;
+			}
+		};
+	}
+
+	private static void importContigFasta(GbkStreamSource source, String token, String ws, String id,
+			File dir, long seqSpillThreshold) throws Exception {
+		ContigSetStats seqStats = new ContigSetStats();
+		Map<String, Contig> contigs = new LinkedHashMap<String, Contig>();
+		List<SequenceBuilder> seqs = new ArrayList<SequenceBuilder>();
+		try {
+			while (true) {
+				BufferedReader br = source.nextFile();
+				if (br == null)
+					break;
+				FastaReader fr = new FastaReader(br, seqStats);
+				while (true) {
+					SequenceBuilder seq = new SequenceBuilder(dir, seqSpillThreshold);
+					seqs.add(seq);
+					String[] entry = fr.read(seq);
+					if (entry == null)
+						break;
+					String contigId = entry[0];
+					Contig contig = new StreamedContig(contigId, seq).withMd5(seqStats.getContigMd5(contigId));
+					contigs.put(contigId, contig);
+				}
+			}
+			if (contigs.size() == 0)
+				throw new ServletException("Data was not defined or empty");
+			ContigSet contigSet = new ContigSet().withContigs(new ArrayList<Contig>(contigs.values()))
+					.withId(id).withMd5(seqStats.getMd5()).withName(id)
+					.withSource("User uploaded data").withSourceId("USER").withType("Organism");
+			ObjectSaveData data = new ObjectSaveData().withName(id).withType("KBaseGenomes.ContigSet").withData(new UObject(contigSet));
+			try {
+				data.withObjid(Long.parseLong(id));
+			} catch (NumberFormatException ex) {
+				data.withName(id);
+			}
+			new StreamingObjectStorage(getWsUrl(), token).saveObjects(token, 
+					new SaveObjectsParams().withWorkspace(ws).withObjects(Arrays.asList(data)));
+		} finally {
+			for (SequenceBuilder seq : seqs)
+				seq.close();
 		}
 	}
 		
@@ -199,36 +364,32 @@ public class ContigSetUploadServlet extends HttpServlet {
 			throw new ServletException("Parameter " + param + " wasn't defined");
 	}
 
-	private static Map<String, List<String>> loadGenomeToPaths() throws Exception {
-		InputStream is = ContigSetUploadServlet.class.getResourceAsStream("genome2ftp.properties");
-		return new ObjectMapper().readValue(is, new TypeReference<Map<String, List<String>>>() {});
+	public static List<String> getNcbiGenomeNames() throws Exception {
+		return new ArrayList<String>(NcbiGenomeCatalog.getInstance().getNames());
 	}
 	
-	public static List<String> getNcbiGenomeNames() throws Exception {
-		return new ArrayList<String>(loadGenomeToPaths().keySet());
+	public static SearchNcbiGenomeNamesResult searchNcbiGenomeNames(SearchNcbiGenomeNamesParams params) throws Exception {
+		int start = params.getStart() == null ? 0 : (int)Math.min(Integer.MAX_VALUE, (long)params.getStart());
+		int limit = params.getLimit() == null ? NcbiGenomeCatalog.DEFAULT_LIMIT : 
+			(int)Math.min(Integer.MAX_VALUE, (long)params.getLimit());
+		return NcbiGenomeCatalog.getInstance().search(params.getQuery(), start, limit);
 	}
 	
+	/**
+	 * Files of genome are taken from local mirror of NCBI (missing ones are
+	 * downloaded into it in parallel).
+	 */
 	public static void importNcbiGenome(String genomeName, String ws, String id, String token) throws Exception {
-	    List<String> paths = loadGenomeToPaths().get(genomeName);
+	    List<String> paths = NcbiGenomeCatalog.getInstance().getPaths(genomeName);
 	    if (paths == null)
 	    	throw new IllegalStateException("NCBI genome name is not found: " + genomeName);
 	    File dir = getTempDir();
-	    List<File> files = new ArrayList<File>();
+	    NcbiMirrorCache cache = getNcbiMirrorCache();
+	    List<File> files = cache.acquire(paths);
 	    try {
-	    	for (String path : paths) {
-	    		InputStream is = new URL("ftp://ftp.ncbi.nih.gov/genomes/Bacteria/" + path).openStream();
-	    		File tempFile = File.createTempFile("ncbi_", ".gbk", dir);
-	    		files.add(tempFile);
-	    		OutputStream os = new FileOutputStream(tempFile);
-	    		Utils.copy(is, os);
-	    		os.close();
-	    		is.close();
-	    	}
-			GbkUploader.uploadGbk(files, getWsUrl(), ws, id, token);
+			GbkUploader.uploadGbk(files, getWsUrl(), ws, id, token, dir);
 	    } finally {
-	    	for (File f : files)
-	    		if (f.exists())
-	    			f.delete();
+	    	cache.release(paths);
 	    }
 	}
 	
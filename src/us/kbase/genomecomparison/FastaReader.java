@@ -5,9 +5,14 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
 
+import us.kbase.genomecomparison.gbk.ContigSetStats;
+import us.kbase.genomecomparison.gbk.SequenceBuilder;
+import us.kbase.genomecomparison.gbk.SequenceStats;
+
 public class FastaReader {
     BufferedReader br;
     String str1 = null;
+    ContigSetStats stats = null;
 
     public FastaReader(File f) {
         try {
@@ -21,6 +26,14 @@ public class FastaReader {
         br = new BufferedReader(r);
     }
 
+    /**
+     * @param stats statistics of sequences filled while they are read
+     */
+    public FastaReader(Reader r, ContigSetStats stats) {
+        this(r);
+        this.stats = stats;
+    }
+
     public static Map<String, String> readFromFile(File f) {
     	FastaReader fr = new FastaReader(f);
     	Map<String, String> ret = fr.readAll();
@@ -40,6 +53,14 @@ public class FastaReader {
     }
     
     public String[] read() {
+        return read(null);
+    }
+
+    /**
+     * Reads next record appending its sequence into given builder instead of
+     * creating string (second element of returned array is null in this case).
+     */
+    public String[] read(SequenceBuilder target) {
         if(br == null)
             return null;
         String protName = null;
@@ -70,7 +91,8 @@ public class FastaReader {
                 }
                 str1 = br.readLine();
             }
-            StringBuilder sb = new StringBuilder();
+            StringBuilder sb = target == null ? new StringBuilder() : null;
+            SequenceStats seqStats = stats == null ? null : stats.start(protName);
             for(;;) {
                 str1 = br.readLine();
                 if(str1 == null || str1.trim().startsWith(">")) {
@@ -80,11 +102,19 @@ public class FastaReader {
                     break;
             }
             for(;;) {
-                sb.append(str1);
+                if (target == null) {
+                    sb.append(str1);
+                } else {
+                    target.append(str1);
+                }
+                if (seqStats != null)
+                    seqStats.append(str1);
                 str1 = br.readLine();
                 if(str1 == null || str1.trim().startsWith(">"))
                     break;
             }
+            if (target != null)
+                return new String[] {protName, null, protDescr};
             protSeq = sb.toString();
             if (protSeq.length()==0) {
                 throw new IllegalStateException("No sequence for caption: " + protName);
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -21,12 +22,29 @@ import us.kbase.userandjobstate.UserAndJobStateClient;
 import us.kbase.workspace.ObjectData;
 import us.kbase.workspace.ObjectIdentity;
 import us.kbase.workspace.SaveObjectsParams;
+import us.kbase.workspace.SubObjectIdentity;
 import us.kbase.workspace.WorkspaceClient;
 
 public class GenomeCmpConfig {
 	private int threadCount;
+	private int annotationThreadCount = 1;
+	private int importThreadCount = 1;
+	private long stopTimeoutSec = DEFAULT_STOP_TIMEOUT_SEC;
 	private File tempDir;
 	private File blastBin;
+	private int blastShards = 1;
+	private int blastThreads = 1;
+	private long blastDbCacheMb = 0;
+	private long blastHitCacheMb = 0;
+	private long uploadMemoryMb = 0;
+	private long uploadWaitSec = DEFAULT_UPLOAD_WAIT_SEC;
+	private String ncbiUrl = DEFAULT_NCBI_URL;
+	private long ncbiCacheMb = 0;
+	private int ncbiDownloadThreads = 1;
+	private long imageCacheMb = DEFAULT_IMAGE_CACHE_MB;
+	private long tileCacheMb = DEFAULT_TILE_CACHE_MB;
+	private long sliceCacheMb = DEFAULT_SLICE_CACHE_MB;
+	private BlastHitCache blastHitCache = null;
 	private ObjectStorage objectStorage;
 	private JobStatuses jobStatuses;
 	private String wsUrl;
@@ -35,11 +53,48 @@ public class GenomeCmpConfig {
 	private static String defWsUrl = "https://kbase.us/services/ws/";  // http://dev04.berkeley.kbase.us:7058
     private static String defUjsUrl = "https://kbase.us/services/userandjobstate/";
     public static final String PROP_KB_DEPLOYMENT_CONFIG = "KB_DEPLOYMENT_CONFIG";
+    private static final int MAX_JOB_CLIENTS = 100;
+    private static final Map<String, UserAndJobStateClient> jobClients = 
+    		new LinkedHashMap<String, UserAndJobStateClient>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, UserAndJobStateClient> eldest) {
+			return size() > MAX_JOB_CLIENTS;
+		}
+	};
+    public static final long DEFAULT_STOP_TIMEOUT_SEC = 600;
+    public static final long DEFAULT_BLAST_DB_CACHE_MB = 2048;
+    public static final String BLAST_DB_CACHE_DIR = "blast_db_cache";
+    public static final long DEFAULT_BLAST_HIT_CACHE_MB = 4096;
+    public static final long DEFAULT_UPLOAD_WAIT_SEC = 60;
+    public static final String BLAST_HIT_CACHE_DIR = "blast_hit_cache";
+    public static final String DEFAULT_NCBI_URL = "ftp://ftp.ncbi.nih.gov/genomes/Bacteria/";
+    public static final long DEFAULT_NCBI_CACHE_MB = 4096;
+    public static final int DEFAULT_NCBI_DOWNLOAD_THREADS = 4;
+    public static final String NCBI_CACHE_DIR = "ncbi_cache";
+    public static final long DEFAULT_IMAGE_CACHE_MB = 256;
+    public static final long DEFAULT_TILE_CACHE_MB = 64;
+    public static final long DEFAULT_SLICE_CACHE_MB = 64;
 
 	public static GenomeCmpConfig loadConfig() throws IOException {
 		int threadCount = 1;
+		int annotationThreadCount = 1;
+		int importThreadCount = 1;
+		long stopTimeoutSec = DEFAULT_STOP_TIMEOUT_SEC;
 		File tempDir = new File(".");
 		File blastBin = null;
+		int blastShards = 1;
+		int blastThreads = 1;
+		long blastDbCacheMb = DEFAULT_BLAST_DB_CACHE_MB;
+		long blastHitCacheMb = DEFAULT_BLAST_HIT_CACHE_MB;
+		long uploadMemoryMb = 0;
+		long uploadWaitSec = DEFAULT_UPLOAD_WAIT_SEC;
+		String ncbiUrl = DEFAULT_NCBI_URL;
+		long ncbiCacheMb = DEFAULT_NCBI_CACHE_MB;
+		int ncbiDownloadThreads = DEFAULT_NCBI_DOWNLOAD_THREADS;
+		long imageCacheMb = DEFAULT_IMAGE_CACHE_MB;
+		long tileCacheMb = DEFAULT_TILE_CACHE_MB;
+		long sliceCacheMb = DEFAULT_SLICE_CACHE_MB;
 		String wsUrl = defWsUrl;
 		String ujsUrl = defUjsUrl;
     	String configPath = System.getProperty(PROP_KB_DEPLOYMENT_CONFIG);
@@ -67,10 +122,40 @@ public class GenomeCmpConfig {
 				System.out.println("Can not load properties from configuration file: " + configPath);
 			if (props.containsKey("thread.count"))
 				threadCount = Integer.parseInt(props.get("thread.count"));
+			if (props.containsKey("annotation.thread.count"))
+				annotationThreadCount = Integer.parseInt(props.get("annotation.thread.count"));
+			if (props.containsKey("import.thread.count"))
+				importThreadCount = Integer.parseInt(props.get("import.thread.count"));
+			if (props.containsKey("stop.timeout.sec"))
+				stopTimeoutSec = Long.parseLong(props.get("stop.timeout.sec"));
 			if (props.containsKey("temp.dir"))
 				tempDir = new File(props.get("temp.dir"));
 			if (props.containsKey("blast.dir"))
 				blastBin = new File(props.get("blast.dir"));
+			if (props.containsKey("blast.shards"))
+				blastShards = Integer.parseInt(props.get("blast.shards"));
+			if (props.containsKey("blast.threads"))
+				blastThreads = Integer.parseInt(props.get("blast.threads"));
+			if (props.containsKey("blast.db.cache.mb"))
+				blastDbCacheMb = Long.parseLong(props.get("blast.db.cache.mb"));
+			if (props.containsKey("blast.hit.cache.mb"))
+				blastHitCacheMb = Long.parseLong(props.get("blast.hit.cache.mb"));
+			if (props.containsKey("upload.memory.mb"))
+				uploadMemoryMb = Long.parseLong(props.get("upload.memory.mb"));
+			if (props.containsKey("upload.wait.sec"))
+				uploadWaitSec = Long.parseLong(props.get("upload.wait.sec"));
+			if (props.containsKey("ncbi.url"))
+				ncbiUrl = props.get("ncbi.url");
+			if (props.containsKey("ncbi.cache.mb"))
+				ncbiCacheMb = Long.parseLong(props.get("ncbi.cache.mb"));
+			if (props.containsKey("ncbi.download.threads"))
+				ncbiDownloadThreads = Integer.parseInt(props.get("ncbi.download.threads"));
+			if (props.containsKey("image.cache.mb"))
+				imageCacheMb = Long.parseLong(props.get("image.cache.mb"));
+			if (props.containsKey("tile.cache.mb"))
+				tileCacheMb = Long.parseLong(props.get("tile.cache.mb"));
+			if (props.containsKey("slice.cache.mb"))
+				sliceCacheMb = Long.parseLong(props.get("slice.cache.mb"));
 			if (props.containsKey("ws.url"))
 				wsUrl = props.get("ws.url");
 			if (props.containsKey("ujs.url"))
@@ -78,7 +163,15 @@ public class GenomeCmpConfig {
 		} else {
 			throw new IOException("Configuration file [" + new File(configPath).getAbsolutePath() + "] doesn't exist");
 		}
-		return new GenomeCmpConfig(threadCount, tempDir, blastBin, wsUrl, ujsUrl);
+		return new GenomeCmpConfig(threadCount, tempDir, blastBin, wsUrl, ujsUrl)
+				.withAnnotationThreadCount(annotationThreadCount)
+				.withImportThreadCount(importThreadCount).withStopTimeoutSec(stopTimeoutSec)
+				.withBlastShards(blastShards).withBlastThreads(blastThreads)
+				.withBlastDbCacheMb(blastDbCacheMb).withBlastHitCacheMb(blastHitCacheMb)
+				.withUploadMemoryMb(uploadMemoryMb).withUploadWaitSec(uploadWaitSec).withNcbiUrl(ncbiUrl)
+				.withNcbiCacheMb(ncbiCacheMb).withNcbiDownloadThreads(ncbiDownloadThreads)
+				.withImageCacheMb(imageCacheMb).withTileCacheMb(tileCacheMb)
+				.withSliceCacheMb(sliceCacheMb);
 	}
 
 	public GenomeCmpConfig(int threadCount, File tempDir, File blastBin) {
@@ -92,6 +185,15 @@ public class GenomeCmpConfig {
 				return createWsClient(token, wsUrl).getObjects(objectIds);
 			}
 			@Override
+			public List<ObjectData> getObjectSubset(String token, List<SubObjectIdentity> subObjectIds) throws Exception {
+				return createWsClient(token, wsUrl).getObjectSubset(subObjectIds);
+			}
+			@Override
+			public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> getObjectInfo(
+					String token, List<ObjectIdentity> objectIds, Long includeMetadata) throws Exception {
+				return createWsClient(token, wsUrl).getObjectInfo(objectIds, includeMetadata);
+			}
+			@Override
 			public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> saveObjects(
 					String token, SaveObjectsParams params) throws Exception {
 				return createWsClient(token, wsUrl).saveObjects(params);
@@ -100,16 +202,16 @@ public class GenomeCmpConfig {
 			@Override
 			public String createAndStartJob(String token, String status, String desc,
 					InitProgress progress, String estComplete) throws IOException, JsonClientException {
-				return createJobClient(token, ujsUrl).createAndStartJob(token, status, desc, progress, estComplete);
+				return getJobClient(token, ujsUrl).createAndStartJob(token, status, desc, progress, estComplete);
 			}
 			@Override
 			public void updateJob(String job, String token, String status, String estComplete) throws IOException, JsonClientException {
-				createJobClient(token, ujsUrl).updateJob(job, token, status, estComplete);
+				getJobClient(token, ujsUrl).updateJob(job, token, status, estComplete);
 			}
 			@Override
 			public void completeJob(String job, String token, String status,
 					String error, Results res) throws IOException, JsonClientException {
-				createJobClient(token, ujsUrl).completeJob(job, token, status, error, res);
+				getJobClient(token, ujsUrl).completeJob(job, token, status, error, res);
 			}
 		});
 	}
@@ -155,15 +257,72 @@ public class GenomeCmpConfig {
 		}
 	}
 
+	/**
+	 * Returns job client for this token and url reusing recently created ones.
+	 */
+	public static UserAndJobStateClient getJobClient(String token, String ujsUrl) throws IOException, JsonClientException {
+		String key = ujsUrl + " " + token;
+		synchronized (jobClients) {
+			UserAndJobStateClient ret = jobClients.get(key);
+			if (ret != null)
+				return ret;
+		}
+		UserAndJobStateClient ret = createJobClient(token, ujsUrl);
+		synchronized (jobClients) {
+			jobClients.put(key, ret);
+		}
+		return ret;
+	}
+
 	public static UserAndJobStateClient createJobClient(String token) throws IOException, JsonClientException {
 		String ujsUrl = loadConfig().getJobSrvUrl();
 		return createJobClient(token, ujsUrl);
 	}
 
+	/**
+	 * @return number of threads running blast tasks
+	 */
 	public int getThreadCount() {
 		return threadCount;
 	}
 	
+	/**
+	 * @return number of threads running genome annotation tasks (separate from
+	 * blast threads so that slow annotation jobs don't hold blast ones)
+	 */
+	public int getAnnotationThreadCount() {
+		return annotationThreadCount;
+	}
+	
+	public GenomeCmpConfig withAnnotationThreadCount(int annotationThreadCount) {
+		this.annotationThreadCount = Math.max(1, annotationThreadCount);
+		return this;
+	}
+	
+	/**
+	 * @return number of threads importing uploaded files and NCBI genomes
+	 */
+	public int getImportThreadCount() {
+		return importThreadCount;
+	}
+	
+	public GenomeCmpConfig withImportThreadCount(int importThreadCount) {
+		this.importThreadCount = Math.max(1, importThreadCount);
+		return this;
+	}
+	
+	/**
+	 * @return how long (in seconds) stopping of task holder waits for running tasks
+	 */
+	public long getStopTimeoutSec() {
+		return stopTimeoutSec;
+	}
+	
+	public GenomeCmpConfig withStopTimeoutSec(long stopTimeoutSec) {
+		this.stopTimeoutSec = stopTimeoutSec;
+		return this;
+	}
+	
 	public File getTempDir() {
 		return tempDir;
 	}
@@ -172,6 +331,153 @@ public class GenomeCmpConfig {
 		return blastBin;
 	}
 	
+	/**
+	 * @return number of parts query proteome is split into for parallel blastp processes
+	 */
+	public int getBlastShards() {
+		return blastShards;
+	}
+	
+	public GenomeCmpConfig withBlastShards(int blastShards) {
+		this.blastShards = Math.max(1, blastShards);
+		return this;
+	}
+	
+	/**
+	 * @return value of -num_threads option passed to every blastp process
+	 */
+	public int getBlastThreads() {
+		return blastThreads;
+	}
+	
+	public GenomeCmpConfig withBlastThreads(int blastThreads) {
+		this.blastThreads = Math.max(1, blastThreads);
+		return this;
+	}
+	
+	public GenomeCmpConfig withBlastDbCacheMb(long blastDbCacheMb) {
+		this.blastDbCacheMb = blastDbCacheMb;
+		return this;
+	}
+	
+	/**
+	 * @return cache of blast databases in temp folder or null if it's switched off
+	 * (blast.db.cache.mb is 0)
+	 */
+	public BlastDbCache getBlastDbCache() throws IOException {
+		if (blastDbCacheMb <= 0)
+			return null;
+		return BlastDbCache.getInstance(new File(tempDir, BLAST_DB_CACHE_DIR), 
+				blastDbCacheMb * 1024 * 1024);
+	}
+	
+	public GenomeCmpConfig withBlastHitCacheMb(long blastHitCacheMb) {
+		this.blastHitCacheMb = blastHitCacheMb;
+		return this;
+	}
+	
+	/**
+	 * @return cache of raw blast hits in temp folder or null if it's switched off
+	 * (blast.hit.cache.mb is 0)
+	 */
+	public synchronized BlastHitCache getBlastHitCache() {
+		if (blastHitCacheMb <= 0)
+			return null;
+		if (blastHitCache == null)
+			blastHitCache = new BlastHitCache(new File(tempDir, BLAST_HIT_CACHE_DIR), 
+					blastHitCacheMb * 1024 * 1024);
+		return blastHitCache;
+	}
+	
+	public GenomeCmpConfig withUploadMemoryMb(long uploadMemoryMb) {
+		this.uploadMemoryMb = uploadMemoryMb;
+		return this;
+	}
+	
+	/**
+	 * @return heap size (in MB) shared by all uploads running at the same time
+	 * (quarter of max heap in case upload.memory.mb is not set)
+	 */
+	public long getUploadMemoryMb() {
+		if (uploadMemoryMb <= 0)
+			return Runtime.getRuntime().maxMemory() / 4 / 1024 / 1024;
+		return uploadMemoryMb;
+	}
+	
+	public GenomeCmpConfig withUploadWaitSec(long uploadWaitSec) {
+		this.uploadWaitSec = uploadWaitSec;
+		return this;
+	}
+	
+	/**
+	 * @return how long (in seconds) import of uploaded file waits for its part
+	 * of upload memory budget before it fails
+	 */
+	public long getUploadWaitSec() {
+		return Math.max(0, uploadWaitSec);
+	}
+	
+	public GenomeCmpConfig withNcbiUrl(String ncbiUrl) {
+		this.ncbiUrl = ncbiUrl;
+		return this;
+	}
+	
+	public GenomeCmpConfig withNcbiCacheMb(long ncbiCacheMb) {
+		this.ncbiCacheMb = ncbiCacheMb;
+		return this;
+	}
+	
+	public GenomeCmpConfig withNcbiDownloadThreads(int ncbiDownloadThreads) {
+		this.ncbiDownloadThreads = Math.max(1, ncbiDownloadThreads);
+		return this;
+	}
+	
+	/**
+	 * @return local mirror of NCBI genome files in temp folder (files are removed
+	 * right after import in case ncbi.cache.mb is 0)
+	 */
+	public NcbiMirrorCache getNcbiMirrorCache() throws IOException {
+		return NcbiMirrorCache.getInstance(new File(tempDir, NCBI_CACHE_DIR), ncbiUrl,
+				Math.max(0, ncbiCacheMb) * 1024 * 1024, ncbiDownloadThreads);
+	}
+	
+	public GenomeCmpConfig withImageCacheMb(long imageCacheMb) {
+		this.imageCacheMb = imageCacheMb;
+		return this;
+	}
+	
+	/**
+	 * @return heap size (in MB) for decoded comparisons kept by ComparisonImage
+	 */
+	public long getImageCacheMb() {
+		return Math.max(0, imageCacheMb);
+	}
+	
+	public GenomeCmpConfig withTileCacheMb(long tileCacheMb) {
+		this.tileCacheMb = tileCacheMb;
+		return this;
+	}
+	
+	/**
+	 * @return heap size (in MB) for PNG tiles kept by ComparisonImage
+	 */
+	public long getTileCacheMb() {
+		return Math.max(0, tileCacheMb);
+	}
+	
+	public GenomeCmpConfig withSliceCacheMb(long sliceCacheMb) {
+		this.sliceCacheMb = sliceCacheMb;
+		return this;
+	}
+	
+	/**
+	 * @return heap size (in MB) for parts of comparisons loaded by ComparisonImage
+	 * for zoomed-in tiles
+	 */
+	public long getSliceCacheMb() {
+		return Math.max(0, sliceCacheMb);
+	}
+	
 	public ObjectStorage getObjectStorage() {
 		return objectStorage;
 	}
@@ -179,4 +485,9 @@ public class GenomeCmpConfig {
 	public JobStatuses getJobStatuses() {
 		return jobStatuses;
 	}
+	
+	public GenomeCmpConfig withJobStatuses(JobStatuses jobStatuses) {
+		this.jobStatuses = jobStatuses;
+		return this;
+	}
 }
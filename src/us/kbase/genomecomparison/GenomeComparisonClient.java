@@ -138,6 +138,28 @@ public class GenomeComparisonClient {
         return res.get(0);
     }
 
+    /**
+     * <p>Original spec-file function name: blast_proteomes_many</p>
+     * <pre>
+     * All-vs-all comparison of proteomes of several genomes. Proteins of all
+     * genomes are compared in one blastp run with joined database, only hits of
+     * every genome to genomes going after it in genome_refs are kept (e-values
+     * are calculated for size of one genome as in blast_proteomes), hits are
+     * split into ProteomeComparison objects for every pair of genomes.
+     * </pre>
+     * @param   input   instance of type {@link us.kbase.genomecomparison.BlastProteomesManyParams BlastProteomesManyParams} (original type "blast_proteomes_many_params")
+     * @return   parameter "job_id" of String
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public String blastProteomesMany(BlastProteomesManyParams input) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(input);
+        TypeReference<List<String>> retType = new TypeReference<List<String>>() {};
+        List<String> res = caller.jsonrpcCall("GenomeComparison.blast_proteomes_many", args, retType, true, true);
+        return res.get(0);
+    }
+
     /**
      * <p>Original spec-file function name: annotate_genome</p>
      * <pre>
@@ -170,18 +192,39 @@ public class GenomeComparisonClient {
         return res.get(0);
     }
 
+    /**
+     * <p>Original spec-file function name: search_ncbi_genome_names</p>
+     * <pre>
+     * Searches names of NCBI genomes which can be imported with import_ncbi_genome.
+     * </pre>
+     * @param   input   instance of type {@link us.kbase.genomecomparison.SearchNcbiGenomeNamesParams SearchNcbiGenomeNamesParams} (original type "search_ncbi_genome_names_params")
+     * @return   instance of type {@link us.kbase.genomecomparison.SearchNcbiGenomeNamesResult SearchNcbiGenomeNamesResult} (original type "search_ncbi_genome_names_result")
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public SearchNcbiGenomeNamesResult searchNcbiGenomeNames(SearchNcbiGenomeNamesParams input) throws IOException, JsonClientException {
+        List<Object> args = new ArrayList<Object>();
+        args.add(input);
+        TypeReference<List<SearchNcbiGenomeNamesResult>> retType = new TypeReference<List<SearchNcbiGenomeNamesResult>>() {};
+        List<SearchNcbiGenomeNamesResult> res = caller.jsonrpcCall("GenomeComparison.search_ncbi_genome_names", args, retType, true, false);
+        return res.get(0);
+    }
+
     /**
      * <p>Original spec-file function name: import_ncbi_genome</p>
      * <pre>
+     * Genome is imported asynchronously, job_id refers to job in user and job state service.
      * </pre>
      * @param   input   instance of type {@link us.kbase.genomecomparison.ImportNcbiGenomeParams ImportNcbiGenomeParams} (original type "import_ncbi_genome_params")
+     * @return   parameter "job_id" of String
      * @throws IOException if an IO exception occurs
      * @throws JsonClientException if a JSON RPC exception occurs
      */
-    public void importNcbiGenome(ImportNcbiGenomeParams input) throws IOException, JsonClientException {
+    public String importNcbiGenome(ImportNcbiGenomeParams input) throws IOException, JsonClientException {
         List<Object> args = new ArrayList<Object>();
         args.add(input);
-        TypeReference<Object> retType = new TypeReference<Object>() {};
-        caller.jsonrpcCall("GenomeComparison.import_ncbi_genome", args, retType, false, true);
+        TypeReference<List<String>> retType = new TypeReference<List<String>>() {};
+        List<String> res = caller.jsonrpcCall("GenomeComparison.import_ncbi_genome", args, retType, true, true);
+        return res.get(0);
     }
 }
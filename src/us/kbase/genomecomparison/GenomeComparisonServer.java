@@ -24,16 +24,11 @@ public class GenomeComparisonServer extends JsonServerServlet {
     private static final long serialVersionUID = 1L;
 
     //BEGIN_CLASS_HEADER
-    private TaskHolder taskHolder = null;
-
     public void init(ServletConfig servletConfig) throws ServletException {
     }
     
     private TaskHolder getTaskHolder() throws Exception {
-    	if (taskHolder == null) {
-			taskHolder = new TaskHolder(GenomeCmpConfig.loadConfig());
-    	}
-    	return taskHolder;
+    	return TaskHolder.getInstance();
     }
     //END_CLASS_HEADER
 
@@ -59,6 +54,27 @@ public class GenomeComparisonServer extends JsonServerServlet {
         return returnVal;
     }
 
+    /**
+     * <p>Original spec-file function name: blast_proteomes_many</p>
+     * <pre>
+     * All-vs-all comparison of proteomes of several genomes. Proteins of all
+     * genomes are compared in one blastp run with joined database, only hits of
+     * every genome to genomes going after it in genome_refs are kept (e-values
+     * are calculated for size of one genome as in blast_proteomes), hits are
+     * split into ProteomeComparison objects for every pair of genomes.
+     * </pre>
+     * @param   input   instance of type {@link us.kbase.genomecomparison.BlastProteomesManyParams BlastProteomesManyParams} (original type "blast_proteomes_many_params")
+     * @return   parameter "job_id" of String
+     */
+    @JsonServerMethod(rpc = "GenomeComparison.blast_proteomes_many")
+    public String blastProteomesMany(BlastProteomesManyParams input, AuthToken authPart) throws Exception {
+        String returnVal = null;
+        //BEGIN blast_proteomes_many
+    	returnVal = getTaskHolder().addTask(input, authPart.toString());
+        //END blast_proteomes_many
+        return returnVal;
+    }
+
     /**
      * <p>Original spec-file function name: annotate_genome</p>
      * <pre>
@@ -90,17 +106,38 @@ public class GenomeComparisonServer extends JsonServerServlet {
         return returnVal;
     }
 
+    /**
+     * <p>Original spec-file function name: search_ncbi_genome_names</p>
+     * <pre>
+     * Searches names of NCBI genomes which can be imported with import_ncbi_genome.
+     * </pre>
+     * @param   input   instance of type {@link us.kbase.genomecomparison.SearchNcbiGenomeNamesParams SearchNcbiGenomeNamesParams} (original type "search_ncbi_genome_names_params")
+     * @return   instance of type {@link us.kbase.genomecomparison.SearchNcbiGenomeNamesResult SearchNcbiGenomeNamesResult} (original type "search_ncbi_genome_names_result")
+     */
+    @JsonServerMethod(rpc = "GenomeComparison.search_ncbi_genome_names")
+    public SearchNcbiGenomeNamesResult searchNcbiGenomeNames(SearchNcbiGenomeNamesParams input) throws Exception {
+        SearchNcbiGenomeNamesResult returnVal = null;
+        //BEGIN search_ncbi_genome_names
+        returnVal = ContigSetUploadServlet.searchNcbiGenomeNames(input);
+        //END search_ncbi_genome_names
+        return returnVal;
+    }
+
     /**
      * <p>Original spec-file function name: import_ncbi_genome</p>
      * <pre>
+     * Genome is imported asynchronously, job_id refers to job in user and job state service.
      * </pre>
      * @param   input   instance of type {@link us.kbase.genomecomparison.ImportNcbiGenomeParams ImportNcbiGenomeParams} (original type "import_ncbi_genome_params")
+     * @return   parameter "job_id" of String
      */
     @JsonServerMethod(rpc = "GenomeComparison.import_ncbi_genome")
-    public void importNcbiGenome(ImportNcbiGenomeParams input, AuthToken authPart) throws Exception {
+    public String importNcbiGenome(ImportNcbiGenomeParams input, AuthToken authPart) throws Exception {
+        String returnVal = null;
         //BEGIN import_ncbi_genome
-    	ContigSetUploadServlet.importNcbiGenome(input.getGenomeName(), input.getOutGenomeWs(), input.getOutGenomeId(), authPart.toString());
+    	returnVal = getTaskHolder().addTask(input, authPart.toString());
         //END import_ncbi_genome
+        return returnVal;
     }
 
     public static void main(String[] args) throws Exception {
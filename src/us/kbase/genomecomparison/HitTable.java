@@ -0,0 +1,325 @@
+package us.kbase.genomecomparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.kbase.common.service.Tuple3;
+
+/**
+ * Column-oriented storage of blastp hits between two proteomes. Gene names
+ * are mapped to dense positions once (in proteome order) so every hit costs
+ * two ints and a double instead of an object with boxed fields. Hits are
+ * grouped by gene through CSR-style offset arrays when sub-BBH filtering
+ * is applied.
+ */
+public class HitTable {
+	private final List<String> names1;
+	private final Map<String, Integer> pos1;
+	private final List<String> names2;
+	private final Map<String, Integer> pos2;
+	private final int proteome1size;
+	private final int proteome2size;
+	private int size = 0;
+	private int[] gene1;
+	private int[] gene2;
+	private double[] score;
+	private int[] percent = null;
+	private boolean[] kept = null;
+	private int[] order = null;
+
+	public HitTable(List<String> proteome1names, List<String> proteome2names) {
+		this(proteome1names, proteome2names, 1024);
+	}
+
+	public HitTable(List<String> proteome1names, List<String> proteome2names, int initialCapacity) {
+		names1 = new ArrayList<String>(proteome1names);
+		pos1 = namesToPos(names1);
+		proteome1size = names1.size();
+		names2 = new ArrayList<String>(proteome2names);
+		pos2 = namesToPos(names2);
+		proteome2size = names2.size();
+		int cap = Math.max(16, initialCapacity);
+		gene1 = new int[cap];
+		gene2 = new int[cap];
+		score = new double[cap];
+	}
+
+	private static Map<String, Integer> namesToPos(List<String> names) {
+		Map<String, Integer> ret = new HashMap<String, Integer>(names.size() * 2);
+		for (int i = 0; i < names.size(); i++)
+			ret.put(names.get(i), i);
+		return ret;
+	}
+
+	private static int intern(String name, List<String> names, Map<String, Integer> pos) {
+		Integer ret = pos.get(name);
+		if (ret == null) {
+			ret = names.size();
+			names.add(name);
+			pos.put(name, ret);
+		}
+		return ret;
+	}
+
+	public void add(String name1, String name2, double bitScore) {
+		add(intern(name1, names1, pos1), intern(name2, names2, pos2), bitScore);
+	}
+
+	public void add(int g1, int g2, double bitScore) {
+		if (size == score.length) {
+			int cap = size * 2;
+			gene1 = Arrays.copyOf(gene1, cap);
+			gene2 = Arrays.copyOf(gene2, cap);
+			score = Arrays.copyOf(score, cap);
+		}
+		gene1[size] = g1;
+		gene2[size] = g2;
+		score[size] = bitScore;
+		size++;
+		order = null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getProteome1size() {
+		return proteome1size;
+	}
+
+	public int getProteome2size() {
+		return proteome2size;
+	}
+
+	/**
+	 * @return true in case some hits refer to gene names which are not part of proteomes
+	 */
+	public boolean hasUnknownGenes() {
+		return names1.size() > proteome1size || names2.size() > proteome2size;
+	}
+
+	public int getGene1(int hit) {
+		return gene1[hit];
+	}
+
+	public int getGene2(int hit) {
+		return gene2[hit];
+	}
+
+	public double getScore(int hit) {
+		return score[hit];
+	}
+
+	/**
+	 * Calculates percent of best score for every hit (best score is the maximum
+	 * of best bit scores of both genes of the hit) and marks hits which are
+	 * lower than subBbhPercent. Top hit of every gene is never filtered out.
+	 */
+	public void filterSubBbh(double subBbhPercent) {
+		int n1 = names1.size();
+		int n2 = names2.size();
+		double[] best1 = new double[n1];
+		int[] bestHit1 = new int[n1];
+		Arrays.fill(bestHit1, -1);
+		double[] best2 = new double[n2];
+		int[] bestHit2 = new int[n2];
+		Arrays.fill(bestHit2, -1);
+		for (int i = 0; i < size; i++) {
+			int g1 = gene1[i];
+			if (bestHit1[g1] < 0 || score[i] > best1[g1]) {
+				best1[g1] = score[i];
+				bestHit1[g1] = i;
+			}
+			int g2 = gene2[i];
+			if (bestHit2[g2] < 0 || score[i] > best2[g2]) {
+				best2[g2] = score[i];
+				bestHit2[g2] = i;
+			}
+		}
+		percent = new int[size];
+		kept = new boolean[size * 2];
+		for (int i = 0; i < size; i++) {
+			double best = Math.max(best1[gene1[i]], best2[gene2[i]]);
+			percent[i] = (int)Math.round(score[i] * 100.0 / best + 1e-6);
+			kept[2 * i] = percent[i] >= subBbhPercent || bestHit1[gene1[i]] == i;
+			kept[2 * i + 1] = percent[i] >= subBbhPercent || bestHit2[gene2[i]] == i;
+		}
+		sortHits();
+	}
+
+	/**
+	 * Orders hits by score (descending), then by percent of best score
+	 * (descending) and finally by arrival order.
+	 */
+	private void sortHits() {
+		order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		int[] buf = new int[size];
+		mergeSort(order, buf, 0, size);
+	}
+
+	private int compareHits(int h1, int h2) {
+		int ret = Double.compare(score[h2], score[h1]);
+		if (ret == 0 && percent != null)
+			ret = Utils.compare(percent[h2], percent[h1]);
+		if (ret == 0)
+			ret = Utils.compare(h1, h2);
+		return ret;
+	}
+
+	private void mergeSort(int[] arr, int[] buf, int from, int to) {
+		int len = to - from;
+		if (len < 12) {
+			for (int i = from + 1; i < to; i++) {
+				int v = arr[i];
+				int j = i - 1;
+				for (; j >= from && compareHits(arr[j], v) > 0; j--)
+					arr[j + 1] = arr[j];
+				arr[j + 1] = v;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(arr, buf, from, mid);
+		mergeSort(arr, buf, mid, to);
+		if (compareHits(arr[mid - 1], arr[mid]) <= 0)
+			return;
+		System.arraycopy(arr, from, buf, from, len);
+		int p = from, q = mid;
+		for (int i = from; i < to; i++) {
+			if (q >= to || (p < mid && compareHits(buf[p], buf[q]) <= 0)) {
+				arr[i] = buf[p++];
+			} else {
+				arr[i] = buf[q++];
+			}
+		}
+	}
+
+	/**
+	 * Builds offsets of CSR-structure grouping sorted hits by gene of one of proteomes.
+	 * @param side 0 for proteome1, 1 for proteome2
+	 * @param hits output array of hit indexes grouped by gene
+	 * @return offsets array (of size genesCount + 1) for hits array
+	 */
+	private int[] groupByGene(int side, int[] hits) {
+		int[] genes = side == 0 ? gene1 : gene2;
+		int n = side == 0 ? names1.size() : names2.size();
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < size; i++)
+			offsets[genes[i] + 1]++;
+		for (int g = 0; g < n; g++)
+			offsets[g + 1] += offsets[g];
+		int[] fill = Arrays.copyOf(offsets, n);
+		for (int k = 0; k < size; k++) {
+			int hit = order[k];
+			hits[fill[genes[hit]]++] = hit;
+		}
+		return offsets;
+	}
+
+	public List<List<Tuple3<Long, Long, Long>>> buildData1() {
+		return buildData(0);
+	}
+
+	public List<List<Tuple3<Long, Long, Long>>> buildData2() {
+		return buildData(1);
+	}
+
+	private List<List<Tuple3<Long, Long, Long>>> buildData(int side) {
+		if (order == null)
+			sortHits();
+		int[] hits = new int[size];
+		int[] offsets = groupByGene(side, hits);
+		int[] otherGenes = side == 0 ? gene2 : gene1;
+		int otherSize = side == 0 ? proteome2size : proteome1size;
+		int n = side == 0 ? proteome1size : proteome2size;
+		List<List<Tuple3<Long, Long, Long>>> ret = new ArrayList<List<Tuple3<Long, Long, Long>>>(n);
+		for (int g = 0; g < n; g++) {
+			int from = offsets[g];
+			int to = offsets[g + 1];
+			int count = 0;
+			for (int k = from; k < to; k++)
+				if (kept == null || kept[2 * hits[k] + side])
+					count++;
+			List<Tuple3<Long, Long, Long>> list = new ArrayList<Tuple3<Long, Long, Long>>(count);
+			for (int k = from; k < to; k++) {
+				int hit = hits[k];
+				if (kept != null && !kept[2 * hit + side])
+					continue;
+				int other = otherGenes[hit];
+				list.add(new Tuple3<Long, Long, Long>()
+						.withE1(other < otherSize ? (Long)(long)other : null)
+						.withE2(Math.round(score[hit] * 100))
+						.withE3(percent == null ? null : (Long)(long)percent[hit]));
+			}
+			ret.add(list);
+		}
+		return ret;
+	}
+
+	public PackedHits buildPacked1() {
+		return buildPacked(0);
+	}
+
+	public PackedHits buildPacked2() {
+		return buildPacked(1);
+	}
+
+	/**
+	 * Builds the same hits as buildData but in packed form (sorted by target
+	 * inside gene with ranks keeping order of buildData, hits to genes out of
+	 * proteomes are skipped).
+	 */
+	private PackedHits buildPacked(int side) {
+		if (order == null)
+			sortHits();
+		int[] hits = new int[size];
+		int[] offsets = groupByGene(side, hits);
+		int[] otherGenes = side == 0 ? gene2 : gene1;
+		int otherSize = side == 0 ? proteome2size : proteome1size;
+		int n = side == 0 ? proteome1size : proteome2size;
+		int[] retOffsets = new int[n + 1];
+		int[] targets = new int[size];
+		int[] scores = new int[size];
+		byte[] percents = new byte[size];
+		int[] ranks = new int[size];
+		long[] buf = new long[16];
+		int[] keptHits = new int[16];
+		int count = 0;
+		for (int g = 0; g < n; g++) {
+			int from = offsets[g];
+			int to = offsets[g + 1];
+			if (buf.length < to - from) {
+				buf = new long[to - from];
+				keptHits = new int[to - from];
+			}
+			int len = 0;
+			for (int k = from; k < to; k++) {
+				int hit = hits[k];
+				if ((kept != null && !kept[2 * hit + side]) || otherGenes[hit] >= otherSize)
+					continue;
+				// Rank is position in buildData, hits with the same target stay in order of score
+				keptHits[len] = hit;
+				buf[len] = ((long)otherGenes[hit] << 32) | len;
+				len++;
+			}
+			Arrays.sort(buf, 0, len);
+			for (int q = 0; q < len; q++) {
+				int rank = (int)buf[q];
+				int hit = keptHits[rank];
+				targets[count] = otherGenes[hit];
+				scores[count] = (int)Math.round(score[hit] * 100);
+				percents[count] = percent == null ? 0 : (byte)percent[hit];
+				ranks[count] = rank;
+				count++;
+			}
+			retOffsets[g + 1] = count;
+		}
+		return new PackedHits(retOffsets, Arrays.copyOf(targets, count), Arrays.copyOf(scores, count),
+				Arrays.copyOf(percents, count), Arrays.copyOf(ranks, count));
+	}
+}
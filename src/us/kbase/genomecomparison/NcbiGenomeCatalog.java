@@ -0,0 +1,121 @@
+package us.kbase.genomecomparison;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Names of NCBI genomes and paths of their files on NCBI server loaded from
+ * genome2ftp.properties once per service. Names are kept sorted in lower case
+ * so that prefix search is binary search and substring search is one pass
+ * without any allocation per name.
+ */
+public class NcbiGenomeCatalog {
+	public static final int DEFAULT_LIMIT = 100;
+	private static NcbiGenomeCatalog instance = null;
+
+	private final Map<String, List<String>> genomeToPaths;
+	private final List<String> names;
+	private final String[] sortedNames;
+	private final String[] sortedLowerNames;
+
+	public NcbiGenomeCatalog(Map<String, List<String>> genomeToPaths) {
+		this.genomeToPaths = new LinkedHashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> entry : genomeToPaths.entrySet())
+			this.genomeToPaths.put(entry.getKey(),
+					Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+		this.names = Collections.unmodifiableList(new ArrayList<String>(this.genomeToPaths.keySet()));
+		sortedNames = names.toArray(new String[names.size()]);
+		Arrays.sort(sortedNames, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				int ret = o1.toLowerCase().compareTo(o2.toLowerCase());
+				return ret != 0 ? ret : o1.compareTo(o2);
+			}
+		});
+		sortedLowerNames = new String[sortedNames.length];
+		for (int i = 0; i < sortedNames.length; i++)
+			sortedLowerNames[i] = sortedNames[i].toLowerCase();
+	}
+
+	/**
+	 * Returns catalog loaded from genome2ftp.properties resource (it's loaded
+	 * at first call).
+	 */
+	public static synchronized NcbiGenomeCatalog getInstance() throws Exception {
+		if (instance == null) {
+			InputStream is = NcbiGenomeCatalog.class.getResourceAsStream("genome2ftp.properties");
+			try {
+				Map<String, List<String>> genomeToPaths = new ObjectMapper().readValue(is,
+						new TypeReference<Map<String, List<String>>>() {});
+				instance = new NcbiGenomeCatalog(genomeToPaths);
+			} finally {
+				is.close();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return all names in the order of genome2ftp.properties (unmodifiable)
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * @return paths of genome files relative to NCBI folder or null for unknown name
+	 */
+	public List<String> getPaths(String genomeName) {
+		return genomeToPaths.get(genomeName);
+	}
+
+	/**
+	 * Finds names starting with query (in alphabetical order) followed by names
+	 * containing it in other position. Search is case insensitive.
+	 * @param query part of name, all names are found if it's null or empty
+	 * @param start index of first returned name in found list
+	 * @param limit max number of returned names
+	 */
+	public SearchNcbiGenomeNamesResult search(String query, int start, int limit) {
+		String q = query == null ? "" : query.trim().toLowerCase();
+		start = Math.max(0, start);
+		limit = Math.max(0, limit);
+		List<String> page = new ArrayList<String>();
+		long total;
+		if (q.isEmpty()) {
+			total = sortedNames.length;
+			for (int i = start; i < sortedNames.length && page.size() < limit; i++)
+				page.add(sortedNames[i]);
+		} else {
+			int pos = Arrays.binarySearch(sortedLowerNames, q);
+			int from = pos >= 0 ? pos : (-pos - 1);
+			while (from > 0 && sortedLowerNames[from - 1].startsWith(q))
+				from--;
+			int to = from;
+			while (to < sortedLowerNames.length && sortedLowerNames[to].startsWith(q))
+				to++;
+			for (int i = from + start; i < to && page.size() < limit; i++)
+				page.add(sortedNames[i]);
+			total = to - from;
+			for (int i = 0; i < sortedLowerNames.length; i++) {
+				if (i >= from && i < to)
+					continue;
+				if (sortedLowerNames[i].indexOf(q, 1) > 0) {
+					if (total >= start && page.size() < limit)
+						page.add(sortedNames[i]);
+					total++;
+				}
+			}
+		}
+		return new SearchNcbiGenomeNamesResult().withGenomeNames(page).withTotal(total);
+	}
+}
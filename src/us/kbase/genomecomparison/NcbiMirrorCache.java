@@ -0,0 +1,462 @@
+package us.kbase.genomecomparison;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Local mirror of NCBI genome files. Every file is stored under the same
+ * relative path it has on NCBI server (paths from genome2ftp.properties), so
+ * importing the same genome again doesn't download anything. Missing files of
+ * one genome are downloaded in parallel into .part files which are resumed
+ * after network errors (and after restart of service) and renamed when they
+ * are complete (size of FTP file is asked by SIZE command in case server
+ * doesn't report it with transfer). Files used by running imports are
+ * reference-counted and never evicted, other ones are removed in
+ * least-recently-used order when total size exceeds the limit.
+ */
+public class NcbiMirrorCache {
+	private static final String PART_SUFFIX = ".part";
+	private static final int MAX_ATTEMPTS = 3;
+	private static final int TIMEOUT_MS = 60 * 1000;
+	private static final Map<File, NcbiMirrorCache> instances = new HashMap<File, NcbiMirrorCache>();
+
+	private final File cacheDir;
+	private final String baseUrl;
+	private final long maxSize;
+	private final int threadCount;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private long totalSize = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long resumes = 0;
+	private long evictions = 0;
+	private long downloadedBytes = 0;
+	private long lastAccess = 0;
+
+	/**
+	 * @param baseUrl URL of folder on NCBI server which paths are relative to
+	 * @param threadCount max number of files of one genome downloaded at the same time
+	 */
+	public NcbiMirrorCache(File cacheDir, String baseUrl, long maxSize, int threadCount) {
+		this.cacheDir = cacheDir;
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : (baseUrl + "/");
+		this.maxSize = maxSize;
+		this.threadCount = Math.max(1, threadCount);
+		if (!cacheDir.exists())
+			cacheDir.mkdirs();
+		List<File> files = new ArrayList<File>();
+		listFiles(cacheDir, files);
+		String root = cacheDir.getAbsolutePath() + "/";
+		for (File f : files) {
+			if (f.getName().endsWith(PART_SUFFIX))
+				continue;
+			Entry entry = new Entry(f.getAbsolutePath().substring(root.length()), f);
+			entry.ready = true;
+			entry.size = f.length();
+			entry.lastAccess = f.lastModified();
+			lastAccess = Math.max(lastAccess, entry.lastAccess);
+			entries.put(entry.path, entry);
+			totalSize += entry.size;
+		}
+	}
+
+	/**
+	 * Returns cache instance shared by all imports working with given folder.
+	 */
+	public static synchronized NcbiMirrorCache getInstance(File cacheDir, String baseUrl,
+			long maxSize, int threadCount) throws IOException {
+		File key = cacheDir.getCanonicalFile();
+		NcbiMirrorCache ret = instances.get(key);
+		if (ret == null) {
+			ret = new NcbiMirrorCache(key, baseUrl, maxSize, threadCount);
+			instances.put(key, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns local copies of files with given paths (relative to base URL)
+	 * downloading missing ones. Every call of this method should be followed
+	 * by {@link #release(List)}.
+	 */
+	public List<File> acquire(List<String> paths) throws Exception {
+		if (paths.isEmpty())
+			return new ArrayList<File>();
+		final List<Entry> used = new ArrayList<Entry>();
+		synchronized (this) {
+			for (String path : paths) {
+				if (path.startsWith("/") || path.contains(".."))
+					throw new IllegalArgumentException("Wrong path: " + path);
+				Entry entry = entries.get(path);
+				if (entry == null) {
+					entry = new Entry(path, new File(cacheDir, path));
+					entries.put(path, entry);
+				}
+				entry.refCount++;
+				entry.lastAccess = nextAccessTime();
+				used.add(entry);
+			}
+		}
+		try {
+			List<Callable<File>> downloads = new ArrayList<Callable<File>>();
+			for (final Entry entry : used) {
+				downloads.add(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						return prepare(entry);
+					}
+				});
+			}
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(threadCount, used.size()));
+			List<File> ret = new ArrayList<File>();
+			try {
+				for (Future<File> future : pool.invokeAll(downloads)) {
+					try {
+						ret.add(future.get());
+					} catch (ExecutionException ex) {
+						if (ex.getCause() instanceof Exception)
+							throw (Exception)ex.getCause();
+						throw ex;
+					}
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+			return ret;
+		} catch (Exception ex) {
+			release(paths);
+			throw ex;
+		}
+	}
+
+	private File prepare(Entry entry) throws IOException {
+		boolean wasDownloaded = false;
+		boolean wasResumed = false;
+		long bytes = 0;
+		synchronized (entry) {
+			if (!entry.ready) {
+				File part = new File(entry.file.getPath() + PART_SUFFIX);
+				wasResumed = part.exists() && part.length() > 0;
+				bytes = download(new URL(baseUrl + entry.path), part);
+				if (entry.file.exists())
+					entry.file.delete();
+				if (!part.renameTo(entry.file))
+					throw new IOException("Can not move downloaded file into " + entry.file);
+				entry.size = entry.file.length();
+				entry.ready = true;
+				wasDownloaded = true;
+			} else {
+				entry.file.setLastModified(System.currentTimeMillis());
+			}
+		}
+		synchronized (this) {
+			if (wasDownloaded) {
+				misses++;
+				if (wasResumed)
+					resumes++;
+				downloadedBytes += bytes;
+				totalSize += entry.size;
+			} else {
+				hits++;
+			}
+		}
+		if (wasDownloaded) {
+			Stat.addNcbiCacheMiss(cacheDir.getParentFile());
+		} else {
+			Stat.addNcbiCacheHit(cacheDir.getParentFile());
+		}
+		return entry.file;
+	}
+
+	/**
+	 * Downloads file into given .part file continuing from its current length.
+	 * Download is repeated (continuing from the last byte) in case of error.
+	 * @return number of bytes actually transfered
+	 */
+	private static long download(URL url, File part) throws IOException {
+		part.getParentFile().mkdirs();
+		long ret = 0;
+		IOException error = null;
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			long[] transfered = {0};
+			try {
+				downloadRest(url, part, transfered);
+				return ret + transfered[0];
+			} catch (IOException ex) {
+				ret += transfered[0];
+				error = ex;
+			}
+		}
+		throw error;
+	}
+
+	private static void downloadRest(URL url, File part, long[] transfered) throws IOException {
+		long offset = part.exists() ? part.length() : 0;
+		URLConnection conn = url.openConnection();
+		conn.setConnectTimeout(TIMEOUT_MS);
+		conn.setReadTimeout(TIMEOUT_MS);
+		boolean continued = false;
+		if (conn instanceof HttpURLConnection) {
+			HttpURLConnection http = (HttpURLConnection)conn;
+			if (offset > 0)
+				http.setRequestProperty("Range", "bytes=" + offset + "-");
+			int code = http.getResponseCode();
+			if (offset > 0 && code == 416) {
+				// Range starts at the end of file, so everything was downloaded before
+				http.disconnect();
+				return;
+			}
+			continued = code == HttpURLConnection.HTTP_PARTIAL;
+		}
+		InputStream is = conn.getInputStream();
+		// Length is known after stream is opened (FTP reports it in reply to RETR)
+		long expectedLength = conn.getContentLength();
+		long remoteSize = expectedLength < 0 ? -1 : (continued ? offset + expectedLength : expectedLength);
+		try {
+			if (offset > 0 && !continued) {
+				// Server doesn't support ranges (FTP or local files), so already
+				// downloaded part is skipped in stream
+				long skipped = skipFully(is, offset);
+				if (skipped < offset) {
+					part.delete();
+					throw new IOException("Remote file is shorter than downloaded part: " + url);
+				}
+			}
+			OutputStream os = new FileOutputStream(part, true);
+			try {
+				byte[] buf = new byte[1 << 16];
+				while (true) {
+					int r = is.read(buf);
+					if (r == -1)
+						break;
+					os.write(buf, 0, r);
+					transfered[0] += r;
+				}
+			} finally {
+				os.close();
+			}
+		} finally {
+			is.close();
+		}
+		// Broken FTP data connection looks like normal end of stream, so size
+		// of file is required to tell complete download from truncated one
+		if (remoteSize < 0 && "ftp".equals(url.getProtocol())) {
+			remoteSize = getFtpSize(url);
+			if (remoteSize < 0)
+				throw new IOException("Size of remote file is unknown, download of " + url +
+						" can not be checked");
+		}
+		if (remoteSize >= 0 && part.length() < remoteSize)
+			throw new IOException("Download of " + url + " was interrupted after " +
+					part.length() + " of " + remoteSize + " bytes");
+		if (remoteSize >= 0 && part.length() > remoteSize) {
+			part.delete();
+			throw new IOException("Downloaded file is longer than remote one (" + remoteSize +
+					" bytes): " + url);
+		}
+	}
+
+	/**
+	 * Asks FTP server for size of file (SIZE command) through separate control
+	 * connection.
+	 * @return size of file or -1 in case server doesn't support SIZE command
+	 */
+	static long getFtpSize(URL url) throws IOException {
+		Socket socket = new Socket();
+		socket.connect(new InetSocketAddress(url.getHost(), url.getPort() < 0 ? 21 : url.getPort()),
+				TIMEOUT_MS);
+		try {
+			socket.setSoTimeout(TIMEOUT_MS);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					"ISO-8859-1"));
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), "ISO-8859-1");
+			String user = "anonymous";
+			String password = "anonymous@";
+			if (url.getUserInfo() != null) {
+				String[] parts = url.getUserInfo().split(":", 2);
+				user = URLDecoder.decode(parts[0], "UTF-8");
+				password = parts.length > 1 ? URLDecoder.decode(parts[1], "UTF-8") : "";
+			}
+			checkFtpReply(readFtpReply(in), '2', url);
+			String reply = ftpCommand(in, out, "USER " + user);
+			if (reply.charAt(0) == '3')
+				reply = ftpCommand(in, out, "PASS " + password);
+			checkFtpReply(reply, '2', url);
+			checkFtpReply(ftpCommand(in, out, "TYPE I"), '2', url);
+			reply = ftpCommand(in, out, "SIZE " + URLDecoder.decode(url.getPath(), "UTF-8"));
+			long ret = -1;
+			if (reply.startsWith("213"))
+				ret = Long.parseLong(reply.substring(4).trim());
+			try {
+				ftpCommand(in, out, "QUIT");
+			} catch (IOException ignore) {}
+			return ret;
+		} finally {
+			socket.close();
+		}
+	}
+
+	private static String ftpCommand(BufferedReader in, Writer out, String command) throws IOException {
+		out.write(command + "\r\n");
+		out.flush();
+		return readFtpReply(in);
+	}
+
+	/**
+	 * @return last line of (possibly multi-line) reply starting with reply code
+	 */
+	private static String readFtpReply(BufferedReader in) throws IOException {
+		String line = in.readLine();
+		if (line == null || line.length() < 3)
+			throw new IOException("Unexpected reply of FTP server: " + line);
+		String code = line.substring(0, 3);
+		if (line.length() > 3 && line.charAt(3) == '-') {
+			while (true) {
+				line = in.readLine();
+				if (line == null)
+					throw new IOException("FTP connection was closed");
+				if (line.startsWith(code + " "))
+					break;
+			}
+		}
+		return line;
+	}
+
+	private static void checkFtpReply(String reply, char expectedType, URL url) throws IOException {
+		if (reply.charAt(0) != expectedType)
+			throw new IOException("Unexpected reply of FTP server for " + url + ": " + reply);
+	}
+
+	private static long skipFully(InputStream is, long count) throws IOException {
+		long ret = 0;
+		byte[] buf = null;
+		while (ret < count) {
+			long skipped = is.skip(count - ret);
+			if (skipped <= 0) {
+				if (buf == null)
+					buf = new byte[1 << 16];
+				int r = is.read(buf, 0, (int)Math.min(buf.length, count - ret));
+				if (r == -1)
+					break;
+				skipped = r;
+			}
+			ret += skipped;
+		}
+		return ret;
+	}
+
+	public synchronized void release(List<String> paths) {
+		for (String path : paths) {
+			Entry entry = entries.get(path);
+			if (entry == null)
+				continue;
+			entry.refCount--;
+			if (entry.refCount == 0 && !entry.ready)
+				entries.remove(path);
+		}
+		evict();
+	}
+
+	private long nextAccessTime() {
+		lastAccess = Math.max(lastAccess + 1, System.currentTimeMillis());
+		return lastAccess;
+	}
+
+	private void evict() {
+		if (totalSize <= maxSize)
+			return;
+		List<Entry> candidates = new ArrayList<Entry>();
+		for (Entry entry : entries.values())
+			if (entry.ready && entry.refCount == 0)
+				candidates.add(entry);
+		Collections.sort(candidates, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return Utils.compare(o1.lastAccess, o2.lastAccess);
+			}
+		});
+		for (Entry entry : candidates) {
+			if (totalSize <= maxSize)
+				break;
+			entry.file.delete();
+			entries.remove(entry.path);
+			totalSize -= entry.size;
+			evictions++;
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of downloads continued from partially downloaded file
+	 */
+	public synchronized long getResumes() {
+		return resumes;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getDownloadedBytes() {
+		return downloadedBytes;
+	}
+
+	public synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	private static void listFiles(File dir, List<File> ret) {
+		for (File f : dir.listFiles()) {
+			if (f.isDirectory()) {
+				listFiles(f, ret);
+			} else {
+				ret.add(f);
+			}
+		}
+	}
+
+	private static class Entry {
+		final String path;
+		final File file;
+		boolean ready = false;
+		int refCount = 0;
+		long size = 0;
+		long lastAccess = 0;
+
+		Entry(String path, File file) {
+			this.path = path;
+			this.file = file;
+		}
+	}
+}
@@ -7,11 +7,17 @@ import us.kbase.common.service.Tuple11;
 import us.kbase.workspace.ObjectData;
 import us.kbase.workspace.ObjectIdentity;
 import us.kbase.workspace.SaveObjectsParams;
+import us.kbase.workspace.SubObjectIdentity;
 
 public interface ObjectStorage {
 
 	public List<ObjectData> getObjects(String authToken, List<ObjectIdentity> objectIds) throws Exception;
     
+	public List<ObjectData> getObjectSubset(String authToken, List<SubObjectIdentity> subObjectIds) throws Exception;
+    
+    public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>> getObjectInfo(
+    		String authToken, List<ObjectIdentity> objectIds, Long includeMetadata) throws Exception;
+
     public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String,String>>> saveObjects(
     		String authToken, SaveObjectsParams params) throws Exception;
 }
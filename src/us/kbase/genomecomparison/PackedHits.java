@@ -0,0 +1,288 @@
+package us.kbase.genomecomparison;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.kbase.common.service.Tuple3;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Hits of all genes of one genome in packed_hits form of ProteomeComparison
+ * (fields data1_packed and data2_packed). Hits are kept in primitive columns
+ * grouped by gene (CSR-style offsets) and sorted by target inside gene, so
+ * after encoding (unsigned varints of hit counts, target deltas, scores,
+ * percents and ranks written column after column) most hits take 5-6 bytes
+ * instead of about 20 bytes of JSON, and decoding doesn't create any object
+ * per hit. Rank of hit is its position in list of hits of gene in usual form
+ * (where the best hit goes first), toData() restores this order. Use
+ * unpack(ProteomeComparison) to get comparison with packed hits in usual
+ * data1/data2 form.
+ */
+public class PackedHits {
+	private final int[] offsets;
+	private final int[] targets;
+	private final int[] scores;
+	private final byte[] percents;
+	private final int[] ranks;
+
+	/**
+	 * @param offsets hits of gene i are placed in [offsets[i]..offsets[i+1])
+	 * @param targets targets of every gene should be sorted
+	 * @param ranks positions of hits of every gene in usual form (permutation
+	 * of 0..count-1 for every gene)
+	 */
+	public PackedHits(int[] offsets, int[] targets, int[] scores, byte[] percents, int[] ranks) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.scores = scores;
+		this.percents = percents;
+		this.ranks = ranks;
+	}
+
+	public int getGeneCount() {
+		return offsets.length - 1;
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getTargets() {
+		return targets;
+	}
+
+	public int[] getScores() {
+		return scores;
+	}
+
+	public byte[] getPercents() {
+		return percents;
+	}
+
+	public int[] getRanks() {
+		return ranks;
+	}
+
+	/**
+	 * Converts hits from data1/data2 form. Hits with undefined target are skipped.
+	 */
+	public static PackedHits fromData(List<List<Tuple3<Long, Long, Long>>> data) {
+		int n = data.size();
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < n; i++)
+			offsets[i + 1] = offsets[i] + data.get(i).size();
+		int[] targets = new int[offsets[n]];
+		int[] scores = new int[offsets[n]];
+		byte[] percents = new byte[offsets[n]];
+		int[] ranks = new int[offsets[n]];
+		long[] buf = new long[16];
+		int[] keptHits = new int[16];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			List<Tuple3<Long, Long, Long>> hits = data.get(i);
+			if (buf.length < hits.size()) {
+				buf = new long[hits.size()];
+				keptHits = new int[hits.size()];
+			}
+			int len = 0;
+			for (int k = 0; k < hits.size(); k++)
+				if (hits.get(k).getE1() != null) {
+					keptHits[len] = k;
+					buf[len] = (hits.get(k).getE1() << 32) | len;
+					len++;
+				}
+			Arrays.sort(buf, 0, len);
+			for (int q = 0; q < len; q++) {
+				int rank = (int)buf[q];
+				Tuple3<Long, Long, Long> hit = hits.get(keptHits[rank]);
+				targets[count] = (int)(long)hit.getE1();
+				scores[count] = hit.getE2() == null ? 0 : (int)(long)hit.getE2();
+				percents[count] = hit.getE3() == null ? 0 : (byte)Math.min(100, Math.max(0, hit.getE3()));
+				ranks[count] = rank;
+				count++;
+			}
+			offsets[i + 1] = count;
+		}
+		return new PackedHits(offsets, Arrays.copyOf(targets, count), Arrays.copyOf(scores, count),
+				Arrays.copyOf(percents, count), Arrays.copyOf(ranks, count));
+	}
+
+	/**
+	 * @return hits in data1/data2 form (in order of ranks)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<List<Tuple3<Long, Long, Long>>> toData() {
+		int n = getGeneCount();
+		List<List<Tuple3<Long, Long, Long>>> ret = new ArrayList<List<Tuple3<Long, Long, Long>>>(n);
+		for (int i = 0; i < n; i++) {
+			int len = offsets[i + 1] - offsets[i];
+			Tuple3<Long, Long, Long>[] hits = new Tuple3[len];
+			for (int pos = offsets[i]; pos < offsets[i + 1]; pos++) {
+				int rank = ranks[pos];
+				if (rank >= len || hits[rank] != null)
+					throw new IllegalStateException("Wrong rank of hit of gene " + i + ": " + rank);
+				hits[rank] = new Tuple3<Long, Long, Long>().withE1((long)targets[pos])
+						.withE2((long)scores[pos]).withE3((long)percents[pos]);
+			}
+			ret.add(new ArrayList<Tuple3<Long, Long, Long>>(Arrays.asList(hits)));
+		}
+		return ret;
+	}
+
+	/**
+	 * @return value for data1_packed/data2_packed field
+	 */
+	public String encode() {
+		int n = getGeneCount();
+		VarintWriter out = new VarintWriter(16 + n + targets.length * 5);
+		out.write(n);
+		for (int i = 0; i < n; i++)
+			out.write(offsets[i + 1] - offsets[i]);
+		for (int i = 0; i < n; i++) {
+			int prev = 0;
+			for (int pos = offsets[i]; pos < offsets[i + 1]; pos++) {
+				out.write(targets[pos] - prev);
+				prev = targets[pos];
+			}
+		}
+		for (int pos = 0; pos < targets.length; pos++)
+			out.write(scores[pos]);
+		for (int pos = 0; pos < targets.length; pos++)
+			out.write(percents[pos]);
+		for (int pos = 0; pos < targets.length; pos++)
+			out.write(ranks[pos]);
+		return Base64Variants.getDefaultVariant().encode(out.toByteArray());
+	}
+
+	/**
+	 * Decodes value of data1_packed/data2_packed field.
+	 */
+	public static PackedHits decode(String packed) {
+		byte[] data;
+		try {
+			// Base64Variant.decode(String) appears only in Jackson 2.3 (service uses 2.2)
+			data = new TextNode(packed).getBinaryValue(Base64Variants.getDefaultVariant());
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Packed hits are not valid base64 text", ex);
+		}
+		VarintReader in = new VarintReader(data);
+		int n = in.read();
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < n; i++)
+			offsets[i + 1] = offsets[i] + in.read();
+		int total = offsets[n];
+		int[] targets = new int[total];
+		for (int i = 0; i < n; i++) {
+			int prev = 0;
+			for (int pos = offsets[i]; pos < offsets[i + 1]; pos++) {
+				prev += in.read();
+				targets[pos] = prev;
+			}
+		}
+		int[] scores = new int[total];
+		for (int pos = 0; pos < total; pos++)
+			scores[pos] = in.read();
+		byte[] percents = new byte[total];
+		for (int pos = 0; pos < total; pos++)
+			percents[pos] = (byte)in.read();
+		int[] ranks = new int[total];
+		for (int pos = 0; pos < total; pos++)
+			ranks[pos] = in.read();
+		if (!in.isEnd())
+			throw new IllegalStateException("Unexpected data after packed hits");
+		return new PackedHits(offsets, targets, scores, percents, ranks);
+	}
+
+	/**
+	 * Moves hits of comparison into data1_packed/data2_packed fields (proteome
+	 * maps are removed too since they can be restored from names).
+	 * @return the same comparison object
+	 */
+	public static ProteomeComparison pack(ProteomeComparison cmp) {
+		if (cmp.getData1() != null)
+			cmp.withData1Packed(fromData(cmp.getData1()).encode()).withData1(null);
+		if (cmp.getData2() != null)
+			cmp.withData2Packed(fromData(cmp.getData2()).encode()).withData2(null);
+		return cmp.withProteome1map(null).withProteome2map(null);
+	}
+
+	/**
+	 * Fills data1/data2 (and proteome maps) of comparison stored with packed
+	 * hits, comparisons in usual form are not changed.
+	 * @return the same comparison object
+	 */
+	public static ProteomeComparison unpack(ProteomeComparison cmp) {
+		if (cmp.getData1() == null && cmp.getData1Packed() != null)
+			cmp.withData1(decode(cmp.getData1Packed()).toData()).withData1Packed(null);
+		if (cmp.getData2() == null && cmp.getData2Packed() != null)
+			cmp.withData2(decode(cmp.getData2Packed()).toData()).withData2Packed(null);
+		if (cmp.getProteome1map() == null && cmp.getProteome1names() != null)
+			cmp.setProteome1map(namesToPos(cmp.getProteome1names()));
+		if (cmp.getProteome2map() == null && cmp.getProteome2names() != null)
+			cmp.setProteome2map(namesToPos(cmp.getProteome2names()));
+		return cmp;
+	}
+
+	private static Map<String, Long> namesToPos(List<String> names) {
+		Map<String, Long> ret = new HashMap<String, Long>();
+		for (int i = 0; i < names.size(); i++)
+			ret.put(names.get(i), (long)i);
+		return ret;
+	}
+
+	private static class VarintWriter {
+		private byte[] buf;
+		private int size = 0;
+
+		VarintWriter(int capacity) {
+			buf = new byte[capacity];
+		}
+
+		void write(int value) {
+			if (value < 0)
+				throw new IllegalStateException("Negative value can't be packed: " + value);
+			if (size + 5 > buf.length)
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + 5));
+			while (value >= 0x80) {
+				buf[size++] = (byte)((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			buf[size++] = (byte)value;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, size);
+		}
+	}
+
+	private static class VarintReader {
+		private final byte[] buf;
+		private int pos = 0;
+
+		VarintReader(byte[] buf) {
+			this.buf = buf;
+		}
+
+		int read() {
+			int ret = 0;
+			for (int shift = 0; ; shift += 7) {
+				if (pos >= buf.length || shift > 28)
+					throw new IllegalStateException("Packed hits are broken at byte " + pos);
+				byte b = buf[pos++];
+				ret |= (b & 0x7f) << shift;
+				if (b >= 0)
+					return ret;
+			}
+		}
+
+		boolean isEnd() {
+			return pos == buf.length;
+		}
+	}
+}
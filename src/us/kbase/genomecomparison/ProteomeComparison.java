@@ -29,12 +29,20 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  * mapping<string, int> proteome2map - map from genes of genome2 to their positions
  * list<list<hit>> data1 - outer list iterates over positions of genome1 gene names, inner list iterates over hits from given gene1 to genome2
  * list<list<hit>> data2 - outer list iterates over positions of genome2 gene names, inner list iterates over hits from given gene2 to genome1
+ * packed_hits data1_packed - the same hits as in data1 in compact form (used instead of data1)
+ * packed_hits data2_packed - the same hits as in data2 in compact form (used instead of data2)
  * @optional genome1ws
  * @optional genome1id
  * @optional genome1ref
  * @optional genome2ws
  * @optional genome2id
  * @optional genome2ref
+ * @optional proteome1map
+ * @optional proteome2map
+ * @optional data1
+ * @optional data2
+ * @optional data1_packed
+ * @optional data2_packed
  * </pre>
  * 
  */
@@ -54,7 +62,9 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
     "proteome2names",
     "proteome2map",
     "data1",
-    "data2"
+    "data2",
+    "data1_packed",
+    "data2_packed"
 })
 public class ProteomeComparison {
 
@@ -86,6 +96,10 @@ public class ProteomeComparison {
     private List<List<us.kbase.common.service.Tuple3 <Long, Long, Long>>> data1;
     @JsonProperty("data2")
     private List<List<us.kbase.common.service.Tuple3 <Long, Long, Long>>> data2;
+    @JsonProperty("data1_packed")
+    private java.lang.String data1Packed;
+    @JsonProperty("data2_packed")
+    private java.lang.String data2Packed;
     private Map<java.lang.String, Object> additionalProperties = new HashMap<java.lang.String, Object>();
 
     @JsonProperty("genome1ws")
@@ -298,6 +312,36 @@ public class ProteomeComparison {
         return this;
     }
 
+    @JsonProperty("data1_packed")
+    public java.lang.String getData1Packed() {
+        return data1Packed;
+    }
+
+    @JsonProperty("data1_packed")
+    public void setData1Packed(java.lang.String data1Packed) {
+        this.data1Packed = data1Packed;
+    }
+
+    public ProteomeComparison withData1Packed(java.lang.String data1Packed) {
+        this.data1Packed = data1Packed;
+        return this;
+    }
+
+    @JsonProperty("data2_packed")
+    public java.lang.String getData2Packed() {
+        return data2Packed;
+    }
+
+    @JsonProperty("data2_packed")
+    public void setData2Packed(java.lang.String data2Packed) {
+        this.data2Packed = data2Packed;
+    }
+
+    public ProteomeComparison withData2Packed(java.lang.String data2Packed) {
+        this.data2Packed = data2Packed;
+        return this;
+    }
+
     @JsonAnyGetter
     public Map<java.lang.String, Object> getAdditionalProperties() {
         return this.additionalProperties;
@@ -310,7 +354,7 @@ public class ProteomeComparison {
 
     @Override
     public java.lang.String toString() {
-        return ((((((((((((((((((((((((((((((("ProteomeComparison"+" [genome1ws=")+ genome1ws)+", genome1id=")+ genome1id)+", genome1ref=")+ genome1ref)+", genome2ws=")+ genome2ws)+", genome2id=")+ genome2id)+", genome2ref=")+ genome2ref)+", subBbhPercent=")+ subBbhPercent)+", maxEvalue=")+ maxEvalue)+", proteome1names=")+ proteome1names)+", proteome1map=")+ proteome1map)+", proteome2names=")+ proteome2names)+", proteome2map=")+ proteome2map)+", data1=")+ data1)+", data2=")+ data2)+", additionalProperties=")+ additionalProperties)+"]");
+        return ((((((((((((((((((((((((((((((((((("ProteomeComparison"+" [genome1ws=")+ genome1ws)+", genome1id=")+ genome1id)+", genome1ref=")+ genome1ref)+", genome2ws=")+ genome2ws)+", genome2id=")+ genome2id)+", genome2ref=")+ genome2ref)+", subBbhPercent=")+ subBbhPercent)+", maxEvalue=")+ maxEvalue)+", proteome1names=")+ proteome1names)+", proteome1map=")+ proteome1map)+", proteome2names=")+ proteome2names)+", proteome2map=")+ proteome2map)+", data1=")+ data1)+", data2=")+ data2)+", data1Packed=")+ data1Packed)+", data2Packed=")+ data2Packed)+", additionalProperties=")+ additionalProperties)+"]");
     }
 
 }
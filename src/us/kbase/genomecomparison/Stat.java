@@ -4,20 +4,42 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class Stat {
 	private static int queuedTasks = 0;
 	private static int runningTasks = 0;
 	private static int uploaders = 0;
+	private static long uploadMemory = 0;
+	private static long rejectedUploads = 0;
+	private static long blastDbCacheHits = 0;
+	private static long blastDbCacheMisses = 0;
+	private static long blastHitCacheHits = 0;
+	private static long blastHitCacheMisses = 0;
+	private static long ncbiCacheHits = 0;
+	private static long ncbiCacheMisses = 0;
+	private static Map<String, long[]> queueWaits = new TreeMap<String, long[]>();
 	
 	public static synchronized void addQueued(File dir) {
 		queuedTasks++;
 		flush(dir);
 	}
 	
-	public static synchronized void queuedToRunning(File dir) {
+	/**
+	 * @param waitMs time between enqueuing of task and its start
+	 */
+	public static synchronized void queuedToRunning(File dir, String taskType, long waitMs) {
 		queuedTasks--;
 		runningTasks++;
+		long[] wait = queueWaits.get(taskType);
+		if (wait == null) {
+			wait = new long[3];  // count, total, max
+			queueWaits.put(taskType, wait);
+		}
+		wait[0]++;
+		wait[1] += waitMs;
+		wait[2] = Math.max(wait[2], waitMs);
 		flush(dir);
 	}
 
@@ -36,12 +58,80 @@ public class Stat {
 		flush(dir);
 	}
 
+	/**
+	 * @param reservedBytes memory reserved by all running uploads
+	 */
+	public static synchronized void setUploadMemory(File dir, long reservedBytes) {
+		uploadMemory = reservedBytes;
+		flush(dir);
+	}
+
+	public static synchronized void addRejectedUpload(File dir) {
+		rejectedUploads++;
+		flush(dir);
+	}
+
+	public static synchronized void addBlastDbCacheHit(File dir) {
+		blastDbCacheHits++;
+		flush(dir);
+	}
+
+	public static synchronized void addBlastDbCacheMiss(File dir) {
+		blastDbCacheMisses++;
+		flush(dir);
+	}
+
+	public static synchronized void addBlastHitCacheHit(File dir) {
+		blastHitCacheHits++;
+		flush(dir);
+	}
+
+	public static synchronized void addBlastHitCacheMiss(File dir) {
+		blastHitCacheMisses++;
+		flush(dir);
+	}
+
+	public static synchronized void addNcbiCacheHit(File dir) {
+		ncbiCacheHits++;
+		flush(dir);
+	}
+
+	public static synchronized void addNcbiCacheMiss(File dir) {
+		ncbiCacheMisses++;
+		flush(dir);
+	}
+
+	/**
+	 * Writes counters of ComparisonImageCache (to choose image.cache.mb and tile.cache.mb).
+	 */
+	public static synchronized void addImageCacheReport(File dir, String report) {
+		print(dir, "image: " + report);
+	}
+
+	/**
+	 * Writes throughput of finished blast run (to choose thread.count and blast.shards).
+	 */
+	public static synchronized void addBlastRun(File dir, long queries, long hits, long timeMs) {
+		print(dir, "blast: queries=" + queries + ", hits=" + hits + ", time(ms)=" + timeMs + 
+				", queries/sec=" + (timeMs > 0 ? (queries * 1000 / timeMs) : queries));
+	}
+
 	private static synchronized void flush(File dir) {
 		long max = Runtime.getRuntime().maxMemory();
 		long tot = Runtime.getRuntime().totalMemory();
 		long free = Runtime.getRuntime().freeMemory();
+		StringBuilder waits = new StringBuilder();
+		for (Map.Entry<String, long[]> entry : queueWaits.entrySet()) {
+			long[] wait = entry.getValue();
+			waits.append(", wait[").append(entry.getKey()).append("](count/avg/max ms)=")
+				.append(wait[0]).append("/").append(wait[1] / wait[0]).append("/").append(wait[2]);
+		}
 		print(dir, "queued=" + queuedTasks + ", running=" + runningTasks + ", " +
-					"uploaders=" + uploaders + ", mem(max/total/free)=" + max + "/" + tot + "/" + free);
+					"uploaders=" + uploaders + ", upload.mem=" + uploadMemory + ", rejected.uploads=" + 
+					rejectedUploads + ", blastdb(hit/miss)=" + blastDbCacheHits + "/" + 
+					blastDbCacheMisses + ", blasthits(hit/miss)=" + blastHitCacheHits + "/" + 
+					blastHitCacheMisses + ", ncbi(hit/miss)=" + ncbiCacheHits + "/" + 
+					ncbiCacheMisses + waits + ", mem(max/total/free)=" + max + "/" + tot + "/" + free);
 	}
 	
 	private static synchronized void print(File dir, String text) {
@@ -1,16 +1,30 @@
 package us.kbase.genomecomparison;
 
 public class Task {
+	public static final long UNKNOWN_COST = -1;
 	private String jobId;
 	private Object params;
 	private String authToken;
 	private String outRef;
+	private String userName;
+	private long priority;
+	private volatile long cost;
+	private long queuedTime;
 	
 	public Task(String jobId, Object params, String authToken, String outRef) {
+		this(jobId, params, authToken, outRef, null, 0, UNKNOWN_COST, System.currentTimeMillis());
+	}
+	
+	public Task(String jobId, Object params, String authToken, String outRef, String userName,
+			long priority, long cost, long queuedTime) {
 		this.jobId = jobId;
 		this.params = params;
 		this.authToken = authToken;
 		this.outRef = outRef;
+		this.userName = userName;
+		this.priority = priority;
+		this.cost = cost;
+		this.queuedTime = queuedTime;
 	}
 	
 	public String getJobId() {
@@ -28,4 +42,37 @@ public class Task {
 	public String getOutRef() {
 		return outRef;
 	}
+	
+	/**
+	 * @return owner of auth token (null if it's unknown)
+	 */
+	public String getUserName() {
+		return userName;
+	}
+	
+	public long getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * @return estimated cost of task (UNKNOWN_COST if it's not estimated yet or
+	 * estimation failed)
+	 */
+	public long getCost() {
+		return cost;
+	}
+	
+	/**
+	 * Should be called through TaskScheduler.updateCost while task is queued.
+	 */
+	void setCost(long cost) {
+		this.cost = cost;
+	}
+	
+	/**
+	 * @return time (in milliseconds) when task was queued
+	 */
+	public long getQueuedTime() {
+		return queuedTime;
+	}
 }
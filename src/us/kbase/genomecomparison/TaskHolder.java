@@ -7,29 +7,42 @@ import java.io.StringWriter;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import us.kbase.auth.AuthToken;
+import us.kbase.common.service.Tuple11;
 import us.kbase.genomecomparison.util.DbConn;
 import us.kbase.userandjobstate.InitProgress;
 import us.kbase.userandjobstate.Results;
+import us.kbase.workspace.ObjectIdentity;
 
 public class TaskHolder {
 	private DbConn conn;
 	private Map<String, Task> taskMap = new HashMap<String, Task>();
-	private LinkedList<Task> taskQueue = new LinkedList<Task>();
-	private Thread[] allThreads;
+	private Map<String, ThreadPoolExecutor> pools = new LinkedHashMap<String, ThreadPoolExecutor>();
+	private Map<String, TaskScheduler> schedulers = new HashMap<String, TaskScheduler>();
+	private ThreadPoolExecutor costEstimator;
 	private boolean needToStop = false;
-	private final Object idleMonitor = new Object();
 	private GenomeCmpConfig config = null;
+	private static TaskHolder instance = null;
 	    
     private static final int MAX_ERROR_MESSAGE_LEN = 190;
+    private static final long BYTES_PER_FEATURE = 1000;
+    public static final String TASK_TYPE_BLAST = "blast";
+    public static final String TASK_TYPE_ANNOTATION = "annotation";
+    public static final String TASK_TYPE_IMPORT = "import";
     public static final String DERBY_DB_NAME = "GenomeCmpDb";
     public static final String QUEUE_TABLE_NAME = "task_queue";
 	
@@ -42,16 +55,42 @@ public class TaskHolder {
 					"type varchar(100)," +
 					"params varchar(10000)," +
 					"auth varchar(1000)," +
-					"outref varchar(1000)" +
+					"outref varchar(1000)," +
+					"username varchar(100)," +
+					"priority bigint default 0," +
+					"cost bigint default 0," +
+					"queued bigint default 0" +
 					")");
+		} else if (!conn.checkColumn(QUEUE_TABLE_NAME, "username")) {
+			conn.exec("alter table " + QUEUE_TABLE_NAME + " add column username varchar(100)");
+			conn.exec("alter table " + QUEUE_TABLE_NAME + " add column priority bigint default 0");
+			conn.exec("alter table " + QUEUE_TABLE_NAME + " add column cost bigint default 0");
+			conn.exec("alter table " + QUEUE_TABLE_NAME + " add column queued bigint default 0");
 		}
-		allThreads = new Thread[config.getThreadCount()];
-		for (int i = 0; i < allThreads.length; i++) {
-			allThreads[i] = startNewThread(i);
-		}
+		for (String taskType : Arrays.asList(TASK_TYPE_BLAST, TASK_TYPE_ANNOTATION, TASK_TYPE_IMPORT))
+			schedulers.put(taskType, new TaskScheduler());
+		pools.put(TASK_TYPE_BLAST, createPool("Task thread", config.getThreadCount()));
+		pools.put(TASK_TYPE_ANNOTATION, createPool("Annotation thread", 
+				config.getAnnotationThreadCount()));
+		pools.put(TASK_TYPE_IMPORT, createPool("Import thread", config.getImportThreadCount()));
+		costEstimator = createPool("Cost estimation thread", 1);
 		checkForUnfinishedTasks();
 	}
 
+	/**
+	 * Returns task holder shared by all servlets of service (JSON-RPC server
+	 * and upload servlet put tasks into the same queue). Job statuses of its
+	 * tasks are sent by AsyncJobStatuses which is stopped in stopAllThreads.
+	 */
+	public static synchronized TaskHolder getInstance() throws Exception {
+		if (instance == null) {
+			GenomeCmpConfig config = GenomeCmpConfig.loadConfig();
+			config.withJobStatuses(new AsyncJobStatuses(config.getJobStatuses()));
+			instance = new TaskHolder(config);
+		}
+		return instance;
+	}
+
 	public static DbConn getDbConnection(File dbParentDir) throws ClassNotFoundException, SQLException {
 		Class.forName("org.apache.derby.jdbc.EmbeddedDriver");
 		File dbDir = new File(dbParentDir, DERBY_DB_NAME);
@@ -62,8 +101,8 @@ public class TaskHolder {
 	}
 	
 	private void checkForUnfinishedTasks() throws SQLException {
-		List<Task> tasks = conn.collect("select jobid,type,params,auth,outref from " + 
-				QUEUE_TABLE_NAME, new DbConn.SqlLoader<Task>() {
+		List<Task> tasks = conn.collect("select jobid,type,params,auth,outref,username,priority," +
+				"cost,queued from " + QUEUE_TABLE_NAME + " order by queued", new DbConn.SqlLoader<Task>() {
 			@Override
 			public Task collectRow(ResultSet rs) throws SQLException {
 				try {
@@ -71,7 +110,8 @@ public class TaskHolder {
 					String paramsJson = rs.getString("params");
 					Object params = new ObjectMapper().readValue(paramsJson, type);
 					return new Task(rs.getString("jobid"), params, rs.getString("auth"),
-							rs.getString("outref"));
+							rs.getString("outref"), rs.getString("username"), rs.getLong("priority"),
+							rs.getLong("cost"), rs.getLong("queued"));
 				} catch (ClassNotFoundException e) {
 					throw new IllegalStateException(e);
 				} catch (IOException e) {
@@ -81,49 +121,174 @@ public class TaskHolder {
 		});
 		for (Task task : tasks)
 			addTask(task);
-		if (tasks.size() > 0) {
-			synchronized (idleMonitor) {
-				idleMonitor.notifyAll();
-			}
-		}
 	}
 	
 	public String addTask(BlastProteomesParams params, String authToken) throws Exception {
 		String outRef = params.getOutputWs() + "/" + params.getOutputId();
-		return addTask(params, authToken, "Blast proteomes of two genomes", outRef);
+		return addTask(params, authToken, "Blast proteomes of two genomes", outRef, 
+				params.getPriority(), Task.UNKNOWN_COST);
+	}
+
+	public String addTask(BlastProteomesManyParams params, String authToken) throws Exception {
+		String outRef = params.getOutputWs() + "/" + params.getOutputIdPrefix();
+		return addTask(params, authToken, "Blast proteomes of many genomes", outRef, 
+				params.getPriority(), Task.UNKNOWN_COST);
 	}
 
 	public String addTask(AnnotateGenomeParams params, String authToken) throws Exception {
 		String outRef = params.getOutGenomeWs() + "/" + params.getOutGenomeId();
-		return addTask(params, authToken, "Blast proteomes of two genomes", outRef);
+		return addTask(params, authToken, "Annotate genome", outRef, 
+				params.getPriority(), Task.UNKNOWN_COST);
+	}
+
+	public String addTask(ImportNcbiGenomeParams params, String authToken) throws Exception {
+		String outRef = params.getOutGenomeWs() + "/" + params.getOutGenomeId();
+		return addTask(params, authToken, "Import NCBI genome " + params.getGenomeName(), outRef, 
+				null, 0);
+	}
+
+	public String addTask(UploadedFileParams params, String authToken) throws Exception {
+		String outRef = params.getOutWs() + "/" + params.getOutId();
+		return addTask(params, authToken, "Import uploaded file " + params.getFileName(), outRef, 
+				null, new File(params.getStagedFile()).length());
 	}
 
 	public String addTaskForTest(Runnable params, String authToken) throws Exception {
-		return addTask(params, authToken, "descr", "out");
+		return addTask(params, authToken, "descr", "out", null, 0);
 	}
 	
-	private synchronized String addTask(Object params, String authToken, String description, String outRef) throws Exception {
+	private String addTask(Object params, String authToken, String description, 
+			String outRef, Long priority, long cost) throws Exception {
+		if (needToStop)
+			throw new IllegalStateException("Task holder is stopped");
+		// Job is created out of synchronized block so that slow response of job
+		// service doesn't hold other submissions.
 		String jobId = createQueuedTaskJob(description, authToken);
-		Task task = new Task(jobId, params, authToken, outRef);
-		addTask(task);
-		storeTaskInDb(task);
-		synchronized (idleMonitor) {
-			idleMonitor.notify();
+		Task task = new Task(jobId, params, authToken, outRef, getUserName(authToken), 
+				priority == null ? 0 : priority, cost, System.currentTimeMillis());
+		synchronized (this) {
+			if (needToStop)
+				throw new IllegalStateException("Task holder is stopped");
+			storeTaskInDb(task);
+			addTask(task);
 		}
 		return jobId;
 	}
 
-	private synchronized void addTask(Task task) {
-		taskQueue.addLast(task);
+	/**
+	 * Puts task into scheduler of its type. Every task adds one job into thread
+	 * pool, this job starts the task chosen by scheduler at the moment when there
+	 * is free thread (it's not necessarily the same task). Unknown cost of task
+	 * is estimated later in separate thread.
+	 */
+	private synchronized void addTask(final Task task) {
 		taskMap.put(task.getJobId(), task);
 		Stat.addQueued(config.getTempDir());
+		String taskType = getTaskType(task.getParams());
+		final TaskScheduler scheduler = schedulers.get(taskType);
+		scheduler.add(task);
+		if (task.getCost() == Task.UNKNOWN_COST)
+			costEstimator.execute(new Runnable() {
+				@Override
+				public void run() {
+					estimateCost(task, scheduler);
+				}
+			});
+		pools.get(taskType).execute(new Runnable() {
+			@Override
+			public void run() {
+				Task next = scheduler.poll();
+				if (next == null)
+					return;
+				runTask(next);
+				removeTask(next);
+			}
+		});
+	}
+	
+	private static String getUserName(String authToken) {
+		try {
+			return new AuthToken(authToken).getUserName();
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Estimates cost of queued task and updates it in scheduler and database.
+	 * Cost stays unknown in case of error (task is still started, but after
+	 * tasks of the same user and priority with known cost).
+	 */
+	private void estimateCost(Task task, TaskScheduler scheduler) {
+		if (needToStop || getTask(task.getJobId()) == null)
+			return;
+		Object params = task.getParams();
+		String token = task.getAuthToken();
+		long cost;
+		try {
+			if (params instanceof BlastProteomesParams) {
+				BlastProteomesParams input = (BlastProteomesParams)params;
+				cost = estimateFeatureCount(token, input.getGenome1ws() + "/" + input.getGenome1id()) *
+						estimateFeatureCount(token, input.getGenome2ws() + "/" + input.getGenome2id());
+			} else if (params instanceof BlastProteomesManyParams) {
+				long total = 0;
+				List<String> refs = ((BlastProteomesManyParams)params).getGenomeRefs();
+				if (refs != null)
+					for (String ref : refs)
+						total += estimateFeatureCount(token, ref);
+				cost = total * total;
+			} else if (params instanceof AnnotateGenomeParams) {
+				AnnotateGenomeParams input = (AnnotateGenomeParams)params;
+				cost = estimateFeatureCount(token, input.getInGenomeWs() + "/" + input.getInGenomeId());
+			} else {
+				return;
+			}
+		} catch (Exception ex) {
+			System.err.println("Cost of task " + task.getJobId() + " wasn't estimated: " + ex.getMessage());
+			return;
+		}
+		scheduler.updateCost(task, cost);
+		synchronized (this) {
+			try {
+				conn.exec("update " + QUEUE_TABLE_NAME + " set cost=? where jobid=?", cost, task.getJobId());
+			} catch (SQLException ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Estimates number of features of genome using workspace metadata (or size 
+	 * of genome object in case there is no such metadata). 
+	 */
+	private long estimateFeatureCount(String authToken, String genomeRef) throws Exception {
+		Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>> info =
+				config.getObjectStorage().getObjectInfo(authToken, Arrays.asList(
+						new ObjectIdentity().withRef(genomeRef)), 1L).get(0);
+		Map<String, String> meta = info.getE11();
+		if (meta != null && meta.containsKey("Number features"))
+			return Long.parseLong(meta.get("Number features"));
+		return info.getE10() / BYTES_PER_FEATURE;
+	}
+	
+	/**
+	 * @return type of task defining which pool of threads is used to run it
+	 */
+	public static String getTaskType(Object params) {
+		if (params instanceof AnnotateGenomeParams)
+			return TASK_TYPE_ANNOTATION;
+		if (params instanceof ImportNcbiGenomeParams || params instanceof UploadedFileParams)
+			return TASK_TYPE_IMPORT;
+		return TASK_TYPE_BLAST;
 	}
 	
 	private void storeTaskInDb(Task task) throws JsonProcessingException, SQLException {
 		String type = task.getParams().getClass().getName();
 		String params = new ObjectMapper().writeValueAsString(task.getParams());
-		conn.exec("insert into " + QUEUE_TABLE_NAME + " (jobid,type,params,auth,outref) values (?,?,?,?,?)", 
-				task.getJobId(), type, params, task.getAuthToken(), task.getOutRef());
+		conn.exec("insert into " + QUEUE_TABLE_NAME + " (jobid,type,params,auth,outref,username," +
+				"priority,cost,queued) values (?,?,?,?,?,?,?,?,?)", task.getJobId(), type, params, 
+				task.getAuthToken(), task.getOutRef(), task.getUserName(), task.getPriority(), 
+				task.getCost(), task.getQueuedTime());
 	}
 	
 	private void deleteTaskFromDb(String jobId) throws SQLException {
@@ -143,24 +308,25 @@ public class TaskHolder {
 		return taskMap.get(jobId);
 	}
 	
-	private synchronized Task gainNewTask() {
-		if (taskQueue.size() > 0) {
-			Task ret = taskQueue.removeFirst();
-			return ret;
-		}
-		return null;
-	}
-
 	private void runTask(Task task) {
 		String token = task.getAuthToken();
 		try {
-			Stat.queuedToRunning(config.getTempDir());
+			Stat.queuedToRunning(config.getTempDir(), getTaskType(task.getParams()), 
+					System.currentTimeMillis() - task.getQueuedTime());
 			changeTaskStateIntoRunning(task, token);
 			Object params = task.getParams();
 			if (params instanceof BlastProteomesParams) {
-				BlastProteomes.run(token, (BlastProteomesParams)params, config);
+				BlastProteomes.run(token, (BlastProteomesParams)params, config, task.getJobId());
+			} else if (params instanceof BlastProteomesManyParams) {
+				BlastProteomes.runMany(token, (BlastProteomesManyParams)params, config, task.getJobId());
 			} else if (params instanceof AnnotateGenomeParams) {
 				AnnotateGenome.run(token, (AnnotateGenomeParams)params, config);
+			} else if (params instanceof ImportNcbiGenomeParams) {
+				ImportNcbiGenomeParams input = (ImportNcbiGenomeParams)params;
+				ContigSetUploadServlet.importNcbiGenome(input.getGenomeName(), input.getOutGenomeWs(), 
+						input.getOutGenomeId(), token);
+			} else if (params instanceof UploadedFileParams) {
+				ContigSetUploadServlet.importUploadedFile((UploadedFileParams)params, token);
 			} else if (params instanceof Runnable) {
 				((Runnable)params).run();
 			} else {
@@ -203,45 +369,61 @@ public class TaskHolder {
 		if (errorMessage == null) {
 			config.getJobStatuses().completeJob(task.getJobId(), token, "done", null, 
 					new Results().withWorkspaceurl(config.getWsUrl()).withWorkspaceids(
-							Arrays.asList(task.getOutRef())));
+							getOutRefs(task)));
 		} else {
 			config.getJobStatuses().completeJob(task.getJobId(), token, errorMessage, 
 					errorStacktrace, new Results()); 
 		}
 	}
 	
+	private List<String> getOutRefs(Task task) {
+		if (task.getParams() instanceof BlastProteomesManyParams) {
+			BlastProteomesManyParams params = (BlastProteomesManyParams)task.getParams();
+			List<String> ret = new ArrayList<String>();
+			for (String id : BlastProteomes.getOutputIds(params))
+				ret.add(params.getOutputWs() + "/" + id);
+			return ret;
+		}
+		return Arrays.asList(task.getOutRef());
+	}
+	
+	/**
+	 * Stops accepting new tasks and waits (up to stop.timeout.sec) for running 
+	 * tasks. Tasks which were not started stay in database and will be started
+	 * next time.
+	 */
 	public void stopAllThreads() {
-		needToStop = true;
-		for (Thread t : allThreads)
-			t.interrupt();
+		synchronized (this) {
+			needToStop = true;
+		}
+		for (ThreadPoolExecutor pool : pools.values()) {
+			pool.getQueue().clear();
+			pool.shutdown();
+		}
+		for (TaskScheduler scheduler : schedulers.values())
+			scheduler.clear();
+		try {
+			long deadline = System.currentTimeMillis() + config.getStopTimeoutSec() * 1000;
+			for (ThreadPoolExecutor pool : pools.values())
+				pool.awaitTermination(Math.max(1, deadline - System.currentTimeMillis()), 
+						TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ignore) {}
+		for (ThreadPoolExecutor pool : pools.values())
+			pool.shutdownNow();
+		costEstimator.shutdownNow();
+		if (config.getJobStatuses() instanceof AsyncJobStatuses)
+			((AsyncJobStatuses)config.getJobStatuses()).stop(config.getStopTimeoutSec() * 1000);
 	}
 	
-	private Thread startNewThread(final int num) {
-		Thread ret = new Thread(
-				new Runnable() {
-					@Override
-					public void run() {
-						while (!needToStop) {
-							Task task = gainNewTask();
-							if (task != null) {
-								runTask(task);
-								removeTask(task);
-							} else {
-								long ms = 55 * 1000 + (int)(10 * 1000 * Math.random());
-								synchronized (idleMonitor) {
-									try {
-										idleMonitor.wait(ms);
-									} catch (InterruptedException e) {
-										if (!needToStop)
-											e.printStackTrace();
-									}
-								}
-							}
-						}
-						System.out.println("Task thread " + (num + 1) + " was stoped");
-					}
-				},"Task thread " + (num + 1));
-		ret.start();
-		return ret;
-	}
-}
\ No newline at end of file
+	private static ThreadPoolExecutor createPool(final String threadName, int threadCount) {
+		return new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private int count = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				count++;
+				return new Thread(r, threadName + " " + count);
+			}
+		});
+	}
+}
@@ -0,0 +1,119 @@
+package us.kbase.genomecomparison;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Queue of tasks waiting for free thread with fair share between users. Every
+ * user has own sub-queue ordered by priority (higher first), then by estimated
+ * cost (shortest job first, tasks with unknown cost go after estimated ones)
+ * and then by queue time. Next task is taken from 
+ * the user who has started the fewest tasks since their sub-queue became non-empty
+ * (ties are resolved in favor of the user waiting longer), so one user with
+ * hundreds of queued jobs doesn't block others.
+ */
+public class TaskScheduler {
+	private static final Comparator<Task> TASK_ORDER = new Comparator<Task>() {
+		@Override
+		public int compare(Task t1, Task t2) {
+			int ret = Utils.compare(t2.getPriority(), t1.getPriority());
+			if (ret == 0)
+				ret = Utils.compare(effectiveCost(t1), effectiveCost(t2));
+			if (ret == 0)
+				ret = Utils.compare(t1.getQueuedTime(), t2.getQueuedTime());
+			if (ret == 0)
+				ret = t1.getJobId().compareTo(t2.getJobId());
+			return ret;
+		}
+	};
+	
+	private static long effectiveCost(Task task) {
+		return task.getCost() < 0 ? Long.MAX_VALUE : task.getCost();
+	}
+	
+	private final Map<String, PriorityQueue<Task>> userQueues = new HashMap<String, PriorityQueue<Task>>();
+	private final Map<String, Long> usage = new HashMap<String, Long>();
+	private int size = 0;
+	
+	public synchronized void add(Task task) {
+		String user = getUser(task);
+		PriorityQueue<Task> queue = userQueues.get(user);
+		if (queue == null) {
+			// User coming back after idle time starts from the level of currently 
+			// active users rather than from zero.
+			long minUsage = 0;
+			boolean first = true;
+			for (Long value : usage.values()) {
+				if (first || value < minUsage)
+					minUsage = value;
+				first = false;
+			}
+			queue = new PriorityQueue<Task>(11, TASK_ORDER);
+			userQueues.put(user, queue);
+			usage.put(user, minUsage);
+		}
+		queue.add(task);
+		size++;
+	}
+	
+	/**
+	 * @return next task to start or null if there are no tasks
+	 */
+	public synchronized Task poll() {
+		String bestUser = null;
+		long bestUsage = 0;
+		Task bestHead = null;
+		for (Map.Entry<String, PriorityQueue<Task>> entry : userQueues.entrySet()) {
+			long userUsage = usage.get(entry.getKey());
+			Task head = entry.getValue().peek();
+			if (bestUser == null || userUsage < bestUsage || (userUsage == bestUsage && 
+					head.getQueuedTime() < bestHead.getQueuedTime())) {
+				bestUser = entry.getKey();
+				bestUsage = userUsage;
+				bestHead = head;
+			}
+		}
+		if (bestUser == null)
+			return null;
+		PriorityQueue<Task> queue = userQueues.get(bestUser);
+		Task ret = queue.poll();
+		if (queue.isEmpty()) {
+			userQueues.remove(bestUser);
+			usage.remove(bestUser);
+		} else {
+			usage.put(bestUser, bestUsage + 1);
+		}
+		size--;
+		return ret;
+	}
+	
+	/**
+	 * Sets estimated cost of task keeping order of its sub-queue (task which is
+	 * already taken from queue just gets new cost).
+	 */
+	public synchronized void updateCost(Task task, long cost) {
+		PriorityQueue<Task> queue = userQueues.get(getUser(task));
+		if (queue != null && queue.remove(task)) {
+			task.setCost(cost);
+			queue.add(task);
+		} else {
+			task.setCost(cost);
+		}
+	}
+	
+	public synchronized int size() {
+		return size;
+	}
+	
+	public synchronized void clear() {
+		userQueues.clear();
+		usage.clear();
+		size = 0;
+	}
+	
+	private static String getUser(Task task) {
+		return task.getUserName() == null ? "" : task.getUserName();
+	}
+}
@@ -0,0 +1,47 @@
+package us.kbase.genomecomparison;
+
+/**
+ * Memory budget shared by all uploads running at the same time. Every upload
+ * reserves estimated amount of heap before parsing starts (waiting limited
+ * time in case budget is exhausted by other uploads) and releases it at the
+ * end, so that simultaneous uploads can't take more than budget in total.
+ */
+public class UploadMemoryBudget {
+	private final long totalBytes;
+	private long reservedBytes = 0;
+
+	public UploadMemoryBudget(long totalBytes) {
+		this.totalBytes = totalBytes;
+	}
+
+	/**
+	 * @param bytes required amount (it's reduced to whole budget if it's more)
+	 * @param timeoutMs how long to wait for other uploads to release memory
+	 * @return amount of reserved bytes or 0 in case timeout is expired
+	 */
+	public synchronized long reserve(long bytes, long timeoutMs) throws InterruptedException {
+		bytes = Math.max(1, Math.min(bytes, totalBytes));
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		while (reservedBytes + bytes > totalBytes) {
+			long left = deadline - System.currentTimeMillis();
+			if (left <= 0)
+				return 0;
+			wait(left);
+		}
+		reservedBytes += bytes;
+		return bytes;
+	}
+
+	public synchronized void release(long bytes) {
+		reservedBytes = Math.max(0, reservedBytes - bytes);
+		notifyAll();
+	}
+
+	public synchronized long getReservedBytes() {
+		return reservedBytes;
+	}
+
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+}
@@ -0,0 +1,136 @@
+
+package us.kbase.genomecomparison;
+
+import java.util.HashMap;
+import java.util.Map;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+
+/**
+ * Parameters of task importing file uploaded through ContigSetUploadServlet
+ * (it's not a spec-file type, it's only stored in task queue). File is staged
+ * in uploads folder of temp.dir and removed when task is finished.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({
+    "file_type",
+    "file_name",
+    "staged_file",
+    "out_ws",
+    "out_id"
+})
+public class UploadedFileParams {
+
+    @JsonProperty("file_type")
+    private String fileType;
+    @JsonProperty("file_name")
+    private String fileName;
+    @JsonProperty("staged_file")
+    private String stagedFile;
+    @JsonProperty("out_ws")
+    private String outWs;
+    @JsonProperty("out_id")
+    private String outId;
+    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+
+    /**
+     * @return contigfasta or genomegbk
+     */
+    @JsonProperty("file_type")
+    public String getFileType() {
+        return fileType;
+    }
+
+    @JsonProperty("file_type")
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public UploadedFileParams withFileType(String fileType) {
+        this.fileType = fileType;
+        return this;
+    }
+
+    /**
+     * @return original name of uploaded file (defines compression)
+     */
+    @JsonProperty("file_name")
+    public String getFileName() {
+        return fileName;
+    }
+
+    @JsonProperty("file_name")
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public UploadedFileParams withFileName(String fileName) {
+        this.fileName = fileName;
+        return this;
+    }
+
+    @JsonProperty("staged_file")
+    public String getStagedFile() {
+        return stagedFile;
+    }
+
+    @JsonProperty("staged_file")
+    public void setStagedFile(String stagedFile) {
+        this.stagedFile = stagedFile;
+    }
+
+    public UploadedFileParams withStagedFile(String stagedFile) {
+        this.stagedFile = stagedFile;
+        return this;
+    }
+
+    @JsonProperty("out_ws")
+    public String getOutWs() {
+        return outWs;
+    }
+
+    @JsonProperty("out_ws")
+    public void setOutWs(String outWs) {
+        this.outWs = outWs;
+    }
+
+    public UploadedFileParams withOutWs(String outWs) {
+        this.outWs = outWs;
+        return this;
+    }
+
+    @JsonProperty("out_id")
+    public String getOutId() {
+        return outId;
+    }
+
+    @JsonProperty("out_id")
+    public void setOutId(String outId) {
+        this.outId = outId;
+    }
+
+    public UploadedFileParams withOutId(String outId) {
+        this.outId = outId;
+        return this;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getAdditionalProperties() {
+        return this.additionalProperties;
+    }
+
+    @JsonAnySetter
+    public void setAdditionalProperties(String name, Object value) {
+        this.additionalProperties.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return ((((((((((((("UploadedFileParams"+" [fileType=")+ fileType)+", fileName=")+ fileName)+", stagedFile=")+ stagedFile)+", outWs=")+ outWs)+", outId=")+ outId)+", additionalProperties=")+ additionalProperties)+"]");
+    }
+
+}
@@ -26,4 +26,13 @@ public class Utils {
     	}
     	return total;
     }
+
+    public static String toHex(byte[] data) {
+    	StringBuilder sb = new StringBuilder(data.length * 2);
+    	for (byte b : data) {
+    		sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+    		sb.append(Character.forDigit(b & 0xf, 16));
+    	}
+    	return sb.toString();
+    }
 }
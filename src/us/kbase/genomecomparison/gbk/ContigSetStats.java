@@ -0,0 +1,111 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.kbase.genomecomparison.Utils;
+import us.kbase.kbasegenomes.Contig;
+import us.kbase.kbasegenomes.ContigSet;
+
+/**
+ * Statistics of contigs (in order of their appearance) collected while
+ * sequences are parsed, so that GC-content and checksums don't need another
+ * pass over data. MD5 of contig set is MD5 of sorted contig MD5s joined by
+ * comma (so it doesn't depend on order of contigs).
+ */
+public class ContigSetStats {
+	private final Map<String, SequenceStats> contigs = new LinkedHashMap<String, SequenceStats>();
+
+	/**
+	 * Starts new statistics for contig (previous one having the same name is dropped).
+	 */
+	public SequenceStats start(String contigName) {
+		contigs.remove(contigName);
+		SequenceStats ret = new SequenceStats();
+		contigs.put(contigName, ret);
+		return ret;
+	}
+
+	/**
+	 * @return statistics of contig (it's started in case it's not registered yet)
+	 */
+	public SequenceStats get(String contigName) {
+		SequenceStats ret = contigs.get(contigName);
+		if (ret == null)
+			ret = start(contigName);
+		return ret;
+	}
+
+	/**
+	 * Registers statistics calculated separately (position of contig is kept in
+	 * case it's already registered).
+	 */
+	public void put(String contigName, SequenceStats stats) {
+		contigs.put(contigName, stats);
+	}
+
+	public List<String> getContigNames() {
+		return new ArrayList<String>(contigs.keySet());
+	}
+
+	public String getContigMd5(String contigName) {
+		SequenceStats ret = contigs.get(contigName);
+		if (ret == null)
+			throw new IllegalStateException("Unknown contig: " + contigName);
+		return ret.getMd5();
+	}
+
+	public long getLength() {
+		long ret = 0;
+		for (SequenceStats st : contigs.values())
+			ret += st.getLength();
+		return ret;
+	}
+
+	public double getGcContent() {
+		long at = 0;
+		long gc = 0;
+		for (SequenceStats st : contigs.values()) {
+			at += st.getAtCount();
+			gc += st.getGcCount();
+		}
+		return (0.0 + gc) / (at + gc);
+	}
+
+	public long getNCount() {
+		long ret = 0;
+		for (SequenceStats st : contigs.values())
+			ret += st.getNCount();
+		return ret;
+	}
+
+	public String getMd5() {
+		List<String> md5s = new ArrayList<String>();
+		for (SequenceStats st : contigs.values())
+			md5s.add(st.getMd5());
+		Collections.sort(md5s);
+		StringBuilder sb = new StringBuilder();
+		for (String md5 : md5s) {
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(md5);
+		}
+		MessageDigest digest = SequenceStats.createMd5Digest();
+		return Utils.toHex(digest.digest(sb.toString().getBytes(Charset.forName("US-ASCII"))));
+	}
+
+	/**
+	 * Calculates statistics for contigs already loaded into memory.
+	 */
+	public static ContigSetStats forContigSet(ContigSet contigSet) {
+		ContigSetStats ret = new ContigSetStats();
+		for (Contig contig : contigSet.getContigs())
+			ret.start(contig.getId()).append(contig.getSequence());
+		return ret;
+	}
+}
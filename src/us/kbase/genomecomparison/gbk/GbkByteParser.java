@@ -0,0 +1,422 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+/**
+ * Variant of GbkParser working on bytes of GBK-file (file is memory mapped).
+ * Buffer is copied by large blocks into byte array where lines are found,
+ * fixed-width prefixes of header and feature lines are checked by offsets
+ * and strings are created only for trimmed values. DNA of ORIGIN sections is
+ * copied from byte array into sequence without creating strings for lines or
+ * tokens. Callbacks are the same as the ones produced by GbkParser for the
+ * same data.
+ */
+public class GbkByteParser {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] FEATURES = ascii("FEATURES");
+	private static final byte[] LOCUS = ascii("LOCUS");
+	private static final byte[] ORIGIN = ascii("ORIGIN");
+	private static final byte[] CONTIG = ascii("CONTIG ");
+	private static final byte[] BASE_COUNT = ascii("BASE COUNT");
+	private static final byte[] END = ascii("//");
+
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private final ByteBuffer src;
+	private final int srcStart;
+	private byte[] data = new byte[BLOCK_SIZE];
+	private int dataLen = 0;
+	private int dataBase = 0;
+	private char[] chars = new char[256];
+
+	private GbkByteParser(ByteBuffer src) {
+		this.src = src.duplicate();
+		this.srcStart = src.position();
+	}
+
+	public static void parse(File f, GbkParsingParams params, GbkCallback ret) throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			long size = raf.length();
+			if (size > Integer.MAX_VALUE) {
+				BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f)));
+				try {
+					GbkParser.parse(br, params, ret);
+				} finally {
+					br.close();
+				}
+				return;
+			}
+			parse(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size), params, ret);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Parses bytes of buffer between its position and limit.
+	 */
+	public static void parse(ByteBuffer buf, GbkParsingParams params, GbkCallback ret) throws Exception {
+		new GbkByteParser(buf).parse(params, ret);
+	}
+
+	private void parse(GbkParsingParams params, GbkCallback ret) throws Exception {
+		TypeManager qual_tm = new TypeManager("qualifier_types.properties");
+		String SUBHEADER_ORGANISM_TYPE = "ORGANISM";
+		String QUALIFIER_DB_XREF_TYPE = "db_xref";
+		String QUALIFIER_TRANSLATION_TYPE = "translation";
+		int state = 0;
+		GbkLocus loc = null;
+		GbkSequence seq = null;
+		GbkHeader head = null;
+		GbkSubheader sub = null;
+		GbkFeature feat = null;
+		GbkQualifier qual = null;
+		GbkLazyQualifier lazyQual = null;
+		boolean skipQual = false;
+		int line_num = 1;
+		int pos = 0;
+		try {
+			for(;;line_num++) {
+				int ls = pos;
+				int le = ls;
+				while (true) {
+					if (le == dataLen) {
+						int shift = readBlock(ls);
+						ls -= shift;
+						le -= shift;
+						if (le == dataLen)
+							break;
+					}
+					byte b = data[le];
+					if (b == '\n' || b == '\r')
+						break;
+					le++;
+				}
+				if (le == ls && le == dataLen)
+					break;
+				pos = le;
+				if (pos < dataLen && data[pos++] == '\r') {
+					if (pos == dataLen) {
+						int shift = readBlock(ls);
+						ls -= shift;
+						le -= shift;
+						pos -= shift;
+					}
+					if (pos < dataLen && data[pos] == '\n')
+						pos++;
+				}
+				if (trimStart(ls, le) == le) continue;
+				if(state==0) {
+					if(startsWith(ls, le, FEATURES)) {
+						if(loc!=null) {
+							if(!loc.isClosed()) loc.closeHeaders();
+						}
+						state = 1;
+						continue;
+					}
+					int ps = checkPrefix(ls, le, GbkParser.HEADER_PREFIX_LENGTH);
+					String line = trimmed(ps, le);
+					if(trimStart(ls, ps) < ps) {
+						if(startsWith(ls, le, LOCUS)) {
+							loc = closeAndStartLocus(loc, line_num, line, ret);
+							head = null;
+							sub = null;
+						}
+						if(data[ls] == ' ') {
+							sub = new GbkSubheader(line_num,trimmed(ls, ps),line);
+							head.subheaders.add(sub);
+						} else {
+							String type = trimmed(ls, ps);
+							head = new GbkHeader(line_num,type,line);
+							sub = null;
+							loc.addHeader(head);
+						}
+					} else {
+						if(sub!=null) {
+							if (sub.type.equals(SUBHEADER_ORGANISM_TYPE)) {
+								sub.appendValueWithoutSpace("\n" + line);
+							} else {
+								sub.appendValue(line);
+							}
+						} else {
+							head.appendValue(line);
+						}
+					}
+				}
+				else if(state==1) {
+					if(startsWith(ls, le, ORIGIN) || startsWith(ls, le, CONTIG)) {
+						state = 2;
+						if(qual!=null) qual.close();
+						qual = null;
+						lazyQual = null;
+						skipQual = false;
+						if(feat!=null) feat.close(params);
+						feat = null;
+						if(!loc.isClosed()) {
+							loc.close();
+						}
+						seq = new GbkSequence(loc, ret, params.getSeqStats());
+						loc = null;
+						continue;
+					}
+					if(startsWith(ls, le, BASE_COUNT)) continue;
+					int ps = checkPrefix(ls, le, GbkParser.FEATURE_PREFIX_LENGTH);
+					if(feat!=null && trimStart(ls, ps) == ps) {
+						// qualifiers which are not collected are detected without creating strings
+						int vs = trimStart(ps, le);
+						if(data[vs] == '/') {
+							int eq = qualifierNameEnd(vs, le);
+							String qual_name = eq < 0 ? null : trimmed(vs + 1, eq);
+							if(qual_name!=null && !params.isQualifierCollected(feat.type, qual_name)) {
+								if(qual!=null) qual.close();
+								qual = null;
+								lazyQual = null;
+								skipQual = !params.isLazyQualifiers();
+								if(!skipQual) {
+									lazyQual = new GbkLazyQualifier(line_num, qual_name, src, srcPos(eq + 1), srcPos(le));
+									feat.qualifiers.add(lazyQual);
+								}
+								continue;
+							}
+						} else if(skipQual || lazyQual!=null) {
+							if(lazyQual!=null) lazyQual.extend(srcPos(le));
+							continue;
+						}
+					}
+					String line = trimmed(ps, le);
+					if(trimStart(ls, ps) < ps) {
+						if(feat!=null) {
+							feat.close(params);
+						}
+						feat = new GbkFeature(line_num,trimmed(ls, ps),line);
+						if(qual!=null) qual.close();
+						qual = null;
+						lazyQual = null;
+						skipQual = false;
+						loc.addFeature(feat);
+					}
+					else {
+						if((line.startsWith("/"))&&(qual_tm.isType(line.substring(1)))) {
+							line += "=";
+						}
+						int slash_pos = line.indexOf("/");
+						int equal_pos = line.indexOf("=");
+						String qual_name = null;
+						if((slash_pos==0)&&(1<equal_pos)) {
+							qual_name = line.substring(slash_pos+1,equal_pos).trim();
+							if(qual_name.length()==0) {
+								qual_name = null;
+							}
+							else {
+								for(int i=0;i<qual_name.length();i++) {
+									char ch = qual_name.charAt(i);
+									if((!Character.isLetterOrDigit(ch))&&
+											(ch!='_')) {
+										qual_name = null;
+										break;
+									}
+								}
+							}
+						}
+						if(qual_name!=null) {
+							line = line.substring(equal_pos+1).trim();
+							if(qual!=null) qual.close();
+							qual = null;
+							lazyQual = null;
+							skipQual = false;
+							if(params.isQualifierCollected(feat.type, qual_name)) {
+								qual = new GbkQualifier(line_num,qual_name,line);
+								feat.qualifiers.add(qual);
+							} else if(params.isLazyQualifiers()) {
+								int vs = Math.min(le, trimStart(ps, le) + equal_pos + 1);
+								lazyQual = new GbkLazyQualifier(line_num, qual_name, src, srcPos(vs), srcPos(le));
+								feat.qualifiers.add(lazyQual);
+							} else {
+								skipQual = true;
+							}
+						}
+						else {
+							if(qual!=null) {
+								if(qual.type.equals(QUALIFIER_DB_XREF_TYPE) || qual.type.equals(QUALIFIER_TRANSLATION_TYPE)) {
+									qual.appendValueWithoutSpace(line);
+								}
+								else {
+									qual.appendValue(line);
+								}
+							}
+							else if(lazyQual!=null) lazyQual.extend(srcPos(le));
+							else if(!skipQual) feat.appendValue(line);
+						}
+					}
+				}
+				else if(state==2) {
+					if(startsWith(ls, le, END)) {
+						seq.close();
+						seq = null;
+						state = 0;
+						continue;
+					}
+					// first token is position of the first base in line
+					int i = skipDelimiters(ls, le);
+					if (i == le)
+						throw new NoSuchElementException();
+					i = skipToken(i, le);
+					while (true) {
+						i = skipDelimiters(i, le);
+						if (i == le)
+							break;
+						int ts = i;
+						i = skipToken(i, le);
+						seq.append(data, ts, i);
+					}
+				}
+			}
+		} catch (Throwable t) {
+			throw new IllegalStateException("Error parsing GBK-file at line " + line_num + " (" + t.getMessage() + ")", t);
+		}
+		if((loc!=null)&&(loc.isClosed())) loc.close();
+		if(seq!=null) seq.close();
+	}
+
+	private GbkLocus closeAndStartLocus(GbkLocus loc, int line_num, String line,
+			GbkCallback ret) throws Exception {
+		if((loc!=null)&&(!loc.isClosed())) loc.close();
+		int te = 0;
+		while (te < line.length() && line.charAt(te) != ' ' && line.charAt(te) != '\t')
+			te++;
+		if (te == 0)
+			throw new NoSuchElementException();
+		return new GbkLocus(line_num, line.substring(0, te), ret);
+	}
+
+	/**
+	 * Moves bytes starting from keepFrom to the beginning of array (growing it
+	 * when needed) and appends next block of source buffer after them.
+	 * @return shift of positions of kept bytes
+	 */
+	private int readBlock(int keepFrom) {
+		int keep = dataLen - keepFrom;
+		if (keep + BLOCK_SIZE > data.length) {
+			byte[] newData = new byte[Math.max(keep + BLOCK_SIZE, data.length * 2)];
+			System.arraycopy(data, keepFrom, newData, 0, keep);
+			data = newData;
+		} else if (keepFrom > 0) {
+			System.arraycopy(data, keepFrom, data, 0, keep);
+		}
+		dataLen = keep;
+		int len = Math.min(src.remaining(), data.length - keep);
+		src.get(data, keep, len);
+		dataLen += len;
+		dataBase += keepFrom;
+		return keepFrom;
+	}
+
+	/**
+	 * @param vs position of '/' starting qualifier line
+	 * @return position of '=' in case line starts with qualifier having name of
+	 * ASCII letters, digits and '_' (or -1 otherwise)
+	 */
+	private int qualifierNameEnd(int vs, int le) {
+		int eq = vs + 1;
+		while (eq < le && data[eq] != '=')
+			eq++;
+		if (eq == le)
+			return -1;
+		int ns = trimStart(vs + 1, eq);
+		int ne = trimEnd(ns, eq);
+		if (ns == ne)
+			return -1;
+		for (int i = ns; i < ne; i++) {
+			byte b = data[i];
+			if (!((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_'))
+				return -1;
+		}
+		return eq;
+	}
+
+	/**
+	 * @return position in source buffer corresponding to position in byte array
+	 */
+	private int srcPos(int dataPos) {
+		return srcStart + dataBase + dataPos;
+	}
+
+	private static byte[] ascii(String text) {
+		return text.getBytes(Charset.forName("US-ASCII"));
+	}
+
+	private boolean startsWith(int ls, int le, byte[] prefix) {
+		if (le - ls < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (data[ls + i] != prefix[i])
+				return false;
+		return true;
+	}
+
+	private int checkPrefix(int ls, int le, int prefixLen) {
+		if (le - ls < prefixLen)
+			throw new IllegalStateException("Line is shorter than prefix: " + (le - ls) +
+					" < " + prefixLen);
+		return ls + prefixLen;
+	}
+
+	private int trimStart(int from, int to) {
+		while (from < to && (data[from] & 0xff) <= ' ')
+			from++;
+		return from;
+	}
+
+	private int trimEnd(int from, int to) {
+		while (to > from && (data[to - 1] & 0xff) <= ' ')
+			to--;
+		return to;
+	}
+
+	private int skipDelimiters(int from, int to) {
+		while (from < to) {
+			byte b = data[from];
+			if (b != ' ' && b != '\t')
+				break;
+			from++;
+		}
+		return from;
+	}
+
+	private int skipToken(int from, int to) {
+		while (from < to) {
+			byte b = data[from];
+			if (b == ' ' || b == '\t')
+				break;
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * Creates string from bytes [from, to) with leading and trailing whitespaces removed.
+	 */
+	private String trimmed(int from, int to) {
+		from = trimStart(from, to);
+		to = trimEnd(from, to);
+		int len = to - from;
+		if (chars.length < len)
+			chars = new char[Math.max(len, chars.length * 2)];
+		for (int i = 0; i < len; i++) {
+			byte b = data[from + i];
+			if (b < 0)
+				return new String(data, from, len, UTF8).trim();
+			chars[i] = (char)b;
+		}
+		return new String(chars, 0, len);
+	}
+}
@@ -7,13 +7,13 @@ package us.kbase.genomecomparison.gbk;
 public class GbkElement {
 	public int line_num;
 	public String type;
-	public StringBuffer value = null;
+	public StringBuilder value = null;
 	public GbkElement(int line_num,String type,String value) {
 		super();
 		this.line_num = line_num;
 		this.type = type;
 		if (value != null)
-			this.value = new StringBuffer(value);
+			this.value = new StringBuilder(value);
 	}
 	public void appendValue(String v) {
 		value.append(" ").append(v);
@@ -0,0 +1,71 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Feature qualifier out of whitelist of GbkParsingParams. Only position of
+ * its text in GBK-file is kept while parsing, value is extracted from file
+ * when it's requested first time (format errors are reported at this moment).
+ */
+public class GbkLazyQualifier extends GbkQualifier {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private ByteBuffer src;
+	private final int from;
+	private int to;
+
+	/**
+	 * @param src buffer with text of GBK-file
+	 * @param from position of value in first line (right after '=')
+	 * @param to end of last line of qualifier
+	 */
+	public GbkLazyQualifier(int line_num, String type, ByteBuffer src, int from, int to) {
+		super(line_num, type, null);
+		this.src = src;
+		this.from = from;
+		this.to = to;
+	}
+
+	void extend(int to) {
+		this.to = to;
+	}
+
+	@Override
+	public void close() {
+		// Value is parsed in getValue
+	}
+
+	@Override
+	public synchronized String getValue() {
+		if (value == null) {
+			byte[] data = new byte[to - from];
+			ByteBuffer buf = src.duplicate();
+			buf.position(from);
+			buf.get(data);
+			String text = new String(data, UTF8);
+			boolean noSpace = type.equals("db_xref") || type.equals("translation");
+			for (String line : text.split("\r\n|\r|\n")) {
+				if (value == null) {
+					value = new StringBuilder(line.trim());
+				} else if (line.trim().length() > 0) {
+					line = line.substring(GbkParser.FEATURE_PREFIX_LENGTH).trim();
+					if (noSpace) {
+						appendValueWithoutSpace(line);
+					} else {
+						appendValue(line);
+					}
+				}
+			}
+			super.close();
+			src = null;
+		}
+		return super.getValue();
+	}
+
+	@Override
+	public String toString() {
+		getValue();
+		return super.toString();
+	}
+}
@@ -22,6 +22,7 @@ public class GbkParser {
 		GbkSubheader sub = null;
 		GbkFeature feat = null;
 		GbkQualifier qual = null;
+		boolean skipQual = false;
 		int line_num = 1;
 		try {
 			for(;;line_num++) {
@@ -76,12 +77,13 @@ public class GbkParser {
 						state = 2;
 						if(qual!=null) qual.close();
 						qual = null;
+						skipQual = false;
 						if(feat!=null) feat.close(params);
 						feat = null;
 						if(!loc.isClosed()) {
 							loc.close();
 						}
-						seq = new GbkSequence(loc, ret);
+						seq = new GbkSequence(loc, ret, params.getSeqStats());
 						loc = null;
 						continue;
 					}
@@ -95,6 +97,7 @@ public class GbkParser {
 						feat = new GbkFeature(line_num,prefix,line);
 						if(qual!=null) qual.close();
 						qual = null;
+						skipQual = false;
 						loc.addFeature(feat);
 					}
 					else {
@@ -123,8 +126,12 @@ public class GbkParser {
 						if(qual_name!=null) {
 							line = line.substring(equal_pos+1).trim();
 							if(qual!=null) qual.close();
-							qual = new GbkQualifier(line_num,qual_name,line);
-							feat.qualifiers.add(qual);
+							qual = null;
+							skipQual = !params.isQualifierCollected(feat.type, qual_name);
+							if(!skipQual) {
+								qual = new GbkQualifier(line_num,qual_name,line);
+								feat.qualifiers.add(qual);
+							}
 						}
 						else {
 							if(qual!=null) {
@@ -135,7 +142,7 @@ public class GbkParser {
 									qual.appendValue(line);
 								}
 							}
-							else feat.appendValue(line);
+							else if(!skipQual) feat.appendValue(line);
 						}
 					}
 				}
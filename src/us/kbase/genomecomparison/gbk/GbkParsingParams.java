@@ -1,13 +1,58 @@
 package us.kbase.genomecomparison.gbk;
 
+import java.util.Set;
+
 public class GbkParsingParams {
 	private final boolean ignoreWrongFeatureLocation;
+	private final ContigSetStats seqStats;
+	private final Set<String> qualifierTypes;
+	private final boolean lazyQualifiers;
 	
 	public GbkParsingParams(boolean ignoreWrongFeatureLocation) {
+		this(ignoreWrongFeatureLocation, null);
+	}
+	
+	/**
+	 * @param seqStats optional statistics of contig sequences filled during parsing
+	 */
+	public GbkParsingParams(boolean ignoreWrongFeatureLocation, ContigSetStats seqStats) {
+		this(ignoreWrongFeatureLocation, seqStats, null, false);
+	}
+	
+	/**
+	 * @param qualifierTypes optional whitelist of feature qualifiers collected by parser,
+	 * other qualifiers are skipped (qualifiers of source features are always collected
+	 * since they define genome name and taxonomy)
+	 * @param lazyQualifiers in case it's true qualifiers out of whitelist are not skipped
+	 * but passed as GbkLazyQualifier loading value from file on demand (supported
+	 * by GbkByteParser only)
+	 */
+	public GbkParsingParams(boolean ignoreWrongFeatureLocation, ContigSetStats seqStats,
+			Set<String> qualifierTypes, boolean lazyQualifiers) {
 		this.ignoreWrongFeatureLocation = ignoreWrongFeatureLocation;
+		this.seqStats = seqStats;
+		this.qualifierTypes = qualifierTypes;
+		this.lazyQualifiers = lazyQualifiers;
 	}
 	
 	public boolean isIgnoreWrongFeatureLocation() {
 		return ignoreWrongFeatureLocation;
 	}
+	
+	public ContigSetStats getSeqStats() {
+		return seqStats;
+	}
+	
+	public Set<String> getQualifierTypes() {
+		return qualifierTypes;
+	}
+	
+	public boolean isLazyQualifiers() {
+		return lazyQualifiers;
+	}
+	
+	public boolean isQualifierCollected(String featureType, String qualifierType) {
+		return qualifierTypes == null || qualifierTypes.contains(qualifierType) || 
+				featureType.equals("source");
+	}
 }
@@ -7,24 +7,54 @@ package us.kbase.genomecomparison.gbk;
 public class GbkSequence {
 	private final GbkLocus locus;
     private final GbkCallback ret;
+    private final SequenceStats stats;
     private StringBuilder seqPart = new StringBuilder();
     private int seqPartNum = 0;
     private int seqCommonLen = 0;
+    private char[] chars = null;
 
     public static final int MAX_SEQ_PART = 1000000;
+    // Capacity of parts following the first one (sequence tokens are short, so they rarely
+    // exceed it), first part grows as usual since most of contigs are shorter than one part
+    private static final int SEQ_PART_CAPACITY = MAX_SEQ_PART + 1024;
 	//
 	public GbkSequence(GbkLocus l, GbkCallback ret) throws Exception {
+		this(l, ret, null);
+	}
+	public GbkSequence(GbkLocus l, GbkCallback ret, ContigSetStats stats) throws Exception {
 		super();
         locus = l;
 		this.ret = ret;
+		this.stats = stats == null ? null : stats.get(l.name);
 	}
 	public void append(String seq) throws Exception {
 		seqPart.append(seq);
+		if (stats != null)
+			stats.append(seq);
         seqCommonLen += seq.length();
+        flushIfNeeded();
+	}
+	/**
+	 * Appends bytes [from, to) of array as sequence token (used by GbkByteParser).
+	 */
+	public void append(byte[] data, int from, int to) throws Exception {
+		int start = seqPart.length();
+		int len = to - from;
+		if (chars == null || chars.length < len)
+			chars = new char[Math.max(len, 64)];
+		for (int i = 0; i < len; i++)
+			chars[i] = (char)(data[from + i] & 0xff);
+		seqPart.append(chars, 0, len);
+		if (stats != null)
+			stats.append(seqPart, start, seqPart.length());
+        seqCommonLen += to - from;
+        flushIfNeeded();
+	}
+	private void flushIfNeeded() throws Exception {
         if (seqPart.length() >= MAX_SEQ_PART) {
             ret.addSeqPart(locus.name, seqPartNum, seqPart.toString(), seqCommonLen);
             seqPartNum++;
-            seqPart = new StringBuilder();
+            seqPart = new StringBuilder(SEQ_PART_CAPACITY);
         }
 	}
 	public void close() throws Exception {
@@ -0,0 +1,15 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Sequence of GBK-files read one by one from some stream (for instance
+ * entries of zip-archive uploaded by user).
+ */
+public interface GbkStreamSource {
+	/**
+	 * @return reader of next GBK-file or null if there are no more files
+	 */
+	public BufferedReader nextFile() throws IOException;
+}
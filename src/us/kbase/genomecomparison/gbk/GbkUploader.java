@@ -2,20 +2,21 @@ package us.kbase.genomecomparison.gbk;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import us.kbase.auth.AuthToken;
-import us.kbase.common.service.Tuple11;
 import us.kbase.common.service.Tuple3;
 import us.kbase.common.service.Tuple4;
 import us.kbase.common.service.UObject;
@@ -23,149 +24,133 @@ import us.kbase.kbasegenomes.Contig;
 import us.kbase.kbasegenomes.ContigSet;
 import us.kbase.kbasegenomes.Feature;
 import us.kbase.kbasegenomes.Genome;
-import us.kbase.workspace.ObjectData;
-import us.kbase.workspace.ObjectIdentity;
 import us.kbase.workspace.ObjectSaveData;
 import us.kbase.workspace.SaveObjectsParams;
-import us.kbase.workspace.WorkspaceClient;
 
 public class GbkUploader {
+	public static final long SEQ_SPILL_THRESHOLD = 256L * 1024 * 1024;
+	// Qualifiers used in addFeature, parser skips the others
+	private static final Set<String> FEATURE_QUALIFIERS = Collections.unmodifiableSet(new HashSet<String>(
+			Arrays.asList("locus_tag", "translation", "note", "product", "gene", "protein_id")));
 
 	public static void uploadGbk(List<File> files, String wsUrl, String wsName, String id, String token) throws Exception {
-		final WorkspaceClient wc = new WorkspaceClient(new URL(wsUrl), new AuthToken(token));
-		wc.setAuthAllowedForHttp(true);
-		uploadGbk(files, new ObjectStorage() {
-			
-			@Override
-			public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> saveObjects(
-					String authToken, SaveObjectsParams params) throws Exception {
-				return wc.saveObjects(params);
-			}
-			
-			@Override
-			public List<ObjectData> getObjects(String authToken,
-					List<ObjectIdentity> objectIds) throws Exception {
-				return wc.getObjects(objectIds);
-			}
-		}, wsName, id, token);
+		uploadGbk(files, wsUrl, wsName, id, token, null);
+	}
+
+	/**
+	 * Objects are saved into workspace through StreamingObjectStorage so that
+	 * contig sequences are not serialized into memory.
+	 * @param tempDir folder where sequences of very long contigs are stored while
+	 * parsing (null means they are kept in memory)
+	 */
+	public static void uploadGbk(List<File> files, String wsUrl, String wsName, String id, String token,
+			File tempDir) throws Exception {
+		uploadGbk(files, new StreamingObjectStorage(wsUrl, token), wsName, id, token, tempDir);
 	}
 	
 	public static void uploadGbk(List<File> files, ObjectStorage wc, String ws, String id, String token) throws Exception {
+		uploadGbk(files, wc, ws, id, token, null);
+	}
+	
+	public static void uploadGbk(List<File> files, ObjectStorage wc, String ws, String id, String token,
+			File tempDir) throws Exception {
+		uploadGbk(files, wc, ws, id, token, tempDir, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Files are parsed in parallel (each one into separate ParsedFile) and results
+	 * are merged in order of files, so that output is the same as in case files are
+	 * parsed one by one.
+	 * @param threadCount maximum number of files parsed at the same time
+	 */
+	public static void uploadGbk(List<File> files, ObjectStorage wc, String ws, String id, String token,
+			File tempDir, int threadCount) throws Exception {
+		List<ParsedFile> parsedFiles = parseFiles(files, tempDir, threadCount);
+		save(parsedFiles, files.get(0).getParent(), wc, ws, id, token);
+	}
+
+	/**
+	 * Parses GBK-files coming one by one from stream (without temporary copies)
+	 * with GbkParser. Files are parsed in the same thread.
+	 * @param sourceName name of source used in warnings
+	 * @param seqSpillThreshold size (in bases) after which contig sequence is moved
+	 * into temporary file in tempDir
+	 */
+	public static void uploadGbk(GbkStreamSource source, String sourceName, ObjectStorage wc, String ws,
+			String id, String token, File tempDir, long seqSpillThreshold) throws Exception {
+		List<ParsedFile> parsedFiles = new ArrayList<ParsedFile>();
+		try {
+			while (true) {
+				BufferedReader br = source.nextFile();
+				if (br == null)
+					break;
+				ParsedFile pf = new ParsedFile(null, tempDir, seqSpillThreshold);
+				parsedFiles.add(pf);
+				pf.parse(br);
+			}
+		} catch (Exception ex) {
+			for (ParsedFile pf : parsedFiles)
+				pf.close();
+			throw ex;
+		}
+		if (parsedFiles.isEmpty())
+			throw new Exception("No GBK-files were found in " + sourceName);
+		save(parsedFiles, sourceName, wc, ws, id, token);
+	}
+
+	private static void save(List<ParsedFile> parsedFiles, String sourceName, ObjectStorage wc,
+			String ws, String id, String token) throws Exception {
 		final Map<String, Contig> contigMap = new LinkedHashMap<String, Contig>();
+		final Map<String, SequenceBuilder> contigSeqs = new HashMap<String, SequenceBuilder>();
 		final Genome genome = new Genome()
 				.withComplete(1L).withDomain("Bacteria").withGeneticCode(11L).withId(id)
 				.withNumContigs(1L).withSource("NCBI").withSourceId("NCBI");
 		final List<Feature> features = new ArrayList<Feature>();
-		final Set<String> usedFeatureIds = new HashSet<String>();
 		final Map<String, Integer> generatedFeatureIds = new HashMap<String, Integer>();
+		final ContigSetStats seqStats = new ContigSetStats();
 		final Map<String, String> contigToOrgName = new HashMap<String, String>();
 		final Map<String, String> contigToTaxonomy = new HashMap<String, String>();
 		final Map<String, Boolean> contigToPlasmid = new HashMap<String, Boolean>();
-		for (final File f : files) {
-			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f)));
-			try {
-				GbkParser.parse(br, new GbkParsingParams(true), new GbkCallback() {
-					@Override
-					public void setGenome(String contigName, String genomeName, int taxId, String plasmid) throws Exception {
-						if (contigToOrgName.get(contigName) == null)
-							contigToOrgName.put(contigName, genomeName);
-						genome.getAdditionalProperties().put("tax_id", taxId);
-						contigToPlasmid.put(contigName, plasmid != null);
-					}
-					@Override
-					public void addSeqPart(String contigName, int seqPartIndex, String seqPart,
-							int commonLen) throws Exception {
-						Contig contig = contigMap.get(contigName);
-						if (contig == null) {
-							contig = new Contig().withId(contigName).withName(contigName).withMd5("md5")
-									.withSequence("");
-							contigMap.put(contigName, contig);
-						}
-						contig.withSequence(contig.getSequence() + seqPart);
-					}
-					@Override
-					public void addHeader(String contigName, String headerType, String value,
-							List<GbkSubheader> items) throws Exception {
-						if (headerType.equals("SOURCE")) {
-							String genomeName = value;
-							//genome.withScientificName(genomeName);
-							contigToOrgName.put(contigName, genomeName);
-							for (GbkSubheader sub : items) {
-								if (sub.type.equals("ORGANISM")) {
-									String taxPath = sub.getValue();
-									String[] parts = taxPath.split("\n");
-									taxPath = "";
-									for (int i = 0; i < parts.length; i++) {
-										if (i == 0 && parts[0].equals(genomeName))
-											continue;
-										if (taxPath.length() > 0)
-											taxPath += " ";
-										taxPath += parts[i];
-									}
-									if (taxPath.endsWith("."))
-										taxPath = taxPath.substring(0, taxPath.length() - 1).trim();
-									String fullPath = taxPath + "; " + genomeName;
-									contigToTaxonomy.put(contigName, fullPath);
-								}
-							}
-						}
+		try {
+			for (ParsedFile pf : parsedFiles) {
+				for (Map.Entry<String, String> entry : pf.contigToOrgName.entrySet()) {
+					String contigName = entry.getKey();
+					if (pf.orgNameFromHeader.contains(contigName) || contigToOrgName.get(contigName) == null)
+						contigToOrgName.put(contigName, entry.getValue());
+				}
+				contigToTaxonomy.putAll(pf.contigToTaxonomy);
+				contigToPlasmid.putAll(pf.contigToPlasmid);
+				if (pf.taxId != null)
+					genome.getAdditionalProperties().put("tax_id", pf.taxId);
+				for (Map.Entry<String, SequenceBuilder> entry : pf.contigSeqs.entrySet()) {
+					String contigName = entry.getKey();
+					SequenceBuilder seq = contigSeqs.get(contigName);
+					if (seq == null) {
+						contigMap.put(contigName, new Contig().withId(contigName).withName(contigName));
+						contigSeqs.put(contigName, entry.getValue());
+						seqStats.put(contigName, pf.seqStats.get(contigName));
+					} else {
+						// Contig is continued in another file, its statistics are continued too
+						seq.append(entry.getValue(), seqStats.get(contigName));
+						entry.getValue().close();
 					}
-					@Override
-					public void addFeature(String contigName, String featureType, int strand,
-							int start, int stop, List<GbkLocation> locations,
-							List<GbkQualifier> props) throws Exception {
-						Feature f = null;
-						if (featureType.equals("CDS")) {
-							f = new Feature().withType("CDS");
-						} else if (featureType.toUpperCase().endsWith("RNA")) {
-							f = new Feature().withType("rna");
-						}
-						if (f == null)
-							return;
-						List<Tuple4<String, Long, String, Long>> locList = new ArrayList<Tuple4<String, Long, String, Long>>();
-						for (GbkLocation loc : locations) {
-							long realStart = loc.strand > 0 ? loc.start : loc.stop;
-							String dir = loc.strand > 0 ? "+" : "-";
-							long len = loc.stop + 1 - loc.start;
-							locList.add(new Tuple4<String, Long, String, Long>().withE1(contigName)
-									.withE2(realStart).withE3(dir).withE4(len));
-						}
-						f.withLocation(locList).withAnnotations(new ArrayList<Tuple3<String, String, Long>>());
-						f.withAliases(new ArrayList<String>());
-						for (GbkQualifier prop : props) {
-							if (prop.type.equals("locus_tag")) {
-								f.setId(prop.getValue());
-							} else if (prop.type.equals("translation")) {
-								String seq = prop.getValue();
-								f.withProteinTranslation(seq).withProteinTranslationLength((long)seq.length());
-							} else if (prop.type.equals("note")) {
-								f.setFunction(prop.getValue());
-							} else if (prop.type.equals("product")) {
-								if (f.getFunction() == null)
-									f.setFunction(prop.getValue());
-							} else if (prop.type.equals("gene")) {
-								if (f.getId() == null)
-									f.setId(prop.getValue());
-								f.getAliases().add(prop.getValue());
-							} else if (prop.type.equals("protein_id")) {
-								f.getAliases().add(prop.getValue());
-							}
-						}
-						if (f.getId() == null) {
-							Integer last = generatedFeatureIds.get(f.getType());
-							if (last == null)
-								last = 0;
-							last++;
-							f.setId(f.getType() + "." + last);
-							generatedFeatureIds.put(f.getType(), last);
-						}
-						features.add(f);
-						usedFeatureIds.add(f.getId());
+				}
+				for (Feature f : pf.features) {
+					if (f.getId() == null) {
+						Integer last = generatedFeatureIds.get(f.getType());
+						if (last == null)
+							last = 0;
+						last++;
+						f.setId(f.getType() + "." + last);
+						generatedFeatureIds.put(f.getType(), last);
 					}
-				});
-			} finally {
-				br.close();
+					features.add(f);
+				}
 			}
+		} catch (Exception ex) {
+			for (ParsedFile pf : parsedFiles)
+				pf.close();
+			throw ex;
 		}
 		// Process all non-plasmids first
 		for (String key : contigToOrgName.keySet()) {
@@ -176,7 +161,7 @@ public class GbkUploader {
 			String taxonomy = contigToTaxonomy.get(key);
 			if (taxonomy != null) {
 				if (genome.getTaxonomy() != null && !genome.getTaxonomy().equals(taxonomy))
-					System.err.println("Taxonomy path is wrong in file [" + files.get(0).getParent() + ":" + 
+					System.err.println("Taxonomy path is wrong in file [" + sourceName + ":" + 
 							key + "]: " + taxonomy + " (it's different from '" + genome.getTaxonomy() + "')");
 				genome.withTaxonomy(taxonomy);
 			}
@@ -198,24 +183,35 @@ public class GbkUploader {
 		String contigId = id + ".contigset";
 		List<Long> contigLengths = new ArrayList<Long>();
 		long dnaLen = 0;
-		for (Contig contig : contigMap.values()) {
-			if (contig.getSequence() == null || contig.getSequence().length() == 0) {
-				throw new Exception("Contig " + contig.getId() + " has no DNA-sequence");
+		try {
+			for (Map.Entry<String, Contig> entry : contigMap.entrySet()) {
+				SequenceBuilder seq = contigSeqs.get(entry.getKey());
+				if (seq.length() == 0) {
+					throw new Exception("Contig " + entry.getKey() + " has no DNA-sequence");
+				}
+				// Builder writes sequence itself during serialization (instead of String field)
+				Contig contig = new StreamedContig(entry.getKey(), seq)
+						.withMd5(seqStats.getContigMd5(entry.getKey()));
+				entry.setValue(contig);
+				contigLengths.add(contig.getLength());
+				dnaLen += contig.getLength();
 			}
-			contig.withLength((long)contig.getSequence().length());
-			contigLengths.add(contig.getLength());
-			dnaLen += contig.getLength();
+			ContigSet contigSet = new ContigSet().withContigs(new ArrayList<Contig>(contigMap.values()))
+					.withId(id).withMd5(seqStats.getMd5()).withName(id)
+					.withSource("User uploaded data").withSourceId("USER").withType("Organism");
+			wc.saveObjects(token, new SaveObjectsParams().withWorkspace(ws)
+					.withObjects(Arrays.asList(new ObjectSaveData().withName(contigId)
+							.withType("KBaseGenomes.ContigSet").withData(new UObject(contigSet)))));
+		} finally {
+			for (SequenceBuilder seq : contigSeqs.values())
+				seq.close();
+			for (ParsedFile pf : parsedFiles)
+				pf.close();
 		}
-		ContigSet contigSet = new ContigSet().withContigs(new ArrayList<Contig>(contigMap.values()))
-				.withId(id).withMd5("md5").withName(id)
-				.withSource("User uploaded data").withSourceId("USER").withType("Organism");
-		wc.saveObjects(token, new SaveObjectsParams().withWorkspace(ws)
-				.withObjects(Arrays.asList(new ObjectSaveData().withName(contigId)
-						.withType("KBaseGenomes.ContigSet").withData(new UObject(contigSet)))));
 		String ctgRef = ws + "/" + contigId;
 		genome.withContigIds(new ArrayList<String>(contigMap.keySet())).withContigLengths(contigLengths)
 				.withDnaSize(dnaLen).withContigsetRef(ctgRef).withFeatures(features)
-				.withGcContent(calculateGcContent(contigSet));
+				.withGcContent(seqStats.getGcContent());
 		Map<String, String> meta = new LinkedHashMap<String, String>();
 		meta.put("Scientific name", genome.getScientificName());
 		wc.saveObjects(token, new SaveObjectsParams().withWorkspace(ws)
@@ -223,20 +219,175 @@ public class GbkUploader {
 						.withType("KBaseGenomes.Genome").withData(new UObject(genome)))));
 	}
 
+	private static List<ParsedFile> parseFiles(List<File> files, File tempDir,
+			int threadCount) throws Exception {
+		List<ParsedFile> ret = new ArrayList<ParsedFile>();
+		for (File f : files)
+			ret.add(new ParsedFile(f, tempDir, SEQ_SPILL_THRESHOLD));
+		threadCount = Math.max(1, Math.min(threadCount, files.size()));
+		try {
+			if (threadCount == 1) {
+				for (ParsedFile pf : ret)
+					pf.call();
+			} else {
+				ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+				try {
+					for (Future<ParsedFile> future : pool.invokeAll(ret)) {
+						try {
+							future.get();
+						} catch (ExecutionException ex) {
+							if (ex.getCause() instanceof Exception)
+								throw (Exception)ex.getCause();
+							throw ex;
+						}
+					}
+				} finally {
+					pool.shutdownNow();
+				}
+			}
+		} catch (Exception ex) {
+			for (ParsedFile pf : ret)
+				pf.close();
+			throw ex;
+		}
+		return ret;
+	}
+
 	public static double calculateGcContent(ContigSet contigs) {
-		int at = 0;
-		int gc = 0;
-		for (Contig contig : contigs.getContigs()) {
-			String seq = contig.getSequence();
-			for (int i = 0; i < seq.length(); i++) {
-				char ch = seq.charAt(i);
-				if (ch == 'g' || ch == 'G' || ch == 'c' || ch == 'C') {
-					gc++;
-				} else if (ch == 'a' || ch == 'A' || ch == 't' || ch == 'T') {
-					at++;
+		return ContigSetStats.forContigSet(contigs).getGcContent();
+	}
+
+	/**
+	 * Partial result of parsing of one file. It's filled by one thread and 
+	 * merged with results of other files in order of files.
+	 */
+	private static class ParsedFile implements GbkCallback, Callable<ParsedFile> {
+		private final File file;
+		private final File tempDir;
+		private final long seqSpillThreshold;
+		final Map<String, SequenceBuilder> contigSeqs = new LinkedHashMap<String, SequenceBuilder>();
+		final ContigSetStats seqStats = new ContigSetStats();
+		final List<Feature> features = new ArrayList<Feature>();
+		final Map<String, String> contigToOrgName = new LinkedHashMap<String, String>();
+		final Set<String> orgNameFromHeader = new HashSet<String>();
+		final Map<String, String> contigToTaxonomy = new LinkedHashMap<String, String>();
+		final Map<String, Boolean> contigToPlasmid = new LinkedHashMap<String, Boolean>();
+		Integer taxId = null;
+
+		ParsedFile(File file, File tempDir, long seqSpillThreshold) {
+			this.file = file;
+			this.tempDir = tempDir;
+			this.seqSpillThreshold = seqSpillThreshold;
+		}
+
+		@Override
+		public ParsedFile call() throws Exception {
+			GbkByteParser.parse(file, createParsingParams(), this);
+			return this;
+		}
+
+		void parse(BufferedReader br) throws Exception {
+			GbkParser.parse(br, createParsingParams(), this);
+		}
+
+		private GbkParsingParams createParsingParams() {
+			return new GbkParsingParams(true, seqStats, FEATURE_QUALIFIERS, false);
+		}
+
+		void close() {
+			for (SequenceBuilder seq : contigSeqs.values())
+				seq.close();
+		}
+
+
+		@Override
+		public void setGenome(String contigName, String genomeName, int taxId, String plasmid) throws Exception {
+			if (contigToOrgName.get(contigName) == null)
+				contigToOrgName.put(contigName, genomeName);
+			this.taxId = taxId;
+			contigToPlasmid.put(contigName, plasmid != null);
+		}
+		@Override
+		public void addSeqPart(String contigName, int seqPartIndex, String seqPart,
+				int commonLen) throws Exception {
+			SequenceBuilder seq = contigSeqs.get(contigName);
+			if (seq == null) {
+				seq = new SequenceBuilder(tempDir, seqSpillThreshold);
+				contigSeqs.put(contigName, seq);
+			}
+			seq.append(seqPart);
+		}
+		@Override
+		public void addHeader(String contigName, String headerType, String value,
+				List<GbkSubheader> items) throws Exception {
+			if (headerType.equals("SOURCE")) {
+				String genomeName = value;
+				//genome.withScientificName(genomeName);
+				contigToOrgName.put(contigName, genomeName);
+				orgNameFromHeader.add(contigName);
+				for (GbkSubheader sub : items) {
+					if (sub.type.equals("ORGANISM")) {
+						String taxPath = sub.getValue();
+						String[] parts = taxPath.split("\n");
+						taxPath = "";
+						for (int i = 0; i < parts.length; i++) {
+							if (i == 0 && parts[0].equals(genomeName))
+								continue;
+							if (taxPath.length() > 0)
+								taxPath += " ";
+							taxPath += parts[i];
+						}
+						if (taxPath.endsWith("."))
+							taxPath = taxPath.substring(0, taxPath.length() - 1).trim();
+						String fullPath = taxPath + "; " + genomeName;
+						contigToTaxonomy.put(contigName, fullPath);
+					}
+				}
+			}
+		}
+		@Override
+		public void addFeature(String contigName, String featureType, int strand,
+				int start, int stop, List<GbkLocation> locations,
+				List<GbkQualifier> props) throws Exception {
+			Feature f = null;
+			if (featureType.equals("CDS")) {
+				f = new Feature().withType("CDS");
+			} else if (featureType.toUpperCase().endsWith("RNA")) {
+				f = new Feature().withType("rna");
+			}
+			if (f == null)
+				return;
+			List<Tuple4<String, Long, String, Long>> locList = new ArrayList<Tuple4<String, Long, String, Long>>();
+			for (GbkLocation loc : locations) {
+				long realStart = loc.strand > 0 ? loc.start : loc.stop;
+				String dir = loc.strand > 0 ? "+" : "-";
+				long len = loc.stop + 1 - loc.start;
+				locList.add(new Tuple4<String, Long, String, Long>().withE1(contigName)
+						.withE2(realStart).withE3(dir).withE4(len));
+			}
+			f.withLocation(locList).withAnnotations(new ArrayList<Tuple3<String, String, Long>>());
+			f.withAliases(new ArrayList<String>());
+			for (GbkQualifier prop : props) {
+				if (prop.type.equals("locus_tag")) {
+					f.setId(prop.getValue());
+				} else if (prop.type.equals("translation")) {
+					String seq = prop.getValue();
+					f.withProteinTranslation(seq).withProteinTranslationLength((long)seq.length());
+				} else if (prop.type.equals("note")) {
+					f.setFunction(prop.getValue());
+				} else if (prop.type.equals("product")) {
+					if (f.getFunction() == null)
+						f.setFunction(prop.getValue());
+				} else if (prop.type.equals("gene")) {
+					if (f.getId() == null)
+						f.setId(prop.getValue());
+					f.getAliases().add(prop.getValue());
+				} else if (prop.type.equals("protein_id")) {
+					f.getAliases().add(prop.getValue());
 				}
 			}
+			// Features without ids get generated ones while files are merged
+			features.add(f);
 		}
-		return (0.0 + gc) / (at + gc);
 	}
 }
@@ -0,0 +1,205 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.base.GeneratorBase;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * Accumulator of DNA sequence of one contig. Sequence is appended in parts
+ * and kept as one byte per base in array growing by doubling (or in memory
+ * mapped temporary file when size exceeds spill threshold), so that contig
+ * is assembled in linear time and final string is built by one copy.
+ * Builder could be put into object saved to workspace instead of string
+ * (see StreamedContig), in this case sequence is written into JSON output
+ * in small chunks.
+ */
+public class SequenceBuilder implements JsonSerializable {
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	private static final int JSON_CHUNK_SIZE = 1 << 16;
+
+	private final File tempDir;
+	private final long spillThreshold;
+	private byte[] data = new byte[INITIAL_CAPACITY];
+	private int length = 0;
+	private File spillFile = null;
+	private RandomAccessFile spillRaf = null;
+	private MappedByteBuffer spillBuf = null;
+	private boolean jsonSafe = true;
+
+	public SequenceBuilder() {
+		this(null, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param tempDir folder for temporary file (null means sequence is always kept in memory)
+	 * @param spillThreshold size (in bases) after which sequence is moved into memory mapped file
+	 */
+	public SequenceBuilder(File tempDir, long spillThreshold) {
+		this.tempDir = tempDir;
+		this.spillThreshold = spillThreshold;
+	}
+
+	public SequenceBuilder append(CharSequence seq) throws IOException {
+		int len = seq.length();
+		ensureCapacity((long)length + len);
+		if (spillBuf == null) {
+			for (int i = 0; i < len; i++) {
+				char ch = seq.charAt(i);
+				jsonSafe &= isJsonSafe(ch);
+				data[length + i] = (byte)ch;
+			}
+		} else {
+			spillBuf.position(length);
+			for (int i = 0; i < len; i++) {
+				char ch = seq.charAt(i);
+				jsonSafe &= isJsonSafe(ch);
+				spillBuf.put((byte)ch);
+			}
+		}
+		length += len;
+		return this;
+	}
+
+	/**
+	 * Appends sequence of another builder by chunks without building whole
+	 * string, appended bases are also added into statistics (if not null).
+	 */
+	public SequenceBuilder append(SequenceBuilder other, SequenceStats stats) throws IOException {
+		char[] chunk = new char[Math.min(other.length, JSON_CHUNK_SIZE)];
+		for (int pos = 0; pos < other.length; pos += chunk.length) {
+			CharBuffer part = CharBuffer.wrap(chunk, 0, other.getChars(pos, chunk));
+			append(part);
+			if (stats != null)
+				stats.append(part);
+		}
+		return this;
+	}
+
+	/**
+	 * Copies bases starting from pos into chunk.
+	 * @return number of copied bases
+	 */
+	private int getChars(int pos, char[] chunk) {
+		int len = Math.min(chunk.length, length - pos);
+		if (spillBuf == null) {
+			for (int i = 0; i < len; i++)
+				chunk[i] = (char)(data[pos + i] & 0xff);
+		} else {
+			for (int i = 0; i < len; i++)
+				chunk[i] = (char)(spillBuf.get(pos + i) & 0xff);
+		}
+		return len;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Removes sequence keeping allocated memory (or temporary file).
+	 */
+	public void clear() {
+		length = 0;
+		jsonSafe = true;
+	}
+
+	public boolean isSpilled() {
+		return spillBuf != null;
+	}
+
+	private static boolean isJsonSafe(char ch) {
+		return ch >= ' ' && ch < 0x7f && ch != '"' && ch != '\\';
+	}
+
+	private void ensureCapacity(long required) throws IOException {
+		if (required > Integer.MAX_VALUE)
+			throw new IllegalStateException("Contig sequence is too long: " + required);
+		int capacity = spillBuf == null ? data.length : spillBuf.capacity();
+		if (required <= capacity)
+			return;
+		int newCapacity = (int)Math.min(Integer.MAX_VALUE, Math.max(required, capacity * 2L));
+		if (spillBuf == null && tempDir != null && newCapacity > spillThreshold) {
+			spillFile = File.createTempFile("contig_", ".seq", tempDir);
+			spillRaf = new RandomAccessFile(spillFile, "rw");
+			spillBuf = map(newCapacity);
+			spillBuf.put(data, 0, length);
+			data = null;
+		} else if (spillBuf != null) {
+			spillBuf = map(newCapacity);
+		} else {
+			byte[] newData = new byte[newCapacity];
+			System.arraycopy(data, 0, newData, 0, length);
+			data = newData;
+		}
+	}
+
+	private MappedByteBuffer map(int capacity) throws IOException {
+		spillRaf.setLength(capacity);
+		return spillRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	@Override
+	public String toString() {
+		if (spillBuf == null)
+			return new String(data, 0, length, LATIN1);
+		ByteBuffer buf = spillBuf.duplicate();
+		buf.position(0);
+		buf.limit(length);
+		return LATIN1.decode(buf).toString();
+	}
+
+	/**
+	 * Writes sequence as JSON string. In case generator writes text output
+	 * and sequence has no characters requiring escaping it's written in chunks
+	 * without building whole string.
+	 */
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+		if (!(jsonSafe && gen instanceof GeneratorBase)) {
+			gen.writeString(toString());
+			return;
+		}
+		gen.writeRawValue("\"");
+		char[] chunk = new char[Math.min(length, JSON_CHUNK_SIZE)];
+		for (int pos = 0; pos < length; pos += chunk.length)
+			gen.writeRaw(chunk, 0, getChars(pos, chunk));
+		gen.writeRaw('"');
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider provider,
+			TypeSerializer typeSer) throws IOException {
+		serialize(gen, provider);
+	}
+
+	/**
+	 * Releases memory and removes temporary file (if it was created).
+	 */
+	public void close() {
+		data = null;
+		spillBuf = null;
+		if (spillRaf != null) {
+			try {
+				spillRaf.close();
+			} catch (IOException ignore) {}
+			spillRaf = null;
+		}
+		if (spillFile != null) {
+			if (!spillFile.delete())
+				spillFile.deleteOnExit();
+			spillFile = null;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import us.kbase.genomecomparison.Utils;
+
+/**
+ * Statistics of one DNA sequence calculated in one pass while sequence is
+ * appended by parts: counts of G/C, A/T and N bases, length and MD5 checksum
+ * (of upper-cased sequence).
+ */
+public class SequenceStats {
+	private final MessageDigest digest;
+	private final byte[] buf = new byte[8192];
+	private long gc = 0;
+	private long at = 0;
+	private long n = 0;
+	private long length = 0;
+	private String md5 = null;
+
+	public SequenceStats() {
+		digest = createMd5Digest();
+	}
+
+	static MessageDigest createMd5Digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	public SequenceStats append(CharSequence seq) {
+		return append(seq, 0, seq.length());
+	}
+
+	public SequenceStats append(CharSequence seq, int from, int to) {
+		if (md5 != null)
+			throw new IllegalStateException("MD5 is already calculated");
+		for (int start = from; start < to; start += buf.length) {
+			int end = Math.min(to, start + buf.length);
+			for (int i = start; i < end; i++) {
+				char ch = seq.charAt(i);
+				if (ch >= 'a' && ch <= 'z')
+					ch = (char)(ch - 'a' + 'A');
+				if (ch == 'G' || ch == 'C') {
+					gc++;
+				} else if (ch == 'A' || ch == 'T') {
+					at++;
+				} else if (ch == 'N') {
+					n++;
+				}
+				buf[i - start] = (byte)ch;
+			}
+			digest.update(buf, 0, end - start);
+		}
+		length += to - from;
+		return this;
+	}
+
+	public long getGcCount() {
+		return gc;
+	}
+
+	public long getAtCount() {
+		return at;
+	}
+
+	public long getNCount() {
+		return n;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return hex MD5 of sequence (nothing can be appended after this call)
+	 */
+	public String getMd5() {
+		if (md5 == null)
+			md5 = Utils.toHex(digest.digest());
+		return md5;
+	}
+}
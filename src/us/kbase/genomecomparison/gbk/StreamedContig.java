@@ -0,0 +1,87 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import us.kbase.kbasegenomes.Contig;
+
+/**
+ * Contig which sequence is kept in SequenceBuilder instead of string field.
+ * Jackson writes it by {@link Serializer} (fields are the same as in Contig)
+ * where sequence is written by builder itself, so ContigSet could be saved
+ * without building strings for sequences. For other callers getSequence()
+ * builds string from builder, and sequence set as string is copied into
+ * builder (null means no sequence as in Contig). Builder should be alive
+ * until object is serialized.
+ */
+@JsonSerialize(using = StreamedContig.Serializer.class)
+public class StreamedContig extends Contig {
+	private final SequenceBuilder seq;
+	private boolean hasSequence = true;
+
+	public StreamedContig(String id, SequenceBuilder seq) {
+		this.seq = seq;
+		withId(id).withName(id).withLength((long)seq.length());
+	}
+
+	public SequenceBuilder getSequenceBuilder() {
+		return seq;
+	}
+
+	@Override
+	public String getSequence() {
+		return hasSequence ? seq.toString() : null;
+	}
+
+	@Override
+	public void setSequence(String sequence) {
+		seq.clear();
+		hasSequence = sequence != null;
+		if (hasSequence) {
+			try {
+				seq.append(sequence);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Error storing sequence of contig " + getId(), ex);
+			}
+		}
+	}
+
+	@Override
+	public Contig withSequence(String sequence) {
+		setSequence(sequence);
+		return this;
+	}
+
+	public static class Serializer extends JsonSerializer<StreamedContig> {
+		@Override
+		public void serialize(StreamedContig value, JsonGenerator gen,
+				SerializerProvider provider) throws IOException {
+			gen.writeStartObject();
+			writeField(gen, provider, "id", value.getId());
+			writeField(gen, provider, "length", value.getLength());
+			writeField(gen, provider, "md5", value.getMd5());
+			if (value.hasSequence) {
+				gen.writeFieldName("sequence");
+				value.seq.serialize(gen, provider);
+			}
+			writeField(gen, provider, "name", value.getName());
+			writeField(gen, provider, "description", value.getDescription());
+			for (Map.Entry<String, Object> entry : value.getAdditionalProperties().entrySet())
+				writeField(gen, provider, entry.getKey(), entry.getValue());
+			gen.writeEndObject();
+		}
+
+		private static void writeField(JsonGenerator gen, SerializerProvider provider,
+				String name, Object value) throws IOException {
+			if (value == null)
+				return;
+			gen.writeFieldName(name);
+			provider.defaultSerializeValue(value, gen);
+		}
+	}
+}
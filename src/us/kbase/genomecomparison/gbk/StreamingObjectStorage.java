@@ -0,0 +1,109 @@
+package us.kbase.genomecomparison.gbk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.kbase.auth.AuthToken;
+import us.kbase.common.service.JsonClientException;
+import us.kbase.common.service.Tuple11;
+import us.kbase.common.service.UObject;
+import us.kbase.workspace.ObjectData;
+import us.kbase.workspace.ObjectIdentity;
+import us.kbase.workspace.SaveObjectsParams;
+import us.kbase.workspace.WorkspaceClient;
+
+/**
+ * Object storage saving objects to workspace with JSON-RPC request written
+ * by JsonGenerator directly into HTTP connection (in chunked mode) instead of
+ * serialization of whole request into memory. Together with StreamedContig
+ * it lets to save ContigSet without building strings for sequences at all.
+ * Loading of objects is delegated to WorkspaceClient.
+ */
+public class StreamingObjectStorage implements ObjectStorage {
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private final URL wsUrl;
+	private final String token;
+	private final WorkspaceClient wc;
+
+	public StreamingObjectStorage(String wsUrl, String token) throws Exception {
+		this.wsUrl = new URL(wsUrl);
+		this.token = token;
+		this.wc = new WorkspaceClient(this.wsUrl, new AuthToken(token));
+		this.wc.setAuthAllowedForHttp(true);
+	}
+
+	@Override
+	public List<ObjectData> getObjects(String authToken,
+			List<ObjectIdentity> objectIds) throws Exception {
+		return wc.getObjects(objectIds);
+	}
+
+	@Override
+	public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> saveObjects(
+			String authToken, SaveObjectsParams params) throws Exception {
+		JsonNode result = call("Workspace.save_objects", params);
+		ObjectMapper mapper = UObject.getMapper();
+		return mapper.readValue(mapper.treeAsTokens(result.get(0)),
+				new TypeReference<List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>>>() {});
+	}
+
+	private JsonNode call(String method, Object arg) throws Exception {
+		ObjectMapper mapper = UObject.getMapper();
+		HttpURLConnection conn = (HttpURLConnection)wsUrl.openConnection();
+		conn.setDoOutput(true);
+		conn.setChunkedStreamingMode(CHUNK_SIZE);
+		conn.setRequestMethod("POST");
+		conn.setRequestProperty("Content-Type", "application/json");
+		conn.setRequestProperty("Authorization", token);
+		OutputStream os = conn.getOutputStream();
+		try {
+			JsonGenerator g = mapper.getFactory().createGenerator(os, JsonEncoding.UTF8);
+			g.writeStartObject();
+			g.writeStringField("version", "1.1");
+			g.writeStringField("method", method);
+			g.writeStringField("id", "" + Math.abs(new Random().nextLong()));
+			g.writeFieldName("params");
+			g.writeStartArray();
+			mapper.writeValue(g, arg);
+			g.writeEndArray();
+			g.writeEndObject();
+			g.close();
+		} finally {
+			os.close();
+		}
+		int code = conn.getResponseCode();
+		InputStream is = code == HttpURLConnection.HTTP_OK ? conn.getInputStream() : conn.getErrorStream();
+		if (is == null)
+			throw new JsonClientException("Server returned HTTP code " + code + ": " + conn.getResponseMessage());
+		JsonNode resp;
+		try {
+			resp = mapper.readTree(is);
+		} catch (IOException ex) {
+			throw new JsonClientException("Error parsing response of server (HTTP code " + code + ")", ex);
+		} finally {
+			is.close();
+		}
+		JsonNode error = resp.get("error");
+		if (error != null && !error.isNull()) {
+			JsonNode message = error.get("message");
+			throw new JsonClientException(message == null ? error.toString() : message.asText());
+		}
+		JsonNode result = resp.get("result");
+		if (result == null || !result.isArray() || result.size() == 0)
+			throw new JsonClientException("Server response doesn't contain result of " + method);
+		return result;
+	}
+}
@@ -0,0 +1,47 @@
+package us.kbase.genomecomparison.test;
+
+import java.io.File;
+import java.util.Map;
+
+import us.kbase.genomecomparison.BlastStarter;
+import us.kbase.genomecomparison.FastaReader;
+
+/**
+ * Measures wall-clock time of blastp comparison of two proteomes depending on
+ * number of query shards. Usage: <proteome1.faa> <proteome2.faa> <blast_bin_dir> 
+ * [<blast_threads> [<shard_count>...]]
+ */
+public class BlastShardsTester {
+	public static void main(String[] args) throws Exception {
+		Map<String, String> proteome1 = FastaReader.readFromFile(new File(args[0]));
+		Map<String, String> proteome2 = FastaReader.readFromFile(new File(args[1]));
+		File blastBin = new File(args[2]);
+		int blastThreads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		int[] shardCounts = {1, 2, 4, 8, 16, 32};
+		if (args.length > 4) {
+			shardCounts = new int[args.length - 4];
+			for (int i = 0; i < shardCounts.length; i++)
+				shardCounts[i] = Integer.parseInt(args[4 + i]);
+		}
+		File tempDir = new File("temp");
+		if (!tempDir.exists())
+			tempDir.mkdir();
+		System.out.println("Proteome sizes: " + proteome1.size() + " vs " + proteome2.size() + 
+				", blast threads: " + blastThreads);
+		for (int shards : shardCounts) {
+			final long[] rows = {0};
+			long time = System.currentTimeMillis();
+			BlastStarter.run(tempDir, proteome1, proteome2, blastBin, "1e-10", shards, blastThreads, 
+					new BlastStarter.ResultCallback() {
+				@Override
+				public void proteinPair(String qname, String tname, double ident, int alnLen, 
+						int mismatch, int gapopens, int qstart, int qend, int tstart, int tend, 
+						String eval, double bitScore) {
+					rows[0]++;
+				}
+			});
+			System.out.println("Shards: " + shards + ", hits: " + rows[0] + ", time: " + 
+					(System.currentTimeMillis() - time) + " ms.");
+		}
+	}
+}
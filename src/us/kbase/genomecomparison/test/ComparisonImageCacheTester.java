@@ -0,0 +1,121 @@
+package us.kbase.genomecomparison.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import us.kbase.common.service.Tuple3;
+import us.kbase.genomecomparison.ComparisonHits;
+import us.kbase.genomecomparison.ComparisonImage;
+import us.kbase.genomecomparison.ComparisonImageCache;
+import us.kbase.genomecomparison.ProteomeComparison;
+
+/**
+ * Simulates panning of dot plot of synthetic comparison (loading of which
+ * takes given time like download from workspace) through ComparisonImageCache
+ * and prints hit rates and render latency. Usage: [<genes> [<load_ms>]].
+ */
+public class ComparisonImageCacheTester {
+	private static final int TILE = 300;
+	private static final double SP = 100;
+
+	public static void main(String[] args) throws Exception {
+		int genes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		final long loadMs = args.length > 1 ? Long.parseLong(args[1]) : 500;
+		final ProteomeComparison cmp = generate(genes, new Random(1));
+		final AtomicInteger loads = new AtomicInteger();
+		final Callable<ComparisonHits> loader = new Callable<ComparisonHits>() {
+			@Override
+			public ComparisonHits call() throws Exception {
+				loads.incrementAndGet();
+				Thread.sleep(loadMs);
+				return ComparisonHits.fromComparison(cmp);
+			}
+		};
+		final ComparisonImageCache cache = new ComparisonImageCache(64L << 20, 16L << 20);
+		// First screen: a few tiles requested at the same time load comparison once
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<ComparisonHits>> futures = new ArrayList<Future<ComparisonHits>>();
+		for (int i = 0; i < 4; i++)
+			futures.add(pool.submit(new Callable<ComparisonHits>() {
+				@Override
+				public ComparisonHits call() throws Exception {
+					return cache.getComparison("1/2/3", loader);
+				}
+			}));
+		ComparisonHits hits = null;
+		for (Future<ComparisonHits> f : futures) {
+			ComparisonHits h = f.get();
+			if (hits != null && hits != h)
+				throw new IllegalStateException("Different instances of comparison");
+			hits = h;
+		}
+		pool.shutdown();
+		if (loads.get() != 1)
+			throw new IllegalStateException("Comparison was loaded " + loads.get() + " times");
+		// Panning right and down by tiles with a pause between screens
+		int step = (int)(TILE * 100 / SP);
+		long time = System.currentTimeMillis();
+		int requests = 0;
+		for (int y = 0; y < genes; y += step) {
+			for (int x = 0; x < genes; x += step) {
+				hits = cache.getComparison("1/2/3", loader);
+				String key = "1/2/3/" + x + "/" + y + "/" + TILE + "/" + SP;
+				cache.getTile(key, renderer(hits, x, y));
+				requests++;
+				int nx = x + step;
+				if (nx < genes)
+					cache.prefetchTile("1/2/3/" + nx + "/" + y + "/" + TILE + "/" + SP, renderer(hits, nx, y));
+				Thread.sleep(20);
+			}
+		}
+		time = System.currentTimeMillis() - time;
+		System.out.println("Requests: " + requests + ", time: " + time + " ms, loads: " + loads.get());
+		System.out.println(cache.getReport());
+		if (cache.getTileHits() == 0)
+			throw new IllegalStateException("Prefetched tiles were not used");
+		// Tile repeated after panning back is taken from cache
+		long tileHits = cache.getTileHits();
+		cache.getTile("1/2/3/0/0/" + TILE + "/" + SP, renderer(hits, 0, 0));
+		if (cache.getTileHits() != tileHits + 1)
+			throw new IllegalStateException("Tile is not cached");
+		System.out.println("All checks passed");
+	}
+
+	private static Callable<byte[]> renderer(final ComparisonHits hits, final int x, final int y) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				ImageIO.write(ComparisonImage.draw(hits, x, y, TILE, TILE, SP), "PNG", baos);
+				return baos.toByteArray();
+			}
+		};
+	}
+
+	static ProteomeComparison generate(int genes, Random rnd) {
+		List<String> names = new ArrayList<String>();
+		List<List<Tuple3<Long, Long, Long>>> data1 = new ArrayList<List<Tuple3<Long, Long, Long>>>();
+		for (int i = 0; i < genes; i++) {
+			names.add("gene" + i);
+			List<Tuple3<Long, Long, Long>> list = new ArrayList<Tuple3<Long, Long, Long>>();
+			int count = rnd.nextInt(4);
+			for (int k = 0; k < count; k++) {
+				long j = k == 0 ? i : rnd.nextInt(genes);
+				list.add(new Tuple3<Long, Long, Long>().withE1(j).withE2(100L + rnd.nextInt(500))
+						.withE3(k == 0 ? 100L : (90L + rnd.nextInt(10))));
+			}
+			data1.add(list);
+		}
+		return new ProteomeComparison().withProteome1names(names).withProteome2names(names)
+				.withData1(data1);
+	}
+}
@@ -0,0 +1,170 @@
+package us.kbase.genomecomparison.test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import us.kbase.common.service.Tuple11;
+import us.kbase.common.service.UObject;
+import us.kbase.genomecomparison.ComparisonHits;
+import us.kbase.genomecomparison.ComparisonImage;
+import us.kbase.genomecomparison.ComparisonSliceLoader;
+import us.kbase.genomecomparison.ObjectStorage;
+import us.kbase.genomecomparison.PackedHits;
+import us.kbase.genomecomparison.ProteomeComparison;
+import us.kbase.workspace.ObjectData;
+import us.kbase.workspace.ObjectIdentity;
+import us.kbase.workspace.SaveObjectsParams;
+import us.kbase.workspace.SubObjectIdentity;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Renders zoomed-in dot plot tiles of synthetic comparison kept in in-memory
+ * workspace from parts loaded by ComparisonSliceLoader, checks that they are
+ * the same as tiles rendered from whole comparison and prints how many bytes
+ * of object subsets are transferred while panning. Usage: [<genes>].
+ */
+public class ComparisonSliceLoaderTester {
+	private static final int TILE = 300;
+	private static final double SP = 100;
+
+	public static void main(String[] args) throws Exception {
+		int genes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		ProteomeComparison cmp = ComparisonImageCacheTester.generate(genes, new Random(1));
+		ComparisonHits all = ComparisonHits.fromComparison(cmp);
+		InMemoryStorage storage = new InMemoryStorage();
+		storage.put("1/1/1", cmp);
+		storage.put("1/2/1", PackedHits.pack(ComparisonImageCacheTester.generate(genes, new Random(1))));
+		System.out.println("Genes: " + genes + ", whole object: " + storage.getSize("1/1/1") +
+				" bytes, with packed hits: " + storage.getSize("1/2/1") + " bytes");
+		ComparisonSliceLoader loader = new ComparisonSliceLoader(storage, 16L << 20);
+		int genesInTile = (int)(TILE * 100 / SP) + 1;
+		// First tile: header (gene names) and blocks of visible genes
+		int x = genes / 2;
+		int y = genes / 2;
+		check(all, loader.loadRange(null, "1/1/1", x, x + genesInTile), x, y);
+		System.out.println("First tile: " + storage.getTransferred() + " bytes in " +
+				loader.getSubsetRequests() + " requests");
+		// Panning right and up by a third of tile
+		long transferred = storage.getTransferred();
+		int steps = 30;
+		for (int i = 0; i < steps; i++) {
+			x += genesInTile / 3;
+			y = Math.max(0, y - genesInTile / 3);
+			check(all, loader.loadRange(null, "1/1/1", x, x + genesInTile), x, y);
+		}
+		transferred = storage.getTransferred() - transferred;
+		System.out.println("Panning: " + (transferred / steps) + " bytes per tile, blocks(hit/miss)=" +
+				loader.getBlockHits() + "/" + loader.getBlockMisses());
+		if (loader.getBlockHits() == 0)
+			throw new IllegalStateException("Loaded blocks are not reused");
+		// Comparison with packed hits is loaded at once
+		long requests = loader.getSubsetRequests();
+		for (int i = 0; i < 3; i++)
+			check(all, loader.loadRange(null, "1/2/1", x, x + genesInTile), x, y);
+		if (loader.getSubsetRequests() != requests + 1)
+			throw new IllegalStateException("Comparison with packed hits is loaded " +
+					(loader.getSubsetRequests() - requests) + " times");
+		// Zoomed-out view needs all hits without data2
+		check(all, loader.loadAll(null, "1/1/1"), 0, 0);
+		System.out.println(loader.getReport());
+		System.out.println("All checks passed");
+	}
+
+	private static void check(ComparisonHits all, ComparisonHits part, int x, int y) {
+		BufferedImage expected = ComparisonImage.draw(all, x, y, TILE, TILE, SP);
+		BufferedImage actual = ComparisonImage.draw(part, x, y, TILE, TILE, SP);
+		for (int i = 0; i < expected.getWidth(); i++)
+			for (int j = 0; j < expected.getHeight(); j++)
+				if (expected.getRGB(i, j) != actual.getRGB(i, j))
+					throw new IllegalStateException("Tile (" + x + ", " + y + ") is different at (" +
+							i + ", " + j + ")");
+	}
+
+	/**
+	 * Workspace keeping objects as JSON trees, subsets are selected in the same
+	 * way as get_object_subset does (absent fields are skipped, selected
+	 * elements of arrays go in order of their positions).
+	 */
+	private static class InMemoryStorage implements ObjectStorage {
+		private final ObjectMapper mapper = new ObjectMapper();
+		private final Map<String, ObjectNode> objects = new HashMap<String, ObjectNode>();
+		private long transferred = 0;
+
+		void put(String ref, Object data) {
+			objects.put(ref, (ObjectNode)mapper.valueToTree(data));
+		}
+
+		long getSize(String ref) throws Exception {
+			return mapper.writeValueAsBytes(objects.get(ref)).length;
+		}
+
+		long getTransferred() {
+			return transferred;
+		}
+
+		@Override
+		public List<ObjectData> getObjectSubset(String authToken,
+				List<SubObjectIdentity> subObjectIds) throws Exception {
+			List<ObjectData> ret = new ArrayList<ObjectData>();
+			for (SubObjectIdentity id : subObjectIds) {
+				ObjectNode obj = objects.get(id.getRef());
+				ObjectNode part = mapper.createObjectNode();
+				Map<String, TreeSet<Integer>> indexes = new LinkedHashMap<String, TreeSet<Integer>>();
+				for (String path : id.getIncluded()) {
+					String[] parts = path.substring(1).split("/");
+					if (obj.get(parts[0]) == null)
+						continue;
+					if (parts.length == 1) {
+						part.set(parts[0], obj.get(parts[0]));
+					} else {
+						if (!indexes.containsKey(parts[0]))
+							indexes.put(parts[0], new TreeSet<Integer>());
+						indexes.get(parts[0]).add(Integer.parseInt(parts[1]));
+					}
+				}
+				for (Map.Entry<String, TreeSet<Integer>> entry : indexes.entrySet()) {
+					ArrayNode array = part.putArray(entry.getKey());
+					for (int index : entry.getValue())
+						array.add(obj.get(entry.getKey()).get(index));
+				}
+				transferred += mapper.writeValueAsBytes(part).length;
+				ret.add(new ObjectData().withData(new UObject(part)));
+			}
+			return ret;
+		}
+
+		@Override
+		public List<ObjectData> getObjects(String authToken,
+				List<ObjectIdentity> objectIds) throws Exception {
+			List<ObjectData> ret = new ArrayList<ObjectData>();
+			for (ObjectIdentity id : objectIds) {
+				JsonNode obj = objects.get(id.getRef());
+				transferred += mapper.writeValueAsBytes(obj).length;
+				ret.add(new ObjectData().withData(new UObject(obj)));
+			}
+			return ret;
+		}
+
+		@Override
+		public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> getObjectInfo(
+				String authToken, List<ObjectIdentity> objectIds, Long includeMetadata) throws Exception {
+			throw new IllegalStateException("Unsupported method");
+		}
+
+		@Override
+		public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> saveObjects(
+				String authToken, SaveObjectsParams params) throws Exception {
+			throw new IllegalStateException("Unsupported method");
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package us.kbase.genomecomparison.test;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import us.kbase.genomecomparison.ComparisonHits;
+import us.kbase.genomecomparison.ComparisonImage;
+import us.kbase.genomecomparison.ProteomeComparison;
+
+/**
+ * Compares time of full-view and zoomed dot plot renders of synthetic
+ * comparison done by ComparisonImage (hit index with summaries, palette,
+ * raster writes) with the old way (scan of all hits of visible genes, Color
+ * object and drawLine per point). Usage: [<genes> [<iterations>]].
+ */
+public class DotPlotRenderBenchmark {
+	private static final int WARMUP = 5;
+
+	public static void main(String[] args) throws Exception {
+		int genes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		ProteomeComparison cmp = ComparisonImageCacheTester.generate(genes, new Random(1));
+		long time = System.currentTimeMillis();
+		ComparisonHits hits = ComparisonHits.fromComparison(cmp);
+		System.out.println("Genes: " + genes + ", index build time: " +
+				(System.currentTimeMillis() - time) + " ms, summary levels: " + hits.getSummaryCount() +
+				", memory: " + hits.getMemorySize() + " bytes");
+		int fullW = 1000;
+		double fullSp = fullW * 100.0 / genes;
+		run("full view", hits, 0, 0, fullW, fullSp, iterations);
+		run("quarter view", hits, genes / 4, genes / 4, fullW, fullSp / 2, iterations);
+		run("zoomed", hits, genes / 2, genes / 2, 300, 100, iterations);
+		run("zoomed in", hits, genes / 2, genes / 2, 300, 500, iterations);
+	}
+
+	private static void run(String name, ComparisonHits hits, int x, int y, int w, double sp,
+			int iterations) {
+		for (int i = 0; i < WARMUP; i++) {
+			ComparisonImage.draw(hits, x, y, w, w, sp);
+			drawOld(hits, x, y, w, w, sp);
+		}
+		long time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			ComparisonImage.draw(hits, x, y, w, w, sp);
+		long newTime = System.nanoTime() - time;
+		time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			drawOld(hits, x, y, w, w, sp);
+		long oldTime = System.nanoTime() - time;
+		System.out.println(name + " (w=" + w + ", sp=" + sp + "): indexed " +
+				(newTime / iterations / 1000) + " us, old " + (oldTime / iterations / 1000) + " us");
+	}
+
+	/**
+	 * Drawing as it was done before hit index.
+	 */
+	private static BufferedImage drawOld(ComparisonHits cmp, int i0, int j0, int w0, int h0, double sp) {
+		int xShift = 35;
+		int yShift = 15;
+		BufferedImage ret = new BufferedImage(w0 + xShift, h0 + yShift, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D gr = (Graphics2D)ret.getGraphics();
+		gr.setColor(Color.WHITE);
+		gr.fillRect(0, 0, w0 + xShift, h0 + yShift);
+		int imax = cmp.getSize1();
+		if ((imax - 1 - i0) * sp / 100.0 > w0)
+			imax = Math.min(cmp.getSize1(), (int)(w0 * 100.0 / sp) + i0 + 1);
+		int xmax = Math.min(w0, (int)((imax - i0 - 1) * sp / 100.0) + 1);
+		int jmax = cmp.getSize2();
+		if ((jmax - 1 - j0) * sp / 100.0 > h0)
+			jmax = Math.min(cmp.getSize2(), (int)(h0 * 100.0 / sp) + j0 + 1);
+		int ymax = Math.min(h0, (int)((jmax - j0 - 1) * sp / 100.0) + 1);
+		gr.setColor(new Color(0, 75, 75));
+		gr.fillRect(xShift, 0, xmax, ymax);
+		for (int i = i0; i < imax; i++) {
+			int x = (int)((i - i0) * sp / 100.0);
+			for (int pos = cmp.getHitStart(i); pos < cmp.getHitEnd(i); pos++) {
+				int j = cmp.getTarget(pos);
+				if (j < j0 || j >= jmax)
+					continue;
+				int y = ymax - 1 - (int)((j - j0) * sp / 100.0);
+				int gbPart = Math.min(255, Math.max(0, (int)(255.0 * (cmp.getPercent(pos) - 90.0) / 10.0)));
+				gr.setColor(new Color(255, 255 - (255 - gbPart) / 2, gbPart));
+				gr.drawLine(x + xShift, y, x + xShift, y);
+			}
+		}
+		gr.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		gr.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		gr.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+		gr.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+		gr.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		gr.setColor(Color.BLACK);
+		FontMetrics fm = gr.getFontMetrics();
+		gr.drawString("" + (j0 + 1), xShift - 2 - fm.stringWidth("" + (j0 + 1)), ymax - 5);
+		gr.drawString("" + jmax, xShift - 2 - fm.stringWidth("" + jmax), 12);
+		gr.drawString("" + (i0 + 1), xShift, ymax + 12);
+		gr.drawString("" + imax, xmax + xShift - 1 - fm.stringWidth("" + imax), ymax + 12);
+		gr.dispose();
+		return ret;
+	}
+}
@@ -0,0 +1,203 @@
+package us.kbase.genomecomparison.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import us.kbase.genomecomparison.gbk.GbkByteParser;
+import us.kbase.genomecomparison.gbk.GbkCallback;
+import us.kbase.genomecomparison.gbk.GbkLocation;
+import us.kbase.genomecomparison.gbk.GbkParser;
+import us.kbase.genomecomparison.gbk.GbkParsingParams;
+import us.kbase.genomecomparison.gbk.GbkQualifier;
+import us.kbase.genomecomparison.gbk.GbkSubheader;
+
+/**
+ * Checks that GbkByteParser produces the same callbacks as GbkParser (also with
+ * qualifier whitelist and with lazy qualifiers) and compares parsing time of both
+ * (after warm-up) and memory allocated by parsing with and without whitelist.
+ * Usage: [<rounds> [<gbk_file>...]], synthetic GBK-file of 100 MB is generated
+ * if no files are given (together with small file with CRLF line ends where CR
+ * is the last byte of block read by GbkByteParser).
+ */
+public class GbkParserComparison {
+	private static final int PARSER_BLOCK_SIZE = 1 << 20;  // size of block of GbkByteParser
+	private static final Set<String> QUALIFIER_WHITELIST = new HashSet<String>(
+			Arrays.asList("locus_tag", "translation", "note", "product", "gene", "protein_id"));
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		List<File> files = new ArrayList<File>();
+		List<File> generated = new ArrayList<File>();
+		if (args.length > 1) {
+			for (int i = 1; i < args.length; i++)
+				files.add(new File(args[i]));
+		} else {
+			File tempDir = new File("temp");
+			if (!tempDir.exists())
+				tempDir.mkdir();
+			File f = File.createTempFile("comparison_", ".gbk", tempDir);
+			generated.add(f);
+			GbkUploadBenchmark.generateGbk(f, 100L * 1024 * 1024, 1, "CONTIG");
+			files.add(f);
+			File crlf = File.createTempFile("comparison_crlf_", ".gbk", tempDir);
+			generated.add(crlf);
+			generateCrLfGbk(crlf, tempDir);
+			files.add(crlf);
+		}
+		try {
+			for (File f : files) {
+				List<String> expected = new ArrayList<String>();
+				parseOld(f, new GbkParsingParams(false), new LoggingCallback(expected));
+				List<String> actual = new ArrayList<String>();
+				GbkByteParser.parse(f, new GbkParsingParams(false), new LoggingCallback(actual));
+				compare(f, expected, actual);
+				List<String> lazy = new ArrayList<String>();
+				GbkByteParser.parse(f, new GbkParsingParams(false, null, new HashSet<String>(), true),
+						new LoggingCallback(lazy));
+				compare(f, expected, lazy);
+				GbkParsingParams whitelist = new GbkParsingParams(false, null, QUALIFIER_WHITELIST, false);
+				expected.clear();
+				parseOld(f, whitelist, new LoggingCallback(expected));
+				actual.clear();
+				GbkByteParser.parse(f, whitelist, new LoggingCallback(actual));
+				compare(f, expected, actual);
+				System.out.println(f.getName() + ": callbacks are identical (" + expected.size() + ")");
+				System.out.println(String.format("Allocated by GbkByteParser: %d MB, with whitelist: " +
+						"%d MB, with lazy qualifiers: %d MB", 
+						allocatedBytes(f, new GbkParsingParams(false)) >> 20,
+						allocatedBytes(f, whitelist) >> 20,
+						allocatedBytes(f, new GbkParsingParams(false, null, QUALIFIER_WHITELIST, true)) >> 20));
+				long oldTime = 0;
+				long newTime = 0;
+				for (int r = 0; r <= rounds; r++) {
+					long time = System.nanoTime();
+					parseOld(f, new GbkParsingParams(false), new LoggingCallback(null));
+					long t1 = System.nanoTime() - time;
+					time = System.nanoTime();
+					GbkByteParser.parse(f, new GbkParsingParams(false), new LoggingCallback(null));
+					long t2 = System.nanoTime() - time;
+					if (r > 0) {  // first round is warm-up
+						oldTime += t1;
+						newTime += t2;
+					}
+				}
+				rounds = Math.max(1, rounds);
+				double mb = f.length() / 1024.0 / 1024.0;
+				System.out.println(String.format("GbkParser: %d ms (%.1f MB/s), GbkByteParser: %d ms (%.1f MB/s)",
+						oldTime / rounds / 1000000, mb * rounds * 1e9 / oldTime,
+						newTime / rounds / 1000000, mb * rounds * 1e9 / newTime));
+			}
+		} finally {
+			for (File f : generated)
+				f.delete();
+		}
+	}
+
+	/**
+	 * Generates GBK-file with CRLF line ends where CR of one of sequence lines
+	 * is the last byte of the first block, so LF starts the next block.
+	 */
+	private static void generateCrLfGbk(File f, File tempDir) throws Exception {
+		File lf = File.createTempFile("comparison_lf_", ".gbk", tempDir);
+		StringBuilder text = new StringBuilder();
+		try {
+			GbkUploadBenchmark.generateGbk(lf, PARSER_BLOCK_SIZE, 1, "CONTIG");
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(lf)));
+			try {
+				for (String line = br.readLine(); line != null; line = br.readLine())
+					text.append(line).append("\r\n");
+			} finally {
+				br.close();
+			}
+		} finally {
+			lf.delete();
+		}
+		// Sequence line ending before the end of block is padded by spaces
+		int cr = text.lastIndexOf("\r", PARSER_BLOCK_SIZE - 1);
+		for (int i = cr; i < PARSER_BLOCK_SIZE - 1; i++)
+			text.insert(cr, ' ');
+		OutputStream os = new FileOutputStream(f);
+		try {
+			os.write(text.toString().getBytes("ISO-8859-1"));
+		} finally {
+			os.close();
+		}
+	}
+
+	private static void compare(File f, List<String> expected, List<String> actual) {
+		for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+			String exp = i < expected.size() ? expected.get(i) : null;
+			String act = i < actual.size() ? actual.get(i) : null;
+			if (exp == null || !exp.equals(act))
+				throw new IllegalStateException("Callbacks differ for file " + f + " at position " +
+						i + ":\nExpected: " + exp + "\nActual:   " + act);
+		}
+	}
+
+	private static long allocatedBytes(File f, GbkParsingParams params) throws Exception {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long ret = bean.getThreadAllocatedBytes(threadId);
+		GbkByteParser.parse(f, params, new LoggingCallback(null));
+		return bean.getThreadAllocatedBytes(threadId) - ret;
+	}
+
+	private static void parseOld(File f, GbkParsingParams params, GbkCallback cb) throws Exception {
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f)));
+		try {
+			GbkParser.parse(br, params, cb);
+		} finally {
+			br.close();
+		}
+	}
+
+	private static class LoggingCallback implements GbkCallback {
+		private final List<String> log;
+
+		LoggingCallback(List<String> log) {
+			this.log = log;
+		}
+
+		@Override
+		public void setGenome(String contigName, String genomeName, int taxId, String plasmid) throws Exception {
+			if (log != null)
+				log.add("setGenome: contigName=" + contigName + ", genomeName=" + genomeName +
+						", taxId=" + taxId + ", plasmid=" + plasmid);
+		}
+
+		@Override
+		public void addHeader(String contigName, String headerType, String value,
+				List<GbkSubheader> items) throws Exception {
+			if (log != null)
+				log.add("addHeader: contigName=" + contigName + ", type=" + headerType +
+						", value=" + value + ", subheader=" + items);
+		}
+
+		@Override
+		public void addFeature(String contigName, String featureType, int strand, int start,
+				int stop, List<GbkLocation> locations, List<GbkQualifier> props) throws Exception {
+			if (log != null)
+				log.add("addFeature: contigName=" + contigName + ", type=" + featureType + ", " +
+						"start=" + start + ", stop=" + stop + ", strand=" + strand +
+						", locations=" + locations + ", props=" + props);
+		}
+
+		@Override
+		public void addSeqPart(String contigName, int seqPartIndex, String seqPart, int commonLen) {
+			if (log != null)
+				log.add("addSeqPart: contigName=" + contigName + ", seqPartIndex=" + seqPartIndex +
+						", seqPart=" + seqPart.length() + ", hash=" + seqPart.hashCode() +
+						", commonLen=" + commonLen);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package us.kbase.genomecomparison.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import us.kbase.common.service.Tuple11;
+import us.kbase.genomecomparison.gbk.GbkCallback;
+import us.kbase.genomecomparison.gbk.GbkLocation;
+import us.kbase.genomecomparison.gbk.GbkParser;
+import us.kbase.genomecomparison.gbk.GbkParsingParams;
+import us.kbase.genomecomparison.gbk.GbkQualifier;
+import us.kbase.genomecomparison.gbk.GbkSubheader;
+import us.kbase.genomecomparison.gbk.GbkUploader;
+import us.kbase.genomecomparison.gbk.ObjectStorage;
+import us.kbase.genomecomparison.gbk.SequenceBuilder;
+import us.kbase.workspace.ObjectData;
+import us.kbase.workspace.ObjectIdentity;
+import us.kbase.workspace.SaveObjectsParams;
+
+/**
+ * Measures time of contig assembly during parsing of large GBK-file with old
+ * approach (string concatenation of every sequence part) and with SequenceBuilder,
+ * and time of whole upload (with storage doing nothing). Usage: [<size_mb>
+ * [<contig_count> [<temp_dir> [<file_count>]]]], default is one contig of 100 MB.
+ * In case file_count is more than 1 data is split into given number of files
+ * and time of upload is measured for different numbers of parsing threads.
+ */
+public class GbkUploadBenchmark {
+	public static void main(String[] args) throws Exception {
+		int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int contigCount = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		File tempDir = new File(args.length > 2 ? args[2] : "temp");
+		if (!tempDir.exists())
+			tempDir.mkdir();
+		int fileCount = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		if (fileCount > 1) {
+			measureParallelUpload(sizeMb, contigCount, tempDir, fileCount);
+			return;
+		}
+		File gbk = File.createTempFile("benchmark_", ".gbk", tempDir);
+		try {
+			generateGbk(gbk, (long)sizeMb * 1024 * 1024 / contigCount, contigCount, "CONTIG");
+			System.out.println("GBK-file size: " + gbk.length() + " bytes, contigs: " + contigCount);
+			long time = System.currentTimeMillis();
+			final Map<String, String> concat = new LinkedHashMap<String, String>();
+			parse(gbk, new SeqCallback() {
+				@Override
+				public void addSeqPart(String contigName, int seqPartIndex, String seqPart,
+						int commonLen) throws Exception {
+					String seq = concat.get(contigName);
+					concat.put(contigName, seq == null ? seqPart : (seq + seqPart));
+				}
+			});
+			long len1 = 0;
+			for (String seq : concat.values())
+				len1 += seq.length();
+			concat.clear();
+			System.out.println("String concatenation: " + len1 + " bases, time: " +
+					(System.currentTimeMillis() - time) + " ms.");
+			time = System.currentTimeMillis();
+			final Map<String, SequenceBuilder> builders = new LinkedHashMap<String, SequenceBuilder>();
+			parse(gbk, new SeqCallback() {
+				@Override
+				public void addSeqPart(String contigName, int seqPartIndex, String seqPart,
+						int commonLen) throws Exception {
+					SequenceBuilder seq = builders.get(contigName);
+					if (seq == null) {
+						seq = new SequenceBuilder();
+						builders.put(contigName, seq);
+					}
+					seq.append(seqPart);
+				}
+			});
+			long len2 = 0;
+			for (SequenceBuilder seq : builders.values()) {
+				len2 += seq.toString().length();
+				seq.close();
+			}
+			builders.clear();
+			System.out.println("SequenceBuilder: " + len2 + " bases, time: " +
+					(System.currentTimeMillis() - time) + " ms.");
+			time = System.currentTimeMillis();
+			GbkUploader.uploadGbk(Arrays.asList(gbk), new EmptyStorage(), "ws", "benchmark", "token", tempDir);
+			System.out.println("Whole upload: time: " + (System.currentTimeMillis() - time) + " ms.");
+		} finally {
+			gbk.delete();
+		}
+	}
+
+	private static void measureParallelUpload(int sizeMb, int contigCount, File tempDir,
+			int fileCount) throws Exception {
+		List<File> files = new ArrayList<File>();
+		try {
+			for (int i = 0; i < fileCount; i++) {
+				File gbk = File.createTempFile("benchmark_", ".gbk", tempDir);
+				files.add(gbk);
+				generateGbk(gbk, (long)sizeMb * 1024 * 1024 / fileCount / contigCount, contigCount,
+						"FILE" + (i + 1) + "_CONTIG");
+			}
+			System.out.println("GBK-files: " + fileCount + ", contigs per file: " + contigCount +
+					", CPUs: " + Runtime.getRuntime().availableProcessors());
+			for (int threads = 1; threads <= fileCount; threads *= 2) {
+				long time = System.currentTimeMillis();
+				GbkUploader.uploadGbk(files, new EmptyStorage(), "ws", "benchmark", "token", tempDir, threads);
+				System.out.println("Threads: " + threads + ", time: " + (System.currentTimeMillis() - time) + " ms.");
+			}
+		} finally {
+			for (File f : files)
+				f.delete();
+		}
+	}
+
+	private static void parse(File f, GbkCallback cb) throws Exception {
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f)));
+		try {
+			GbkParser.parse(br, new GbkParsingParams(true), cb);
+		} finally {
+			br.close();
+		}
+	}
+
+	static void generateGbk(File f, long contigLen, int contigCount, String contigPrefix) throws Exception {
+		Random rnd = new Random(1);
+		char[] bases = {'a', 'c', 'g', 't'};
+		PrintWriter pw = new PrintWriter(new FileWriter(f));
+		for (int c = 0; c < contigCount; c++) {
+			String name = contigPrefix + (c + 1);
+			pw.println("LOCUS       " + name + "  " + contigLen + " bp    DNA     circular BCT 01-JAN-2014");
+			pw.println("SOURCE      Benchmark organism");
+			pw.println("  ORGANISM  Benchmark organism");
+			pw.println("            Bacteria.");
+			pw.println("FEATURES             Location/Qualifiers");
+			pw.println("     source          1.." + contigLen);
+			pw.println("                     /organism=\"Benchmark organism\"");
+			pw.println("     CDS             1..300");
+			pw.println("                     /locus_tag=\"" + name + "_0001\"");
+			pw.println("     rRNA            complement(301..1800)");
+			pw.println("                     /product=\"16S ribosomal RNA\"");
+			pw.println("ORIGIN");
+			StringBuilder line = new StringBuilder();
+			for (long pos = 0; pos < contigLen; pos += 60) {
+				line.setLength(0);
+				String num = String.valueOf(pos + 1);
+				for (int i = num.length(); i < 9; i++)
+					line.append(' ');
+				line.append(num);
+				for (int i = 0; i < 60 && pos + i < contigLen; i++) {
+					if (i % 10 == 0)
+						line.append(' ');
+					line.append(bases[rnd.nextInt(4)]);
+				}
+				pw.println(line);
+			}
+			pw.println("//");
+		}
+		pw.close();
+	}
+
+	private static class EmptyStorage implements ObjectStorage {
+		@Override
+		public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> saveObjects(
+				String authToken, SaveObjectsParams params) throws Exception {
+			return new ArrayList<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>>();
+		}
+		@Override
+		public List<ObjectData> getObjects(String authToken,
+				List<ObjectIdentity> objectIds) throws Exception {
+			throw new IllegalStateException("Unsupported method");
+		}
+	}
+
+	private static abstract class SeqCallback implements GbkCallback {
+		@Override
+		public void setGenome(String contigName, String genomeName, int taxId,
+				String plasmid) throws Exception {
+		}
+		@Override
+		public void addHeader(String contigName, String headerType, String value,
+				List<GbkSubheader> items) throws Exception {
+		}
+		@Override
+		public void addFeature(String contigName, String featureType, int strand,
+				int start, int stop, List<GbkLocation> locations,
+				List<GbkQualifier> props) throws Exception {
+		}
+	}
+}
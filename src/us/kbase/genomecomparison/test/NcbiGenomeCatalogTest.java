@@ -0,0 +1,55 @@
+package us.kbase.genomecomparison.test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import us.kbase.genomecomparison.NcbiGenomeCatalog;
+import us.kbase.genomecomparison.SearchNcbiGenomeNamesResult;
+
+public class NcbiGenomeCatalogTest {
+
+	@Test
+	public void testSearch() throws Exception {
+		Map<String, List<String>> genomeToPaths = new LinkedHashMap<String, List<String>>();
+		for (String name : Arrays.asList("Escherichia coli K-12", "Shigella sp. (escherichia)", 
+				"Acetobacter pasteurianus 386B", "escherichia albertii", "Bacillus subtilis"))
+			genomeToPaths.put(name, Arrays.asList(name.replace(' ', '_') + "/NC_000001.gbk"));
+		NcbiGenomeCatalog catalog = new NcbiGenomeCatalog(genomeToPaths);
+		Assert.assertEquals(Arrays.asList("Escherichia coli K-12/NC_000001.gbk".replace(' ', '_')), 
+				catalog.getPaths("Escherichia coli K-12"));
+		Assert.assertNull(catalog.getPaths("Unknown"));
+		Assert.assertEquals(5, catalog.getNames().size());
+		Assert.assertEquals("Escherichia coli K-12", catalog.getNames().get(0));
+		SearchNcbiGenomeNamesResult res = catalog.search("ESCHER", 0, 100);
+		Assert.assertEquals(3L, (long)res.getTotal());
+		Assert.assertEquals(Arrays.asList("escherichia albertii", "Escherichia coli K-12", 
+				"Shigella sp. (escherichia)"), res.getGenomeNames());
+		res = catalog.search("escher", 1, 1);
+		Assert.assertEquals(3L, (long)res.getTotal());
+		Assert.assertEquals(Arrays.asList("Escherichia coli K-12"), res.getGenomeNames());
+		res = catalog.search("escher", 2, 10);
+		Assert.assertEquals(Arrays.asList("Shigella sp. (escherichia)"), res.getGenomeNames());
+		res = catalog.search("", 3, 10);
+		Assert.assertEquals(5L, (long)res.getTotal());
+		Assert.assertEquals(Arrays.asList("Escherichia coli K-12", "Shigella sp. (escherichia)"), 
+				res.getGenomeNames());
+		res = catalog.search("xyz", 0, 10);
+		Assert.assertEquals(0L, (long)res.getTotal());
+		Assert.assertEquals(0, res.getGenomeNames().size());
+	}
+
+	@Test
+	public void testResource() throws Exception {
+		NcbiGenomeCatalog catalog = NcbiGenomeCatalog.getInstance();
+		Assert.assertSame(catalog, NcbiGenomeCatalog.getInstance());
+		SearchNcbiGenomeNamesResult res = catalog.search("acaryochloris marina", 0, 10);
+		Assert.assertEquals(Arrays.asList("Acaryochloris marina MBIC11017"), res.getGenomeNames());
+		Assert.assertNotNull(catalog.getPaths("Acaryochloris marina MBIC11017"));
+	}
+}
@@ -0,0 +1,185 @@
+package us.kbase.genomecomparison.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import us.kbase.genomecomparison.NcbiMirrorCache;
+
+/**
+ * Checks NCBI mirror cache against local stand-in of NCBI server (HTTP server
+ * supporting ranges, slow enough to see parallel download, and breaking the
+ * first response for every file in the middle) and against file: URL (no
+ * ranges). Usage: [<file_count> [<file_size_kb> [<temp_dir>]]].
+ */
+public class NcbiMirrorCacheTester {
+	private static final int DELAY_MS = 200;
+
+	public static void main(String[] args) throws Exception {
+		int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int fileSizeKb = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+		File tempDir = new File(args.length > 2 ? args[2] : "temp");
+		File dir = new File(tempDir, "ncbi_tester_" + System.currentTimeMillis());
+		final File remoteDir = new File(dir, "remote");
+		List<String> paths = new ArrayList<String>();
+		Random rnd = new Random(1);
+		for (int i = 0; i < fileCount; i++) {
+			String path = "Genome_uid" + i + "/NC_00000" + i + ".gbk";
+			paths.add(path);
+			File f = new File(remoteDir, path);
+			f.getParentFile().mkdirs();
+			byte[] data = new byte[fileSizeKb * 1024];
+			rnd.nextBytes(data);
+			OutputStream os = new FileOutputStream(f);
+			os.write(data);
+			os.close();
+		}
+		final List<String> brokenOnce = new ArrayList<String>();
+		final int[] requests = {0};
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exch) throws IOException {
+				String path = exch.getRequestURI().getPath().substring(1);
+				File f = new File(remoteDir, path);
+				boolean breakIt;
+				synchronized (requests) {
+					requests[0]++;
+					breakIt = !brokenOnce.contains(path);
+					if (breakIt)
+						brokenOnce.add(path);
+				}
+				try {
+					Thread.sleep(DELAY_MS);
+				} catch (InterruptedException ignore) {}
+				if (!f.exists()) {
+					exch.sendResponseHeaders(404, -1);
+					exch.close();
+					return;
+				}
+				long start = 0;
+				String range = exch.getRequestHeaders().getFirst("Range");
+				if (range != null)
+					start = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+				long len = f.length() - start;
+				if (range != null)
+					exch.getResponseHeaders().add("Content-Range", "bytes " + start + "-" +
+							(f.length() - 1) + "/" + f.length());
+				exch.sendResponseHeaders(range != null ? 206 : 200, len);
+				RandomAccessFile raf = new RandomAccessFile(f, "r");
+				OutputStream os = exch.getResponseBody();
+				try {
+					raf.seek(start);
+					byte[] buf = new byte[(int)len];
+					raf.readFully(buf);
+					os.write(buf, 0, breakIt ? buf.length / 2 : buf.length);
+					os.flush();
+				} finally {
+					raf.close();
+				}
+				// Broken response is closed before all declared bytes are sent
+				exch.close();
+			}
+		});
+		server.start();
+		try {
+			String url = "http://localhost:" + server.getAddress().getPort() + "/";
+			NcbiMirrorCache cache = new NcbiMirrorCache(new File(dir, "http_cache"), url,
+					(long)fileCount * fileSizeKb * 1024, fileCount);
+			long time = System.currentTimeMillis();
+			List<File> files = cache.acquire(paths);
+			time = System.currentTimeMillis() - time;
+			cache.release(paths);
+			check(remoteDir, paths, files);
+			check(cache.getMisses() == fileCount && cache.getHits() == 0, "first import misses");
+			check(cache.getDownloadedBytes() == (long)fileCount * fileSizeKb * 1024,
+					"downloaded bytes after resume: " + cache.getDownloadedBytes());
+			check(time < (long)DELAY_MS * fileCount * 2, "parallel download time: " + time + " ms");
+			System.out.println("HTTP: " + fileCount + " files downloaded (with resume) in " + time +
+					" ms, requests=" + requests[0]);
+			files = cache.acquire(paths);
+			cache.release(paths);
+			check(remoteDir, paths, files);
+			check(cache.getHits() == fileCount && cache.getMisses() == fileCount, "second import hits");
+			// Cache restored from disk doesn't download anything
+			NcbiMirrorCache cache2 = new NcbiMirrorCache(new File(dir, "http_cache"), url,
+					(long)fileCount * fileSizeKb * 1024, fileCount);
+			cache2.acquire(paths);
+			cache2.release(paths);
+			check(cache2.getHits() == fileCount && cache2.getMisses() == 0, "restored cache hits");
+			// Limit of one file leads to eviction
+			NcbiMirrorCache cache3 = new NcbiMirrorCache(new File(dir, "http_cache"), url,
+					fileSizeKb * 1024, fileCount);
+			cache3.acquire(paths.subList(0, 1));
+			cache3.release(paths.subList(0, 1));
+			check(cache3.getEvictions() == fileCount - 1, "evictions: " + cache3.getEvictions());
+			check(new File(dir, "http_cache/" + paths.get(0)).exists(), "last used file is kept");
+			// Local files (no ranges): partial file is continued by skipping
+			File fileCacheDir = new File(dir, "file_cache");
+			File partial = new File(fileCacheDir, paths.get(0) + ".part");
+			partial.getParentFile().mkdirs();
+			RandomAccessFile raf = new RandomAccessFile(new File(remoteDir, paths.get(0)), "r");
+			byte[] half = new byte[(int)(raf.length() / 2)];
+			raf.readFully(half);
+			raf.close();
+			OutputStream os = new FileOutputStream(partial);
+			os.write(half);
+			os.close();
+			NcbiMirrorCache fileCache = new NcbiMirrorCache(fileCacheDir, remoteDir.toURI().toString(),
+					0, 2);
+			files = fileCache.acquire(paths);
+			check(remoteDir, paths, files);
+			fileCache.release(paths);
+			check(fileCache.getResumes() == 1 && fileCache.getDownloadedBytes() ==
+					(long)fileCount * fileSizeKb * 1024 - half.length, "file resume");
+			check(fileCache.getTotalSize() == 0 && !files.get(0).exists(), "zero size cache is cleaned");
+			System.out.println("All checks passed");
+		} finally {
+			server.stop(0);
+			delete(dir);
+		}
+	}
+
+	private static void check(File remoteDir, List<String> paths, List<File> files) throws IOException {
+		check(files.size() == paths.size(), "file count");
+		for (int i = 0; i < paths.size(); i++)
+			check(Arrays.equals(read(new File(remoteDir, paths.get(i))), read(files.get(i))),
+					"content of " + paths.get(i));
+	}
+
+	private static byte[] read(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			byte[] ret = new byte[(int)raf.length()];
+			raf.readFully(ret);
+			return ret;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new IllegalStateException("Check failed: " + message);
+	}
+
+	private static void delete(File f) {
+		if (f.isDirectory())
+			for (File ch : f.listFiles())
+				delete(ch);
+		f.delete();
+	}
+}
@@ -0,0 +1,137 @@
+package us.kbase.genomecomparison.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import us.kbase.common.service.Tuple3;
+import us.kbase.genomecomparison.ComparisonHits;
+import us.kbase.genomecomparison.HitTable;
+import us.kbase.genomecomparison.PackedHits;
+import us.kbase.genomecomparison.ProteomeComparison;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares size of JSON and load time (JSON parsing plus decoding into
+ * ComparisonHits) of ProteomeComparison stored in usual form and with
+ * packed hits. Comparison is loaded from JSON file (for instance one of
+ * E. coli pairs of TestEcoli exported from workspace) or generated with
+ * sizes of E. coli genomes. Usage: [<comparison.json> [<iterations>]].
+ */
+public class PackedHitsBenchmark {
+	private static final int WARMUP = 3;
+
+	public static void main(String[] args) throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		ProteomeComparison cmp = args.length > 0 && !args[0].equals("-") ?
+				mapper.readValue(new File(args[0]), ProteomeComparison.class) :
+				generateEcoliPair(new Random(1));
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		PackedHits.unpack(cmp);
+		byte[] json = mapper.writeValueAsBytes(cmp);
+		List<List<Tuple3<Long, Long, Long>>> data1 = cmp.getData1();
+		List<List<Tuple3<Long, Long, Long>>> data2 = cmp.getData2();
+		byte[] packedJson = mapper.writeValueAsBytes(PackedHits.pack(cmp));
+		checkRoundTrip(data1, PackedHits.decode(cmp.getData1Packed()).toData());
+		checkRoundTrip(data2, PackedHits.decode(cmp.getData2Packed()).toData());
+		long hits = 0;
+		for (List<Tuple3<Long, Long, Long>> list : data1)
+			hits += list.size();
+		System.out.println("Genes: " + cmp.getProteome1names().size() + " x " +
+				cmp.getProteome2names().size() + ", hits in data1: " + hits);
+		System.out.println("JSON size: usual " + json.length + " bytes, packed " + packedJson.length +
+				" bytes (data1_packed: " + cmp.getData1Packed().length() + ")");
+		for (int i = 0; i < WARMUP; i++) {
+			load(mapper, json);
+			load(mapper, packedJson);
+		}
+		long time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			load(mapper, json);
+		long usualTime = (System.nanoTime() - time) / iterations;
+		time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			load(mapper, packedJson);
+		long packedTime = (System.nanoTime() - time) / iterations;
+		time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			PackedHits.unpack(mapper.readValue(packedJson, ProteomeComparison.class));
+		long unpackTime = (System.nanoTime() - time) / iterations;
+		System.out.println("Load time (JSON + ComparisonHits): usual " + (usualTime / 1000) +
+				" us, packed " + (packedTime / 1000) + " us, packed with unpack to data1/data2 " +
+				(unpackTime / 1000) + " us");
+	}
+
+	private static ComparisonHits load(ObjectMapper mapper, byte[] json) throws Exception {
+		return ComparisonHits.fromComparison(mapper.readValue(json, ProteomeComparison.class));
+	}
+
+	private static void checkRoundTrip(List<List<Tuple3<Long, Long, Long>>> expected,
+			List<List<Tuple3<Long, Long, Long>>> actual) {
+		if (expected.size() != actual.size())
+			throw new IllegalStateException("Wrong number of genes: " + actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Map<String, Integer> counts = new HashMap<String, Integer>();
+			for (Tuple3<Long, Long, Long> hit : expected.get(i))
+				add(counts, hit, 1);
+			for (Tuple3<Long, Long, Long> hit : actual.get(i))
+				add(counts, hit, -1);
+			for (int count : counts.values())
+				if (count != 0)
+					throw new IllegalStateException("Hits of gene " + i + " are different: " +
+							expected.get(i) + " and " + actual.get(i));
+		}
+	}
+
+	private static void add(Map<String, Integer> counts, Tuple3<Long, Long, Long> hit, int value) {
+		String key = hit.getE1() + "/" + hit.getE2() + "/" + hit.getE3();
+		Integer count = counts.get(key);
+		counts.put(key, (count == null ? 0 : count) + value);
+	}
+
+	/**
+	 * Generates blastp hits between two genomes of E. coli size (most genes
+	 * have ortholog in about the same position, some have paralogs) and builds
+	 * comparison in the same way as BlastProteomes does.
+	 */
+	static ProteomeComparison generateEcoliPair(Random rnd) {
+		int size1 = 4300;
+		int size2 = 5000;
+		List<String> names1 = new ArrayList<String>();
+		for (int i = 0; i < size1; i++)
+			names1.add("kb|g.1870.peg." + (i + 1));
+		List<String> names2 = new ArrayList<String>();
+		for (int j = 0; j < size2; j++)
+			names2.add("kb|g.3562.peg." + (j + 1));
+		HitTable hits = new HitTable(names1, names2);
+		for (int i = 0; i < size1; i++) {
+			double best = 50 + rnd.nextInt(1500) + rnd.nextDouble();
+			if (rnd.nextInt(100) < 85) {
+				int j = Math.min(size2 - 1, Math.max(0, i * size2 / size1 + rnd.nextInt(200) - 100));
+				hits.add(i, j, best);
+			}
+			int paralogs = rnd.nextInt(100) < 30 ? 1 + rnd.nextInt(rnd.nextInt(100) < 10 ? 40 : 5) : 0;
+			for (int k = 0; k < paralogs; k++)
+				hits.add(i, rnd.nextInt(size2), best * (0.3 + 0.7 * rnd.nextDouble()));
+		}
+		hits.filterSubBbh(90);
+		checkRoundTrip(hits.buildData1(), hits.buildPacked1().toData());
+		checkRoundTrip(hits.buildData2(), hits.buildPacked2().toData());
+		Map<String, Long> map1 = new HashMap<String, Long>();
+		for (int i = 0; i < size1; i++)
+			map1.put(names1.get(i), (long)i);
+		Map<String, Long> map2 = new HashMap<String, Long>();
+		for (int j = 0; j < size2; j++)
+			map2.put(names2.get(j), (long)j);
+		return new ProteomeComparison().withSubBbhPercent(90.0).withMaxEvalue("1e-10")
+				.withGenome1ref("ecoli/Escherichia_coli_042.genome")
+				.withGenome2ref("ecoli/Escherichia_coli_UM146.genome")
+				.withProteome1names(names1).withProteome1map(map1)
+				.withProteome2names(names2).withProteome2map(map2)
+				.withData1(hits.buildData1()).withData2(hits.buildData2());
+	}
+}
@@ -0,0 +1,85 @@
+package us.kbase.genomecomparison.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import us.kbase.common.service.Tuple3;
+import us.kbase.genomecomparison.HitTable;
+import us.kbase.genomecomparison.PackedHits;
+import us.kbase.genomecomparison.ProteomeComparison;
+
+public class PackedHitsTest {
+
+	@Test
+	public void testOrderOfHits() throws Exception {
+		List<List<Tuple3<Long, Long, Long>>> data = new ArrayList<List<Tuple3<Long, Long, Long>>>();
+		data.add(Arrays.asList(hit(7, 5000, 100), hit(2, 4900, 98), hit(9, 4800, 96), hit(2, 4700, 94)));
+		data.add(new ArrayList<Tuple3<Long, Long, Long>>());
+		data.add(Arrays.asList(hit(3, 300, 100), hit(null, 290, 97), hit(0, 280, 93)));
+		PackedHits packed = PackedHits.fromData(data);
+		Assert.assertEquals(Arrays.asList(0, 4, 4, 6), toList(packed.getOffsets()));
+		Assert.assertEquals(Arrays.asList(2, 2, 7, 9, 0, 3), toList(packed.getTargets()));
+		List<List<Tuple3<Long, Long, Long>>> actual = PackedHits.decode(packed.encode()).toData();
+		Assert.assertEquals("[[7/5000/100, 2/4900/98, 9/4800/96, 2/4700/94], [], [3/300/100, 0/280/93]]",
+				toString(actual));
+	}
+
+	@Test
+	public void testHitTable() throws Exception {
+		Random rnd = new Random(1);
+		List<String> names1 = new ArrayList<String>();
+		for (int i = 0; i < 300; i++)
+			names1.add("a" + i);
+		List<String> names2 = new ArrayList<String>();
+		for (int j = 0; j < 200; j++)
+			names2.add("b" + j);
+		HitTable hits = new HitTable(names1, names2);
+		for (int k = 0; k < 3000; k++)
+			hits.add(rnd.nextInt(names1.size()), rnd.nextInt(names2.size()), 50 + rnd.nextInt(1000));
+		hits.filterSubBbh(50);
+		Assert.assertEquals(toString(hits.buildData1()), toString(hits.buildPacked1().toData()));
+		Assert.assertEquals(toString(hits.buildData2()), toString(hits.buildPacked2().toData()));
+		ProteomeComparison cmp = new ProteomeComparison().withProteome1names(names1)
+				.withProteome2names(names2).withData1(hits.buildData1()).withData2(hits.buildData2());
+		String expected = toString(cmp.getData1()) + toString(cmp.getData2());
+		PackedHits.pack(cmp);
+		Assert.assertNull(cmp.getData1());
+		PackedHits.unpack(cmp);
+		Assert.assertEquals(expected, toString(cmp.getData1()) + toString(cmp.getData2()));
+		Assert.assertEquals(299L, (long)cmp.getProteome1map().get("a299"));
+	}
+
+	private static Tuple3<Long, Long, Long> hit(Integer target, long score, long percent) {
+		return new Tuple3<Long, Long, Long>().withE1(target == null ? null : (long)target)
+				.withE2(score).withE3(percent);
+	}
+
+	private static List<Integer> toList(int[] array) {
+		List<Integer> ret = new ArrayList<Integer>();
+		for (int value : array)
+			ret.add(value);
+		return ret;
+	}
+
+	private static String toString(List<List<Tuple3<Long, Long, Long>>> data) {
+		StringBuilder ret = new StringBuilder("[");
+		for (int i = 0; i < data.size(); i++) {
+			if (i > 0)
+				ret.append(", ");
+			ret.append("[");
+			for (int k = 0; k < data.get(i).size(); k++) {
+				Tuple3<Long, Long, Long> hit = data.get(i).get(k);
+				ret.append(k > 0 ? ", " : "").append(hit.getE1()).append("/").append(hit.getE2())
+						.append("/").append(hit.getE3());
+			}
+			ret.append("]");
+		}
+		return ret.append("]").toString();
+	}
+}
@@ -0,0 +1,219 @@
+package us.kbase.genomecomparison.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import us.kbase.common.service.Tuple11;
+import us.kbase.genomecomparison.gbk.GbkUploader;
+import us.kbase.genomecomparison.gbk.ObjectStorage;
+import us.kbase.kbasegenomes.Contig;
+import us.kbase.kbasegenomes.ContigSet;
+import us.kbase.workspace.ObjectData;
+import us.kbase.workspace.ObjectIdentity;
+import us.kbase.workspace.ObjectSaveData;
+import us.kbase.workspace.SaveObjectsParams;
+
+/**
+ * Uploads synthetic GBK-file into local stand-in of workspace (which only checks
+ * that request is valid JSON-RPC call and counts sequence bases) and compares
+ * peak heap usage of streaming save with in-memory serialization of the same
+ * request. Usage: [<size_mb> [<contig_count> [<temp_dir>]]], default is 10
+ * contigs of 10 MB.
+ */
+public class StreamingSaveBenchmark {
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	public static void main(String[] args) throws Exception {
+		int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int contigCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		File tempDir = new File(args.length > 2 ? args[2] : "temp");
+		if (!tempDir.exists())
+			tempDir.mkdir();
+		final long[] stat = new long[3];  // requests, bytes, sequence bases
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exch) throws IOException {
+				long[] counts;
+				try {
+					counts = readRequest(exch.getRequestBody());
+				} catch (IOException ex) {
+					ex.printStackTrace();
+					throw ex;
+				}
+				synchronized (stat) {
+					stat[0]++;
+					stat[1] += counts[0];
+					stat[2] += counts[1];
+				}
+				byte[] resp = ("{\"version\":\"1.1\",\"result\":[[[1,\"obj\",\"type\",\"date\",1," +
+						"\"user\",1,\"ws\",\"chsum\",1,{}]]]}").getBytes();
+				exch.sendResponseHeaders(200, resp.length);
+				OutputStream os = exch.getResponseBody();
+				os.write(resp);
+				os.close();
+			}
+		});
+		server.start();
+		String wsUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+		File gbk = File.createTempFile("streaming_", ".gbk", tempDir);
+		try {
+			GbkUploadBenchmark.generateGbk(gbk, (long)sizeMb * 1024 * 1024 / contigCount, contigCount, "CONTIG");
+			System.out.println("GBK-file size: " + gbk.length() + " bytes, contigs: " + contigCount);
+			resetPeakHeap();
+			long time = System.currentTimeMillis();
+			GbkUploader.uploadGbk(Arrays.asList(gbk), wsUrl, "ws", "streaming", "token", tempDir);
+			System.out.println("Streaming save: requests=" + stat[0] + ", request bytes=" + stat[1] +
+					", sequence bases=" + stat[2] + ", time: " + (System.currentTimeMillis() - time) +
+					" ms, peak heap: " + (peakHeap() >> 20) + " MB");
+			resetPeakHeap();
+			time = System.currentTimeMillis();
+			GbkUploader.uploadGbk(Arrays.asList(gbk), new InMemoryStorage(wsUrl), "ws", "in_memory",
+					"token", tempDir);
+			System.out.println("In-memory serialization: time: " + (System.currentTimeMillis() - time) +
+					" ms, peak heap: " + (peakHeap() >> 20) + " MB");
+		} finally {
+			server.stop(0);
+			gbk.delete();
+		}
+	}
+
+	private static long[] readRequest(InputStream is) throws IOException {
+		long[] ret = new long[2];
+		CountingInputStream cis = new CountingInputStream(is);
+		JsonParser p = mapper.getFactory().createParser(cis);
+		if (p.nextToken() != JsonToken.START_OBJECT)
+			throw new IOException("Request is not JSON object");
+		int depth = 1;
+		boolean method = false;
+		while (depth > 0) {
+			JsonToken t = p.nextToken();
+			if (t == null)
+				throw new IOException("Unexpected end of request");
+			if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+				depth++;
+			} else if (t == JsonToken.END_OBJECT || t == JsonToken.END_ARRAY) {
+				depth--;
+			} else if (t == JsonToken.FIELD_NAME && depth == 1 && p.getCurrentName().equals("method")) {
+				p.nextToken();
+				method = p.getText().equals("Workspace.save_objects");
+			} else if (t == JsonToken.FIELD_NAME && p.getCurrentName().equals("sequence")) {
+				p.nextToken();
+				ret[1] += p.getTextLength();
+			}
+		}
+		p.close();
+		if (!method)
+			throw new IOException("Unexpected method");
+		ret[0] = cis.count;
+		return ret;
+	}
+
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+	}
+
+	private static long peakHeap() {
+		long ret = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				ret += pool.getPeakUsage().getUsed();
+		return ret;
+	}
+
+	/**
+	 * Old way of saving: contig sequences are converted into strings and whole
+	 * request is serialized into byte array before sending it.
+	 */
+	private static class InMemoryStorage implements ObjectStorage {
+		private final URL wsUrl;
+
+		InMemoryStorage(String wsUrl) throws Exception {
+			this.wsUrl = new URL(wsUrl);
+		}
+
+		@Override
+		public List<Tuple11<Long, String, String, String, Long, String, Long, String, String, Long, Map<String, String>>> saveObjects(
+				String authToken, SaveObjectsParams params) throws Exception {
+			for (ObjectSaveData obj : params.getObjects()) {
+				Object data = obj.getData().asInstance();
+				if (data instanceof ContigSet) {
+					List<Contig> contigs = ((ContigSet)data).getContigs();
+					for (int i = 0; i < contigs.size(); i++) {
+						Contig contig = contigs.get(i);
+						contigs.set(i, new Contig().withId(contig.getId()).withName(contig.getName())
+								.withLength(contig.getLength()).withMd5(contig.getMd5())
+								.withSequence(contig.getSequence()));
+					}
+				}
+			}
+			Map<String, Object> req = new LinkedHashMap<String, Object>();
+			req.put("version", "1.1");
+			req.put("method", "Workspace.save_objects");
+			req.put("id", "1");
+			req.put("params", Arrays.asList(params));
+			byte[] body = mapper.writeValueAsBytes(req);
+			HttpURLConnection conn = (HttpURLConnection)wsUrl.openConnection();
+			conn.setDoOutput(true);
+			conn.setFixedLengthStreamingMode(body.length);
+			OutputStream os = conn.getOutputStream();
+			os.write(body);
+			os.close();
+			conn.getInputStream().close();
+			return null;
+		}
+
+		@Override
+		public List<ObjectData> getObjects(String authToken,
+				List<ObjectIdentity> objectIds) throws Exception {
+			throw new IllegalStateException("Unsupported method");
+		}
+	}
+
+	private static class CountingInputStream extends InputStream {
+		private final InputStream is;
+		long count = 0;
+
+		CountingInputStream(InputStream is) {
+			this.is = is;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int ret = is.read();
+			if (ret >= 0)
+				count++;
+			return ret;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int ret = is.read(b, off, len);
+			if (ret > 0)
+				count += ret;
+			return ret;
+		}
+	}
+}
@@ -19,11 +19,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import us.kbase.common.service.JsonClientException;
 import us.kbase.genomecomparison.GenomeCmpConfig;
+import us.kbase.genomecomparison.ImportNcbiGenomeParams;
 import us.kbase.genomecomparison.JobStatuses;
 import us.kbase.genomecomparison.ObjectStorage;
 import us.kbase.genomecomparison.TaskHolder;
+import us.kbase.genomecomparison.UploadedFileParams;
 import us.kbase.genomecomparison.util.DbConn;
 import us.kbase.userandjobstate.InitProgress;
 import us.kbase.userandjobstate.Results;
@@ -149,6 +153,20 @@ public class TaskHolderTest extends EasyMockSupport {
 		}).get(0));
 	}
 
+	@Test
+	public void testImportTaskParams() throws Exception {
+		Assert.assertEquals(TaskHolder.TASK_TYPE_IMPORT, TaskHolder.getTaskType(new ImportNcbiGenomeParams()));
+		UploadedFileParams params = new UploadedFileParams().withFileType("genomegbk")
+				.withFileName("genome.gbk.gz").withStagedFile("/temp/uploads/upload_1.tmp")
+				.withOutWs("ws").withOutId("genome");
+		// Parameters are stored in task queue as JSON and restored after restart
+		ObjectMapper mapper = new ObjectMapper();
+		UploadedFileParams restored = mapper.readValue(mapper.writeValueAsString(params), 
+				UploadedFileParams.class);
+		Assert.assertEquals(TaskHolder.TASK_TYPE_IMPORT, TaskHolder.getTaskType(restored));
+		Assert.assertEquals(params.toString(), restored.toString());
+	}
+
 	public static class TestTask implements Runnable {
 		private String innerParam;
 		private Runnable innerRunnable;
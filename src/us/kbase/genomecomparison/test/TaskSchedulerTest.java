@@ -0,0 +1,86 @@
+package us.kbase.genomecomparison.test;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import us.kbase.genomecomparison.Task;
+import us.kbase.genomecomparison.TaskScheduler;
+
+public class TaskSchedulerTest {
+
+	@Test
+	public void testPriorityAndCost() throws Exception {
+		TaskScheduler sched = new TaskScheduler();
+		sched.add(task("big", "user1", 1, 100, 1));
+		sched.add(task("unknown", "user1", 1, Task.UNKNOWN_COST, 2));
+		sched.add(task("small", "user1", 1, 10, 3));
+		sched.add(task("low", "user1", 0, 1, 4));
+		sched.add(task("big2", "user1", 1, 100, 5));
+		Assert.assertEquals(5, sched.size());
+		Assert.assertEquals("small,big,big2,unknown,low", pollAll(sched));
+		Assert.assertEquals(0, sched.size());
+		Assert.assertNull(sched.poll());
+	}
+
+	@Test
+	public void testUnknownCost() throws Exception {
+		TaskScheduler sched = new TaskScheduler();
+		Task first = task("first", "user1", 0, Task.UNKNOWN_COST, 1);
+		Task second = task("second", "user1", 0, 100, 2);
+		Task third = task("third", "user1", 0, Task.UNKNOWN_COST, 3);
+		sched.add(first);
+		sched.add(second);
+		sched.add(third);
+		// Estimated task is moved in front of more expensive one
+		sched.updateCost(third, 5);
+		Assert.assertEquals(5, third.getCost());
+		Assert.assertEquals("third,second,first", pollAll(sched));
+		// Task which is already taken from queue just gets new cost
+		sched.updateCost(first, 7);
+		Assert.assertEquals(7, first.getCost());
+		Assert.assertEquals(0, sched.size());
+	}
+
+	@Test
+	public void testFairShare() throws Exception {
+		TaskScheduler sched = new TaskScheduler();
+		for (int i = 1; i <= 4; i++)
+			sched.add(task("a" + i, "user1", 0, 10, i));
+		sched.add(task("b1", "user2", 0, 10, 10));
+		sched.add(task("b2", "user2", 1, 1000, 11));
+		// Higher priority goes first inside sub-queue of user2 regardless of cost,
+		// users are alternated with ties resolved in favor of the older head
+		Assert.assertEquals("a1,b2,a2,b1,a3,a4", pollAll(sched));
+	}
+
+	@Test
+	public void testStartedCount() throws Exception {
+		TaskScheduler sched = new TaskScheduler();
+		for (int i = 1; i <= 4; i++)
+			sched.add(task("a" + i, "user1", 0, 10, i));
+		Assert.assertEquals("a1", sched.poll().getJobId());
+		Assert.assertEquals("a2", sched.poll().getJobId());
+		// user2 comes with the count of started tasks of user1 (2) rather than
+		// from zero, so it doesn't take two turns in a row
+		sched.add(task("b1", "user2", 0, 10, 100));
+		sched.add(task("b2", "user2", 0, 10, 101));
+		Assert.assertEquals("a3,b1,a4,b2", pollAll(sched));
+		// Both users are idle now, so counts are forgotten
+		sched.add(task("a5", "user1", 0, 10, 200));
+		sched.add(task("a6", "user1", 0, 10, 201));
+		sched.add(task("b3", "user2", 0, 10, 202));
+		Assert.assertEquals("a5,b3,a6", pollAll(sched));
+	}
+
+	private static Task task(String jobId, String user, long priority, long cost, long queuedTime) {
+		return new Task(jobId, null, "token", "ws/obj", user, priority, cost, queuedTime);
+	}
+
+	private static String pollAll(TaskScheduler sched) {
+		StringBuilder ret = new StringBuilder();
+		for (Task task = sched.poll(); task != null; task = sched.poll())
+			ret.append(ret.length() > 0 ? "," : "").append(task.getJobId());
+		return ret.toString();
+	}
+}
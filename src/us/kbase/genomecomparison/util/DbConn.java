@@ -54,6 +54,16 @@ public class DbConn {
         return tables.contains(tableName.toUpperCase());
     }
 
+	public boolean checkColumn(String tableName, String columnName) throws SQLException {
+        ResultSet rs = getConnection().getMetaData().getColumns(null, null, 
+        		tableName.toUpperCase(), columnName.toUpperCase());
+        try {
+        	return rs.next();
+        } finally {
+        	rs.close();
+        }
+    }
+
 	public static interface SqlLoader<T> {
         T collectRow(ResultSet rs) throws SQLException;
     }